@@ -0,0 +1,115 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.utils.RandomSource;
+
+/**
+ * Benchmarks of {@link Example5_1Model}. The end-to-end benchmarks report episodes per second of a
+ * whole run; the others isolate one step of the episode loop. Run with the GC profiler to check
+ * that the per-episode steps do not allocate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class Example5_1ModelBenchmark {
+	private static final int RUN_EPISODES = 1_000_000;
+	private static final int EPISODE_POOL = 1024;
+
+	private Example5_1Model model;
+	private Example5_1Model vectorizedModel;
+	private BlackjackEnvironment environment;
+	private RandomGenerator random;
+	private Episode episode;
+	private Episode[] episodes;
+	private StateActionValueTable valueFunction;
+	private int nextEpisode;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		model = new Example5_1Model(new RandomSource(42));
+		model.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+		vectorizedModel = new Example5_1Model(new RandomSource(42));
+		vectorizedModel.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+		vectorizedModel.setVectorized(true);
+		environment = model.createEnvironment();
+		random = new RandomSource(42).stream(0);
+		episode = new Episode();
+		episodes = new Episode[EPISODE_POOL];
+		for (int i = 0; i < EPISODE_POOL; i++) {
+			episodes[i] = new Episode();
+			model.simulateBlackjackGame(environment, episodes[i], random);
+		}
+		valueFunction = model.createValueFunctionTable();
+		for (Episode pooled : episodes) {
+			model.policyEvaluation(pooled, valueFunction);
+		}
+	}
+
+	/** The thread counts of the end-to-end benchmark, kept apart so they don't multiply the others. */
+	@State(Scope.Benchmark)
+	public static class Threads {
+		@Param({ "1", "4" })
+		public int threads;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RUN_EPISODES)
+	public void runSimulation(Threads threads) {
+		model.runSimulation(RUN_EPISODES, threads.threads);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RUN_EPISODES)
+	public void runVectorizedSimulation(Threads threads) {
+		vectorizedModel.runSimulation(RUN_EPISODES, threads.threads);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RUN_EPISODES)
+	public void runPipelinedSimulation(Threads threads) {
+		model.runPipelinedSimulation(RUN_EPISODES, threads.threads);
+	}
+
+	@Benchmark
+	public int simulateBlackjackGame() {
+		model.simulateBlackjackGame(environment, episode, random);
+		return episode.getReturn();
+	}
+
+	@Benchmark
+	public void policyEvaluation() {
+		model.policyEvaluation(episodes[nextEpisode++ & (EPISODE_POOL - 1)], valueFunction);
+	}
+
+	@Benchmark
+	public int drawCard() {
+		return BlackjackEnvironment.drawCard(random);
+	}
+
+	@Benchmark
+	public void convertToGrid(Blackhole blackhole) {
+		blackhole.consume(model.convertToGrid(valueFunction, true));
+		blackhole.consume(model.convertToGrid(valueFunction, false));
+	}
+}
@@ -0,0 +1,86 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.utils.RandomSource;
+
+/**
+ * Benchmarks of {@link Example5_3Model}: episodes per second of a whole Monte Carlo ES run, and
+ * the individual steps of its episode loop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class Example5_3ModelBenchmark {
+	private static final int RUN_EPISODES = 1_000_000;
+	private static final int EPISODE_POOL = 1024;
+
+	private Example5_3Model model;
+	private BlackjackEnvironment environment;
+	private RandomGenerator random;
+	private Episode episode;
+	private Episode[] episodes;
+	private byte[] policy;
+	private int nextEpisode;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		model = new Example5_3Model(new RandomSource(42));
+		model.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+		model.runSimulation(RUN_EPISODES);
+		environment = model.createEnvironment();
+		random = new RandomSource(42).stream(0);
+		episode = new Episode();
+		episodes = new Episode[EPISODE_POOL];
+		for (int i = 0; i < EPISODE_POOL; i++) {
+			episodes[i] = new Episode();
+			model.simulateBlackjackGame(environment, episodes[i], random);
+		}
+		policy = model.createPolicy();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RUN_EPISODES)
+	public void runSimulation() {
+		model.runSimulation(RUN_EPISODES);
+	}
+
+	@Benchmark
+	public int simulateBlackjackGame() {
+		model.simulateBlackjackGame(environment, episode, random);
+		return episode.getReturn();
+	}
+
+	@Benchmark
+	public void policyEvaluationAndImprovement() {
+		model.policyEvaluationAndImprovement(episodes[nextEpisode++ & (EPISODE_POOL - 1)], false);
+	}
+
+	@Benchmark
+	public int drawCard() {
+		return BlackjackEnvironment.drawCard(random);
+	}
+
+	@Benchmark
+	public int[][] convertToGrid() {
+		return model.convertToGrid(policy, true);
+	}
+}
@@ -11,11 +11,13 @@ import java.util.LinkedHashMap;
 import adiputra.reinforcementlearning.chapter5.models.*;
 import adiputra.reinforcementlearning.chapter5.views.*;
 import adiputra.reinforcementlearning.chapter5.controllers.*;
+import adiputra.reinforcementlearning.chapter5.experiments.ExperimentScheduler;
 
 public class App {
     private static final String MAIN_MENU_CARD = "MAIN_MENU";
     private static final String EXAMPLE_5_1_CARD = "EXAMPLE_5_1_VIEW";
     private static final String EXAMPLE_5_3_CARD = "EXAMPLE_5_3_VIEW";
+    private static final String EXPERIMENTS_CARD = "EXPERIMENTS_VIEW";
 
     private final CardLayout cardLayout;
     private final JPanel mainPanel;
@@ -32,19 +34,26 @@ public class App {
         mainPanel.add(mainMenuPanel, MAIN_MENU_CARD);
 
         Example5_1Model example5_1Model = new Example5_1Model();
+        example5_1Model.getMetrics().register();
         Example5_1View example5_1View = new Example5_1View();
         new Example5_1Controller(example5_1Model, example5_1View);
         
         Example5_3Model example5_3Model = new Example5_3Model();
+        example5_3Model.getMetrics().register();
         Example5_3View example5_3View = new Example5_3View();
         new Example5_3Controller(example5_3Model, example5_3View);
         
+        ExperimentsView experimentsView = new ExperimentsView();
+        new ExperimentsController(new ExperimentScheduler(), experimentsView);
+        
         ActionListener backAction = e -> cardLayout.show(mainPanel, MAIN_MENU_CARD);
         example5_1View.addBackListener(backAction);
         example5_3View.addBackListener(backAction);
+        experimentsView.addBackListener(backAction);
 
         mainPanel.add(example5_1View, EXAMPLE_5_1_CARD);
         mainPanel.add(example5_3View, EXAMPLE_5_3_CARD);
+        mainPanel.add(experimentsView, EXPERIMENTS_CARD);
 
         frame.add(mainPanel);
         frame.setSize(450, 550);
@@ -111,6 +120,12 @@ public class App {
         //});
         //buttonPanel.add(chapter5Button2, gbc);
 
+        final JButton experimentsButton = new JButton("Experiments");
+        experimentsButton.addActionListener(event -> {
+            cardLayout.show(mainPanel, EXPERIMENTS_CARD);
+        });
+        buttonPanel.add(experimentsButton, gbc);
+
         gbc.weighty = 1.0;
         buttonPanel.add(new JPanel(), gbc);
         return buttonPanel;
@@ -0,0 +1,270 @@
+package adiputra.reinforcementlearning.chapter5.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The output of a batch run: named scalar statistics, named state grids and named tables, written
+ * to disk either as CSV files (one per grid and table plus {@code stats.csv}) or as a single
+ * {@code result.json}.
+ *
+ * <p>Every grid is indexed as {@code [playerSum - minPlayerSum][dealerCard - 1]}, matching the
+ * grids of the chapter 5 models.
+ */
+public class BatchReport {
+	private final Map<String, Object> stats = new LinkedHashMap<>();
+	private final List<Grid> grids = new ArrayList<>();
+	private final List<Table> tables = new ArrayList<>();
+
+	/**
+	 * A named state grid.
+	 * @param name The name of the grid, used as file name or JSON key.
+	 * @param minPlayerSum The player sum of the first row.
+	 * @param values The grid values.
+	 * @param integral True if the values are whole numbers and should be written without decimals.
+	 */
+	public record Grid(String name, int minPlayerSum, double[][] values, boolean integral) {}
+
+	/**
+	 * A named table of numbers, e.g. one row per run of a sweep.
+	 * @param name The name of the table, used as file name or JSON key.
+	 * @param columns The column names.
+	 * @param rows The rows, each holding one value per column.
+	 */
+	public record Table(String name, List<String> columns, List<double[]> rows) {}
+
+	/**
+	 * Adds a statistic. Numbers are written as they are, anything else as a string.
+	 */
+	public BatchReport addStat(String name, Object value) {
+		stats.put(name, value);
+		return this;
+	}
+
+	public BatchReport addGrid(String name, int minPlayerSum, double[][] values) {
+		grids.add(new Grid(name, minPlayerSum, values, false));
+		return this;
+	}
+
+	public BatchReport addGrid(String name, int minPlayerSum, long[][] values) {
+		double[][] copy = new double[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			copy[i] = new double[values[i].length];
+			for (int j = 0; j < values[i].length; j++) {
+				copy[i][j] = values[i][j];
+			}
+		}
+		grids.add(new Grid(name, minPlayerSum, copy, true));
+		return this;
+	}
+
+	public BatchReport addGrid(String name, int minPlayerSum, int[][] values) {
+		double[][] copy = new double[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			copy[i] = new double[values[i].length];
+			for (int j = 0; j < values[i].length; j++) {
+				copy[i][j] = values[i][j];
+			}
+		}
+		grids.add(new Grid(name, minPlayerSum, copy, true));
+		return this;
+	}
+
+	/**
+	 * Adds an empty table; rows are added to the returned table's row list.
+	 */
+	public Table addTable(String name, String... columns) {
+		Table table = new Table(name, List.of(columns), new ArrayList<>());
+		tables.add(table);
+		return table;
+	}
+
+	public Map<String, Object> getStats() {
+		return stats;
+	}
+
+	public List<Grid> getGrids() {
+		return grids;
+	}
+
+	public List<Table> getTables() {
+		return tables;
+	}
+
+	/**
+	 * Writes {@code stats.csv} and one {@code <name>.csv} per grid and table into the given directory.
+	 * Fields holding a comma, a quote or a line break are quoted as in RFC 4180.
+	 * @return The written files.
+	 */
+	public List<Path> writeCsv(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		List<Path> files = new ArrayList<>();
+
+		StringBuilder sb = new StringBuilder("name,value\n");
+		for (Map.Entry<String, Object> stat : stats.entrySet()) {
+			sb.append(csvField(stat.getKey())).append(',').append(csvField(String.valueOf(stat.getValue()))).append('\n');
+		}
+		files.add(Files.writeString(directory.resolve("stats.csv"), sb));
+
+		for (Grid grid : grids) {
+			sb.setLength(0);
+			sb.append("player_sum");
+			for (int j = 0; j < grid.values()[0].length; j++) {
+				sb.append(",dealer_").append(j + 1);
+			}
+			sb.append('\n');
+			for (int i = 0; i < grid.values().length; i++) {
+				sb.append(grid.minPlayerSum() + i);
+				for (double value : grid.values()[i]) {
+					sb.append(',');
+					appendNumber(sb, value, grid.integral());
+				}
+				sb.append('\n');
+			}
+			files.add(Files.writeString(directory.resolve(grid.name() + ".csv"), sb));
+		}
+
+		for (Table table : tables) {
+			sb.setLength(0);
+			for (int j = 0; j < table.columns().size(); j++) {
+				sb.append(j > 0 ? "," : "").append(csvField(table.columns().get(j)));
+			}
+			sb.append('\n');
+			for (double[] row : table.rows()) {
+				for (int j = 0; j < row.length; j++) {
+					if (j > 0) {
+						sb.append(',');
+					}
+					appendNumber(sb, row[j], row[j] == Math.rint(row[j]));
+				}
+				sb.append('\n');
+			}
+			files.add(Files.writeString(directory.resolve(table.name() + ".csv"), sb));
+		}
+		return files;
+	}
+
+	/**
+	 * Writes all statistics, grids and tables into {@code result.json} in the given directory.
+	 * JSON has no infinite or NaN numbers, so those are written as null.
+	 * @return The written file.
+	 */
+	public Path writeJson(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		StringBuilder sb = new StringBuilder("{\n  \"stats\": {");
+		String separator = "\n";
+		for (Map.Entry<String, Object> stat : stats.entrySet()) {
+			sb.append(separator).append("    \"").append(escape(stat.getKey())).append("\": ");
+			if (stat.getValue() instanceof Double value) {
+				sb.append(Double.isFinite(value) ? value.toString() : "null");
+			} else if (stat.getValue() instanceof Float value) {
+				sb.append(Float.isFinite(value) ? value.toString() : "null");
+			} else if (stat.getValue() instanceof Number) {
+				sb.append(stat.getValue());
+			} else {
+				sb.append('"').append(escape(String.valueOf(stat.getValue()))).append('"');
+			}
+			separator = ",\n";
+		}
+		sb.append("\n  },\n  \"grids\": {");
+		separator = "\n";
+		for (Grid grid : grids) {
+			sb.append(separator).append("    \"").append(escape(grid.name())).append("\": {\n");
+			sb.append("      \"minPlayerSum\": ").append(grid.minPlayerSum()).append(",\n");
+			sb.append("      \"rows\": [");
+			for (int i = 0; i < grid.values().length; i++) {
+				sb.append(i == 0 ? "\n        [" : ",\n        [");
+				for (int j = 0; j < grid.values()[i].length; j++) {
+					if (j > 0) {
+						sb.append(", ");
+					}
+					appendJsonNumber(sb, grid.values()[i][j], grid.integral());
+				}
+				sb.append(']');
+			}
+			sb.append("\n      ]\n    }");
+			separator = ",\n";
+		}
+		sb.append("\n  },\n  \"tables\": {");
+		separator = "\n";
+		for (Table table : tables) {
+			sb.append(separator).append("    \"").append(escape(table.name())).append("\": {\n");
+			sb.append("      \"columns\": [");
+			for (int j = 0; j < table.columns().size(); j++) {
+				sb.append(j > 0 ? ", \"" : "\"").append(escape(table.columns().get(j))).append('"');
+			}
+			sb.append("],\n      \"rows\": [");
+			for (int i = 0; i < table.rows().size(); i++) {
+				double[] row = table.rows().get(i);
+				sb.append(i == 0 ? "\n        [" : ",\n        [");
+				for (int j = 0; j < row.length; j++) {
+					if (j > 0) {
+						sb.append(", ");
+					}
+					appendJsonNumber(sb, row[j], row[j] == Math.rint(row[j]));
+				}
+				sb.append(']');
+			}
+			sb.append("\n      ]\n    }");
+			separator = ",\n";
+		}
+		sb.append("\n  }\n}\n");
+		return Files.writeString(directory.resolve("result.json"), sb);
+	}
+
+	private static void appendNumber(StringBuilder sb, double value, boolean integral) {
+		if (integral) {
+			sb.append((long) value);
+		} else {
+			sb.append(String.format(Locale.ROOT, "%.6f", value));
+		}
+	}
+
+	private static void appendJsonNumber(StringBuilder sb, double value, boolean integral) {
+		if (Double.isFinite(value)) {
+			appendNumber(sb, value, integral);
+		} else {
+			sb.append("null");
+		}
+	}
+
+	/**
+	 * Escapes a JSON string: quotes, backslashes and all control characters below U+0020.
+	 */
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c == '\r') {
+				sb.append("\\r");
+			} else if (c == '\t') {
+				sb.append("\\t");
+			} else if (c < 0x20) {
+				sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Quotes a CSV field if it holds a comma, a quote or a line break, doubling its quotes.
+	 */
+	private static String csvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
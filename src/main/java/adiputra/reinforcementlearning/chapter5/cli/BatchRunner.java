@@ -0,0 +1,725 @@
+package adiputra.reinforcementlearning.chapter5.cli;
+
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.random.RandomGeneratorFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import adiputra.reinforcementlearning.chapter5.models.ExactBlackjackSolver;
+import adiputra.reinforcementlearning.chapter5.models.Example5_1Model;
+import adiputra.reinforcementlearning.chapter5.models.Example5_3Model;
+import adiputra.reinforcementlearning.chapter5.models.Example5_4Model;
+import adiputra.utils.RandomSource;
+
+/**
+ * A headless command-line entry point for the chapter 5 simulations, for batch runs on servers
+ * without a display. It drives the models directly, without touching Swing or the chart libraries,
+ * and writes the resulting grids together with timing statistics as CSV or JSON. While a model
+ * runs, its {@link adiputra.reinforcementlearning.engine.SimulationMetrics} are registered as an
+ * MXBean, so a long run can be watched with JConsole or VisualVM.
+ *
+ * <pre>
+ * java -cp target/classes adiputra.reinforcementlearning.chapter5.cli.BatchRunner \
+ *     --model 5.1 --episodes 10000000 --seed 42 --threads 32 --format json --output results
+ * </pre>
+ */
+public class BatchRunner {
+	private static final Pattern TARGET = Pattern.compile("stick(1[2-9]|2[01])|optimal");
+	private static final Pattern START_STATE = Pattern.compile("(soft|hard)(1[2-9]|2[01]):([1-9]|10)");
+	// How often a run with a listener publishes its progress.
+	private static final long LISTENER_PROGRESS_EPISODES = 1 << 16;
+	private static final long LISTENER_PROGRESS_MILLIS = 250;
+
+	private static final String USAGE = """
+			Usage: BatchRunner --model <5.1|5.3|5.4> [options]
+			  --episodes <n>       number of episodes (default 100000)
+			  --seed <n>           seed of the random source (default: random)
+			  --threads <n>        worker threads (default: available processors)
+			  --rng <algorithm>    RandomGenerator algorithm (default %s)
+			  --dealer <play|sample>  play the dealer's hand card by card, or sample its final
+			                       sum from the exact distribution (default play)
+			  --initial-hand <deal|sample>  deal the player's initial hand card by card, or
+			                       sample it from the exact distribution (default deal)
+			  --pipeline <on|off>  Example 5.1 runs --threads producers feeding one learner through
+			                       a ring of episode batches (default off)
+			  --simd <on|off>      Example 5.1 plays the episodes with the Vector API; needs
+			                       --add-modules jdk.incubator.vector, else scalar, and plays the
+			                       dealer's hand and deals the initial hand (default off)
+			  --epsilon <e>        Example 5.3 uses epsilon-soft control starting with exploration
+			                       rate e instead of exploring starts
+			  --epsilon-decay <n>  episodes after which epsilon has halved (default: constant)
+			  --targets <list>     Example 5.4 target policies, comma-separated stick<sum> (stick on
+			                       that sum or more) or optimal (default stick20)
+			  --start <state>      Example 5.4 starts every episode in a state like soft13:2 (usable
+			                       ace, sum 13, dealer's 2) or hard15:10 (default: dealt hands)
+			  --tolerance <t>      Example 5.1 stops once the 95%% confidence interval of the
+			                       state values is within +/- t (default: play all episodes)
+			  --converged-share <p>  share of states (0-1) that must reach the tolerance (default 1)
+			  --accuracy-steps <n> also run with 1/2, 1/4, ... of the episodes, n runs in total, and
+			                       tabulate their error against the exact solution (default 1)
+			  --checkpoint <file>  Examples 5.1 and 5.3 save their tables to this file while running
+			  --checkpoint-every <n>  episodes between two checkpoints (default 10000000)
+			  --resume <on|off>    continue from the last checkpoint in --checkpoint (default off)
+			  --record <file>      Examples 5.1 and 5.3 write every episode to this episode log;
+			                       Example 5.3 records on one thread
+			  --replay <file>      Examples 5.1 and 5.3 learn from the episodes of this log instead
+			                       of playing any (--episodes is ignored)
+			  --format <csv|json>  output format (default csv)
+			  --output <dir>       output directory (default results)
+			""".formatted(RandomSource.DEFAULT_ALGORITHM);
+
+	/**
+	 * The parsed command line.
+	 * @param model The model to run, "5.1", "5.3" or "5.4".
+	 * @param episodes The number of episodes.
+	 * @param seed The seed of the random source, or null for a random seed.
+	 * @param threads The number of worker threads.
+	 * @param rng The name of the random generator algorithm.
+	 * @param sampleDealer True to sample the dealer's final sum instead of playing the dealer's hand.
+	 * @param sampleInitialHand True to sample the player's initial hand instead of dealing it.
+	 * @param pipelined True to run Example 5.1 as a generator/learner pipeline.
+	 * @param simd True to run Example 5.1 with the vectorized simulation when the Vector API is available.
+	 * @param epsilon The initial exploration rate of epsilon-soft control in Example 5.3, or null for exploring starts.
+	 * @param epsilonDecay The number of episodes after which epsilon has halved; infinite for a constant rate.
+	 * @param targets The target policies of Example 5.4.
+	 * @param start The start state of Example 5.4, or null to deal every episode.
+	 * @param tolerance The convergence tolerance of Example 5.1, or null to play all episodes.
+	 * @param convergedShare The share of states that must reach the tolerance.
+	 * @param accuracySteps The number of runs of the accuracy sweep, 1 for a single run.
+	 * @param checkpoint The checkpoint file of Examples 5.1 and 5.3, or null to run without checkpoints.
+	 * @param checkpointEvery The number of episodes between two checkpoints.
+	 * @param resume True to continue from the last checkpoint.
+	 * @param record The episode log Examples 5.1 and 5.3 write their episodes to, or null.
+	 * @param replay The episode log Examples 5.1 and 5.3 learn from instead of playing episodes, or null.
+	 * @param format The output format, "csv" or "json".
+	 * @param output The output directory.
+	 */
+	public record BatchOptions(String model, int episodes, Long seed, int threads, String rng, boolean sampleDealer,
+			boolean sampleInitialHand, boolean pipelined, boolean simd,
+			Double epsilon, double epsilonDecay, List<String> targets, String start, Double tolerance, double convergedShare, int accuracySteps,
+			Path checkpoint, long checkpointEvery, boolean resume, Path record, Path replay, String format, Path output) {}
+
+	public static void main(String[] args) {
+		BatchOptions options;
+		try {
+			options = parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		BatchReport report;
+		try {
+			report = run(options);
+		} catch (IllegalArgumentException | UncheckedIOException | CancellationException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		try {
+			writeReport(report, options.format(), options.output());
+		} catch (IOException e) {
+			System.err.println("Error: failed to write results: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		System.out.println("Example " + options.model() + ": " + report.getStats() + " -> " + options.output());
+	}
+
+	/**
+	 * Parses the command line arguments.
+	 * @throws IllegalArgumentException if an argument is unknown, missing its value or invalid.
+	 */
+	public static BatchOptions parse(String[] args) {
+		String model = null;
+		int episodes = 100_000;
+		Long seed = null;
+		Integer threads = null;
+		String rng = RandomSource.DEFAULT_ALGORITHM;
+		String dealer = "play";
+		String initialHand = "deal";
+		String pipeline = "off";
+		String simd = "off";
+		Double epsilon = null;
+		double epsilonDecay = Double.POSITIVE_INFINITY;
+		List<String> targets = List.of("stick20");
+		String start = null;
+		Double tolerance = null;
+		double convergedShare = 1.0;
+		int accuracySteps = 1;
+		Path checkpoint = null;
+		long checkpointEvery = 10_000_000;
+		String resume = "off";
+		Path record = null;
+		Path replay = null;
+		String format = "csv";
+		Path output = Path.of("results");
+
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + name);
+			}
+			String value = args[++i];
+			try {
+				switch (name) {
+					case "--model":
+						model = value;
+						break;
+					case "--episodes":
+						episodes = Integer.parseInt(value);
+						break;
+					case "--seed":
+						seed = Long.parseLong(value);
+						break;
+					case "--threads":
+						threads = Integer.parseInt(value);
+						break;
+					case "--rng":
+						rng = value;
+						break;
+					case "--dealer":
+						dealer = value;
+						break;
+					case "--initial-hand":
+						initialHand = value;
+						break;
+					case "--pipeline":
+						pipeline = value;
+						break;
+					case "--simd":
+						simd = value;
+						break;
+					case "--epsilon":
+						epsilon = Double.parseDouble(value);
+						break;
+					case "--epsilon-decay":
+						epsilonDecay = Double.parseDouble(value);
+						break;
+					case "--targets":
+						targets = List.of(value.split(","));
+						break;
+					case "--start":
+						start = value;
+						break;
+					case "--tolerance":
+						tolerance = Double.parseDouble(value);
+						break;
+					case "--converged-share":
+						convergedShare = Double.parseDouble(value);
+						break;
+					case "--accuracy-steps":
+						accuracySteps = Integer.parseInt(value);
+						break;
+					case "--checkpoint":
+						checkpoint = Path.of(value);
+						break;
+					case "--checkpoint-every":
+						checkpointEvery = Long.parseLong(value);
+						break;
+					case "--resume":
+						resume = value;
+						break;
+					case "--record":
+						record = Path.of(value);
+						break;
+					case "--replay":
+						replay = Path.of(value);
+						break;
+					case "--format":
+						format = value;
+						break;
+					case "--output":
+						output = Path.of(value);
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + name);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+			}
+		}
+
+		if (model == null || !(model.equals("5.1") || model.equals("5.3") || model.equals("5.4"))) {
+			throw new IllegalArgumentException("--model must be 5.1, 5.3 or 5.4");
+		}
+		if (record != null && model.equals("5.3")) {
+			// Control learns from every episode before playing the next, so its log is written sequentially.
+			if (threads != null && threads > 1) {
+				throw new IllegalArgumentException("--record with --model 5.3 plays on one thread, not --threads " + threads);
+			}
+			threads = 1;
+		} else if (threads == null) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		if (episodes <= 0 || threads <= 0) {
+			throw new IllegalArgumentException("--episodes and --threads must be positive");
+		}
+		if ((tolerance != null && tolerance <= 0) || convergedShare < 0 || convergedShare > 1) {
+			throw new IllegalArgumentException("--tolerance must be positive and --converged-share between 0 and 1");
+		}
+		if (!(pipeline.equals("on") || pipeline.equals("off"))) {
+			throw new IllegalArgumentException("--pipeline must be on or off");
+		}
+		if (pipeline.equals("on") && (!model.equals("5.1") || tolerance != null)) {
+			throw new IllegalArgumentException("--pipeline on requires --model 5.1 and no --tolerance");
+		}
+		if (!(simd.equals("on") || simd.equals("off"))) {
+			throw new IllegalArgumentException("--simd must be on or off");
+		}
+		// The vectorized games always play the dealer's hand and deal the initial hand.
+		if (simd.equals("on") && (!model.equals("5.1") || pipeline.equals("on") || !dealer.equals("play")
+				|| !initialHand.equals("deal"))) {
+			throw new IllegalArgumentException(
+					"--simd on requires --model 5.1, --pipeline off, --dealer play and --initial-hand deal");
+		}
+		if ((epsilon != null && !(epsilon >= 0 && epsilon <= 1)) || !(epsilonDecay > 0)) {
+			throw new IllegalArgumentException("--epsilon must be between 0 and 1 and --epsilon-decay positive");
+		}
+		if (epsilon != null && !model.equals("5.3")) {
+			throw new IllegalArgumentException("--epsilon requires --model 5.3");
+		}
+		for (String target : targets) {
+			if (!TARGET.matcher(target).matches()) {
+				throw new IllegalArgumentException("--targets must list stick12 to stick21 or optimal: " + target);
+			}
+		}
+		if (start != null && !START_STATE.matcher(start).matches()) {
+			throw new IllegalArgumentException("--start must look like soft13:2 or hard15:10");
+		}
+		if (accuracySteps < 1 || accuracySteps > 31) {
+			throw new IllegalArgumentException("--accuracy-steps must be between 1 and 31");
+		}
+		if (!(resume.equals("on") || resume.equals("off")) || checkpointEvery <= 0) {
+			throw new IllegalArgumentException("--resume must be on or off and --checkpoint-every positive");
+		}
+		if (checkpoint != null && (model.equals("5.4") || pipeline.equals("on") || tolerance != null || accuracySteps > 1)) {
+			throw new IllegalArgumentException(
+					"--checkpoint requires --model 5.1 or 5.3, --pipeline off, no --tolerance and --accuracy-steps 1");
+		}
+		if (resume.equals("on") && checkpoint == null) {
+			throw new IllegalArgumentException("--resume on requires --checkpoint");
+		}
+		if ((record != null || replay != null) && (model.equals("5.4") || pipeline.equals("on") || simd.equals("on")
+				|| tolerance != null || accuracySteps > 1 || checkpoint != null)) {
+			throw new IllegalArgumentException("--record and --replay require --model 5.1 or 5.3, --pipeline and --simd off,"
+					+ " no --tolerance or --checkpoint and --accuracy-steps 1");
+		}
+		if (record != null && replay != null) {
+			throw new IllegalArgumentException("--record and --replay cannot be combined");
+		}
+		if (!(dealer.equals("play") || dealer.equals("sample"))) {
+			throw new IllegalArgumentException("--dealer must be play or sample");
+		}
+		if (!(initialHand.equals("deal") || initialHand.equals("sample"))) {
+			throw new IllegalArgumentException("--initial-hand must be deal or sample");
+		}
+		if (!(format.equals("csv") || format.equals("json"))) {
+			throw new IllegalArgumentException("--format must be csv or json");
+		}
+		// Fails with an IllegalArgumentException for unknown algorithms.
+		RandomGeneratorFactory.of(rng);
+		return new BatchOptions(model, episodes, seed, threads, rng, dealer.equals("sample"),
+				initialHand.equals("sample"), pipeline.equals("on"), simd.equals("on"), epsilon, epsilonDecay, targets, start,
+				tolerance, convergedShare, accuracySteps, checkpoint, checkpointEvery, resume.equals("on"), record, replay, format,
+				output);
+	}
+
+	/**
+	 * Runs the simulation described by the options and collects its grids and timing statistics,
+	 * together with its error against the exact solution of the game. With more than one accuracy
+	 * step, the model is first run with geometrically fewer episodes, and the error of every run is
+	 * tabulated against its episodes and CPU time.
+	 * @throws CancellationException if the calling thread is interrupted during a model run.
+	 */
+	public static BatchReport run(BatchOptions options) {
+		return run(options, null);
+	}
+
+	/**
+	 * Runs the simulation described by the options like {@link #run(BatchOptions)}, passing the
+	 * progress, status and result events of every model run to the listener. Progress is published
+	 * every {@value #LISTENER_PROGRESS_MILLIS} ms or so; the source of an event is the model, which
+	 * the listener may cancel.
+	 * @param listener The listener, or null to run without progress events.
+	 */
+	public static BatchReport run(BatchOptions options, PropertyChangeListener listener) {
+		RandomSource randomSource = options.seed() != null
+				? new RandomSource(options.rng(), options.seed())
+				: new RandomSource(options.rng(), RandomSource.withRandomSeed().getSeed());
+		boolean example5_1 = options.model().equals("5.1");
+		boolean example5_4 = options.model().equals("5.4");
+		ExactBlackjackSolver solver = new ExactBlackjackSolver(options.model().equals("5.3") ? 11 : 12);
+
+		BatchReport report = new BatchReport()
+				.addStat("model", options.model())
+				.addStat("episodes", options.episodes())
+				.addStat("threads", options.threads())
+				.addStat("rng", randomSource.getAlgorithm())
+				// Example 5.4 always samples the dealer's outcome and the initial hand.
+				.addStat("dealer", options.sampleDealer() || example5_4 ? "sample" : "play")
+				.addStat("initialHand", options.sampleInitialHand() || example5_4 ? "sample" : "deal")
+				.addStat("pipeline", options.pipelined() ? "on" : "off")
+				// Whether the vectorized simulation actually ran, which needs the Vector API module.
+				.addStat("simd", options.simd() && Example5_1Model.isVectorApiAvailable() ? "on" : "off")
+				.addStat("seed", randomSource.getSeed());
+		if (options.model().equals("5.3")) {
+			report.addStat("control", options.epsilon() == null ? "exploring-starts" : "epsilon-soft");
+			if (options.epsilon() != null) {
+				report.addStat("epsilon", options.epsilon());
+				// A constant rate has no decay to report; infinity is no JSON number.
+				if (Double.isFinite(options.epsilonDecay())) {
+					report.addStat("epsilonDecay", options.epsilonDecay());
+				}
+			}
+		}
+		if (options.checkpoint() != null) {
+			report.addStat("checkpoint", options.checkpoint().toString()).addStat("resume", options.resume() ? "on" : "off");
+		}
+		if (options.record() != null) {
+			report.addStat("record", options.record().toString());
+		}
+		if (options.replay() != null) {
+			report.addStat("replay", options.replay().toString());
+		}
+
+		BatchReport.Table accuracy = null;
+		if (options.accuracySteps() > 1) {
+			if (example5_1) {
+				accuracy = report.addTable("accuracy", "episodes", "wall_ms", "cpu_ms", "rms_error", "max_abs_error");
+			} else if (example5_4) {
+				accuracy = report.addTable("accuracy", "episodes", "wall_ms", "cpu_ms", "ordinary_error", "weighted_error");
+			} else {
+				accuracy = report.addTable("accuracy", "episodes", "wall_ms", "cpu_ms", "policy_disagreements", "action_loss");
+			}
+			for (int step = options.accuracySteps() - 1; step >= 1; step--) {
+				int episodes = Math.max(1, options.episodes() >> step);
+				accuracy.rows().add(accuracyRow(runModel(options, randomSource, episodes, solver, listener), options, solver));
+			}
+		}
+
+		TimedRun run = runModel(options, randomSource, options.episodes(), solver, listener);
+		if (accuracy != null) {
+			accuracy.rows().add(accuracyRow(run, options, solver));
+		}
+		report.addStat("wallTimeMs", TimeUnit.NANOSECONDS.toMillis(run.wallNanos()));
+		if (run.cpuNanos() >= 0) {
+			report.addStat("cpuTimeMs", TimeUnit.NANOSECONDS.toMillis(run.cpuNanos()));
+		}
+
+		if (run.result() instanceof Example5_1Model.SimulationResult simulationResult) {
+			// A resumed run continues with the seed of its checkpoint, a replay reports that of its log.
+			report.addStat("seed", simulationResult.seed());
+			double[][] exactUsableAce = solver.getStickOn20Values(true);
+			double[][] exactNonUsableAce = solver.getStickOn20Values(false);
+			double[] errors = accuracyRow(run, options, solver);
+			report.addStat("episodesUsed", simulationResult.episodes())
+					.addStat("episodesPlayed", run.playedEpisodes())
+					.addStat("episodesPerSecond", run.episodesPerSecond())
+					.addStat("rmsError", errors[3])
+					.addStat("maxAbsError", errors[4])
+					.addGrid("value_usable_ace", 12, simulationResult.usableAceGrid())
+					.addGrid("value_non_usable_ace", 12, simulationResult.nonUsableAceGrid())
+					.addGrid("visits_usable_ace", 12, simulationResult.usableAceVisits())
+					.addGrid("visits_non_usable_ace", 12, simulationResult.nonUsableAceVisits())
+					.addGrid("standard_error_usable_ace", 12, simulationResult.usableAceErrors())
+					.addGrid("standard_error_non_usable_ace", 12, simulationResult.nonUsableAceErrors())
+					.addGrid("exact_value_usable_ace", 12, exactUsableAce)
+					.addGrid("exact_value_non_usable_ace", 12, exactNonUsableAce);
+		} else if (run.result() instanceof Example5_3Model.SimulationResult simulationResult) {
+			double[] errors = accuracyRow(run, options, solver);
+			report.addStat("seed", simulationResult.seed());
+			report.addStat("episodesPlayed", run.playedEpisodes())
+					.addStat("episodesPerSecond", run.episodesPerSecond())
+					.addStat("policyDisagreements", (long) errors[3])
+					.addStat("actionLoss", errors[4])
+					.addGrid("policy_usable_ace", 11, simulationResult.usableAceGrid())
+					.addGrid("policy_non_usable_ace", 11, simulationResult.nonUsableAceGrid())
+					.addGrid("optimal_policy_usable_ace", 11, solver.getOptimalPolicy(true))
+					.addGrid("optimal_policy_non_usable_ace", 11, solver.getOptimalPolicy(false))
+					.addGrid("optimal_value_usable_ace", 11, solver.getOptimalValues(true))
+					.addGrid("optimal_value_non_usable_ace", 11, solver.getOptimalValues(false));
+		} else if (run.result() instanceof Example5_4Model.SimulationResult simulationResult) {
+			List<Example5_4Model.TargetPolicy> targets = targetPolicies(options, solver);
+			double[][] errors = offPolicyErrors(simulationResult, targets, options, solver);
+			report.addStat("episodesPerSecond", run.episodesPerSecond())
+					.addStat("start", options.start() != null ? options.start() : "dealt")
+					.addGrid("visits_usable_ace", 12, simulationResult.usableAceVisits())
+					.addGrid("visits_non_usable_ace", 12, simulationResult.nonUsableAceVisits());
+			for (int i = 0; i < targets.size(); i++) {
+				String name = targets.get(i).name();
+				Example5_4Model.PolicyEstimate estimate = simulationResult.estimates().get(i);
+				double[][][] exact = solver.getPolicyValues(targets.get(i).usableAcePolicy(), targets.get(i).nonUsableAcePolicy());
+				report.addStat(name + ".ordinaryError", errors[i][0])
+						.addStat(name + ".weightedError", errors[i][1])
+						.addGrid(name + "_ordinary_usable_ace", 12, estimate.usableAceOrdinary())
+						.addGrid(name + "_ordinary_non_usable_ace", 12, estimate.nonUsableAceOrdinary())
+						.addGrid(name + "_weighted_usable_ace", 12, estimate.usableAceWeighted())
+						.addGrid(name + "_weighted_non_usable_ace", 12, estimate.nonUsableAceWeighted())
+						.addGrid(name + "_exact_usable_ace", 12, exact[1])
+						.addGrid(name + "_exact_non_usable_ace", 12, exact[0]);
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Writes a report in the given format.
+	 * @param format The output format, "csv" or "json".
+	 * @param directory The output directory.
+	 * @throws IOException if the report cannot be written.
+	 */
+	public static void writeReport(BatchReport report, String format, Path directory) throws IOException {
+		if (format.equals("json")) {
+			report.writeJson(directory);
+		} else {
+			report.writeCsv(directory);
+		}
+	}
+
+	/**
+	 * The result of one model run with its wall-clock and CPU time, and the number of episodes it
+	 * played, which excludes the episodes a resumed run restored from its checkpoint.
+	 */
+	private record TimedRun(Object result, long wallNanos, long cpuNanos, long playedEpisodes) {
+
+		/**
+		 * @return The episodes played per second of wall-clock time.
+		 */
+		long episodesPerSecond() {
+			return Math.round(playedEpisodes * 1e9 / Math.max(1, wallNanos));
+		}
+	}
+
+	/**
+	 * Runs the model described by the options once for the given number of episodes.
+	 * @throws CancellationException if the run was interrupted before it published a result.
+	 */
+	private static TimedRun runModel(BatchOptions options, RandomSource randomSource, int episodes,
+			ExactBlackjackSolver solver, PropertyChangeListener listener) {
+		AtomicReference<Object> result = new AtomicReference<>();
+		long progressEpisodes = listener != null ? LISTENER_PROGRESS_EPISODES : Long.MAX_VALUE;
+		long progressMillis = listener != null ? LISTENER_PROGRESS_MILLIS : Long.MAX_VALUE;
+		long playedEpisodes = 0;
+		long cpuStart = processCpuTime();
+		long start = System.nanoTime();
+		if (options.model().equals("5.1")) {
+			Example5_1Model model = new Example5_1Model(randomSource);
+			model.setProgressInterval(progressEpisodes, progressMillis);
+			model.setSampleDealerOutcomes(options.sampleDealer());
+			model.setSampleInitialHands(options.sampleInitialHand());
+			model.setVectorized(options.simd());
+			model.setCheckpoint(options.checkpoint(), options.checkpointEvery());
+			model.addPropertyChangeListener(evt -> {
+				if (Example5_1Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+					result.set(evt.getNewValue());
+				}
+			});
+			if (listener != null) {
+				model.addPropertyChangeListener(listener);
+			}
+			model.getMetrics().register();
+			Example5_1Model.ConvergenceCriteria criteria = options.tolerance() == null ? null
+					: new Example5_1Model.ConvergenceCriteria(options.tolerance(), 1.96, options.convergedShare(), 30);
+			try {
+				if (options.replay() != null) {
+					model.replaySimulation(options.replay());
+				} else if (options.record() != null) {
+					model.recordSimulation(episodes, options.threads(), options.record());
+				} else if (options.pipelined()) {
+					model.runPipelinedSimulation(episodes, options.threads());
+				} else if (criteria == null) {
+					model.runSimulation(episodes, options.threads(), options.resume());
+				} else {
+					model.runSimulation(episodes, options.threads(), criteria);
+				}
+			} finally {
+				playedEpisodes = model.getMetrics().getEpisodes();
+				model.getMetrics().unregister();
+			}
+		} else if (options.model().equals("5.4")) {
+			Example5_4Model model = new Example5_4Model(randomSource);
+			model.setProgressInterval(progressEpisodes, progressMillis);
+			model.setTargetPolicies(targetPolicies(options, solver));
+			int[] startState = parseStartState(options.start());
+			if (startState != null) {
+				model.setStartState(startState[0] == 1, startState[1], startState[2]);
+			}
+			model.addPropertyChangeListener(evt -> {
+				if (Example5_4Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+					result.set(evt.getNewValue());
+				}
+			});
+			if (listener != null) {
+				model.addPropertyChangeListener(listener);
+			}
+			model.runSimulation(episodes, options.threads());
+			if (result.get() instanceof Example5_4Model.SimulationResult simulationResult) {
+				playedEpisodes = simulationResult.episodes();
+			}
+		} else {
+			Example5_3Model model = new Example5_3Model(randomSource);
+			model.setProgressInterval(progressEpisodes, progressMillis);
+			model.setSampleDealerOutcomes(options.sampleDealer());
+			model.setSampleInitialHands(options.sampleInitialHand());
+			if (options.epsilon() != null) {
+				model.setEpsilonSchedule(new Example5_3Model.EpsilonSchedule(options.epsilon(), 0, options.epsilonDecay()));
+			}
+			model.setCheckpoint(options.checkpoint(), options.checkpointEvery());
+			model.addPropertyChangeListener(evt -> {
+				if (Example5_3Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+					result.set(evt.getNewValue());
+				}
+			});
+			if (listener != null) {
+				model.addPropertyChangeListener(listener);
+			}
+			model.getMetrics().register();
+			try {
+				if (options.replay() != null) {
+					model.replaySimulation(options.replay());
+				} else if (options.record() != null) {
+					model.recordSimulation(episodes, options.record());
+				} else {
+					model.runSimulation(episodes, options.threads(), options.resume());
+				}
+			} finally {
+				playedEpisodes = model.getMetrics().getEpisodes();
+				model.getMetrics().unregister();
+			}
+		}
+		if (result.get() == null) {
+			// An interrupted run stops without publishing a result; so does the sweep.
+			throw new CancellationException("Example " + options.model() + " was interrupted before publishing a result");
+		}
+		long wallNanos = System.nanoTime() - start;
+		long cpuNanos = cpuStart < 0 ? -1 : processCpuTime() - cpuStart;
+		return new TimedRun(result.get(), wallNanos, cpuNanos, playedEpisodes);
+	}
+
+	/**
+	 * Measures the error of a run against the exact solution. The row holds the episodes played,
+	 * the wall-clock and CPU milliseconds, and then either the RMS and maximum absolute error of
+	 * the state values (Example 5.1) or the number of states with a non-optimal action and the
+	 * average return lost by those actions (Example 5.3), or the root mean square over the target
+	 * policies of the ordinary and weighted importance-sampling errors (Example 5.4).
+	 */
+	private static double[] accuracyRow(TimedRun run, BatchOptions options, ExactBlackjackSolver solver) {
+		double wallMs = TimeUnit.NANOSECONDS.toMillis(run.wallNanos());
+		double cpuMs = run.cpuNanos() < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(run.cpuNanos());
+		if (run.result() instanceof Example5_1Model.SimulationResult result) {
+			double[][] exactUsableAce = solver.getStickOn20Values(true);
+			double[][] exactNonUsableAce = solver.getStickOn20Values(false);
+			double usableAceRms = ExactBlackjackSolver.rmsError(result.usableAceGrid(), exactUsableAce);
+			double nonUsableAceRms = ExactBlackjackSolver.rmsError(result.nonUsableAceGrid(), exactNonUsableAce);
+			double maxAbsError = Math.max(ExactBlackjackSolver.maxAbsError(result.usableAceGrid(), exactUsableAce),
+					ExactBlackjackSolver.maxAbsError(result.nonUsableAceGrid(), exactNonUsableAce));
+			double rms = Math.sqrt((usableAceRms * usableAceRms + nonUsableAceRms * nonUsableAceRms) / 2);
+			return new double[] { result.episodes(), wallMs, cpuMs, rms, maxAbsError };
+		}
+		if (run.result() instanceof Example5_4Model.SimulationResult result) {
+			double[][] errors = offPolicyErrors(result, targetPolicies(options, solver), options, solver);
+			double ordinary = 0;
+			double weighted = 0;
+			for (double[] error : errors) {
+				ordinary += error[0] * error[0];
+				weighted += error[1] * error[1];
+			}
+			return new double[] { result.episodes(), wallMs, cpuMs,
+					Math.sqrt(ordinary / errors.length), Math.sqrt(weighted / errors.length) };
+		}
+		Example5_3Model.SimulationResult result = (Example5_3Model.SimulationResult) run.result();
+		int disagreements = solver.countPolicyDisagreements(true, result.usableAceGrid())
+				+ solver.countPolicyDisagreements(false, result.nonUsableAceGrid());
+		double actionLoss = (solver.averageActionLoss(true, result.usableAceGrid())
+				+ solver.averageActionLoss(false, result.nonUsableAceGrid())) / 2;
+		return new double[] { result.episodes(), wallMs, cpuMs, disagreements, actionLoss };
+	}
+
+	/**
+	 * Builds the target policies of Example 5.4 named by the options.
+	 */
+	private static List<Example5_4Model.TargetPolicy> targetPolicies(BatchOptions options, ExactBlackjackSolver solver) {
+		List<Example5_4Model.TargetPolicy> policies = new ArrayList<>();
+		for (String target : options.targets()) {
+			policies.add(target.equals("optimal")
+					? new Example5_4Model.TargetPolicy(target, solver.getOptimalPolicy(true), solver.getOptimalPolicy(false))
+					: Example5_4Model.TargetPolicy.stickOn(Integer.parseInt(target.substring("stick".length()))));
+		}
+		return policies;
+	}
+
+	/**
+	 * Parses a start state like soft13:2.
+	 * @return The usable ace flag (0 or 1), the player's sum and the dealer's card, or null for dealt hands.
+	 */
+	private static int[] parseStartState(String start) {
+		if (start == null) {
+			return null;
+		}
+		Matcher matcher = START_STATE.matcher(start);
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Invalid start state " + start);
+		}
+		return new int[] { matcher.group(1).equals("soft") ? 1 : 0,
+				Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)) };
+	}
+
+	/**
+	 * Measures the error of the ordinary and weighted estimates of every target policy against its
+	 * exact values: the absolute error in the start state if there is one, and otherwise the root
+	 * mean square error over all states.
+	 * @return The ordinary and weighted errors, indexed [policy][0 for ordinary, 1 for weighted].
+	 */
+	private static double[][] offPolicyErrors(Example5_4Model.SimulationResult result,
+			List<Example5_4Model.TargetPolicy> targets, BatchOptions options, ExactBlackjackSolver solver) {
+		int[] start = parseStartState(options.start());
+		double[][] errors = new double[targets.size()][];
+		for (int i = 0; i < targets.size(); i++) {
+			Example5_4Model.PolicyEstimate estimate = result.estimates().get(i);
+			double[][][] exact = solver.getPolicyValues(targets.get(i).usableAcePolicy(), targets.get(i).nonUsableAcePolicy());
+			if (start != null) {
+				int row = start[1] - 12;
+				int column = start[2] - 1;
+				double[][] ordinary = start[0] == 1 ? estimate.usableAceOrdinary() : estimate.nonUsableAceOrdinary();
+				double[][] weighted = start[0] == 1 ? estimate.usableAceWeighted() : estimate.nonUsableAceWeighted();
+				double value = exact[start[0]][row][column];
+				errors[i] = new double[] { Math.abs(ordinary[row][column] - value), Math.abs(weighted[row][column] - value) };
+			} else {
+				errors[i] = new double[] {
+						combinedRms(estimate.usableAceOrdinary(), estimate.nonUsableAceOrdinary(), exact),
+						combinedRms(estimate.usableAceWeighted(), estimate.nonUsableAceWeighted(), exact) };
+			}
+		}
+		return errors;
+	}
+
+	private static double combinedRms(double[][] usableAce, double[][] nonUsableAce, double[][][] exact) {
+		double usableAceRms = ExactBlackjackSolver.rmsError(usableAce, exact[1]);
+		double nonUsableAceRms = ExactBlackjackSolver.rmsError(nonUsableAce, exact[0]);
+		return Math.sqrt((usableAceRms * usableAceRms + nonUsableAceRms * nonUsableAceRms) / 2);
+	}
+
+	/**
+	 * @return The CPU time used by the whole process in nanoseconds, or -1 if the JVM does not report it.
+	 */
+	private static long processCpuTime() {
+		OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+		if (bean instanceof com.sun.management.OperatingSystemMXBean sunBean) {
+			return sunBean.getProcessCpuTime();
+		}
+		return -1;
+	}
+}
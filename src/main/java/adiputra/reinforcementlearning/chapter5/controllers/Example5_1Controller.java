@@ -7,6 +7,8 @@ import adiputra.reinforcementlearning.chapter5.views.Example5_1View;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -31,11 +33,15 @@ public class Example5_1Controller implements PropertyChangeListener {
     private final Example5_1Model model;
     private final Example5_1View view;
     private int episodes;
+    // Latest progress and status published by the model, waiting to be shown on the EDT.
+    private final AtomicReference<Integer> pendingProgress = new AtomicReference<>();
+    private final AtomicReference<String> pendingStatus = new AtomicReference<>();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
 
     /**
      * Constructs the controller and sets up the necessary listeners to connect the model and view.
-     * It registers itself as a listener for property changes in the model and sets up a listener
-     * for the simulation request action in the view.
+     * It registers itself as a listener for property changes in the model and sets up listeners
+     * for the simulation request and stop actions in the view.
      *
      * @param model The application's model, containing the simulation logic.
      * @param view  The application's view, responsible for displaying data and capturing user input.
@@ -46,14 +52,15 @@ public class Example5_1Controller implements PropertyChangeListener {
 
         this.model.addPropertyChangeListener(this);
         this.view.addSimulateListener(e -> handleSimulationRequest());
+        this.view.addStopListener(e -> model.cancel());
     }
 
     /**
      * Handles the user's request to start the simulation.
      * It parses the number of episodes from the view's input field, validates the input,
      * and initiates a background task using {@link SwingWorker} to run the simulation
-     * defined in the model. It also manages the UI state (e.g., disabling the simulate button)
-     * during the simulation.
+     * defined in the model, sharded across all available processors. It also manages
+     * the UI state (e.g., disabling the simulate button) during the simulation.
      */
     private void handleSimulationRequest() {
         try {
@@ -64,19 +71,21 @@ public class Example5_1Controller implements PropertyChangeListener {
         }
 
         view.setSimulateButtonEnabled(false);
+        view.setStopButtonEnabled(true);
         view.setProgress(0);
         view.setStatus("Status: Starting simulation...");
 
         SwingWorker<Void, Void> worker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() throws Exception {
-                model.runSimulation(episodes);
+                model.runSimulation(episodes, Runtime.getRuntime().availableProcessors());
                 return null;
             }
 
             @Override
             protected void done() {
                 view.setSimulateButtonEnabled(true);
+                view.setStopButtonEnabled(false);
             }
         };
         worker.execute();
@@ -86,8 +95,9 @@ public class Example5_1Controller implements PropertyChangeListener {
      * Responds to property changes from the model.
      * This method is called when the model updates its state (e.g., progress, status, or completion).
      * It ensures that all UI updates are performed safely on the Event Dispatch Thread (EDT)
-     * by using {@link SwingUtilities#invokeLater}. Depending on the property that changed,
-     * it updates the view's progress bar, status label, or displays the final result charts.
+     * by using {@link SwingUtilities#invokeLater}. Progress and status updates are coalesced:
+     * only the latest values are kept, and at most one pending EDT task applies them to the view's
+     * progress bar and status label. The final result is shown as soon as it arrives.
      *
      * @param evt A {@link PropertyChangeEvent} object describing the event source
      * and the property that has changed.
@@ -96,20 +106,50 @@ public class Example5_1Controller implements PropertyChangeListener {
     public void propertyChange(PropertyChangeEvent evt) {
         String propertyName = evt.getPropertyName();
 
-        SwingUtilities.invokeLater(() -> {
-            switch (propertyName) {
-                case Example5_1Model.PROGRESS_PROPERTY:
-                    view.setProgress((Integer) evt.getNewValue());
-                    break;
-                case Example5_1Model.STATUS_PROPERTY:
-                    view.setStatus((String) evt.getNewValue());
-                    break;
-                case Example5_1Model.RESULT_PROPERTY:
-                	Example5_1Model.SimulationResult result = (Example5_1Model.SimulationResult) evt.getNewValue();
-                    view.showResultCharts(result.usableAceGrid(), result.nonUsableAceGrid(), episodes);
-                    view.setStatus("Status: Completed");
-                    break;
-            }
-        });
+        switch (propertyName) {
+            case Example5_1Model.PROGRESS_PROPERTY:
+                pendingProgress.set((Integer) evt.getNewValue());
+                scheduleUpdate();
+                break;
+            case Example5_1Model.STATUS_PROPERTY:
+                pendingStatus.set((String) evt.getNewValue());
+                scheduleUpdate();
+                break;
+            case Example5_1Model.RESULT_PROPERTY:
+                Example5_1Model.SimulationResult result = (Example5_1Model.SimulationResult) evt.getNewValue();
+                SwingUtilities.invokeLater(() -> {
+                    flushUpdates();
+                    view.showResultCharts(result.usableAceGrid(), result.nonUsableAceGrid(), result.episodes());
+                    view.setStatus(result.cancelled()
+                            ? "Status: Stopped after " + result.episodes() + " episodes"
+                            : "Status: Completed");
+                });
+                break;
+        }
+    }
+
+    /**
+     * Schedules a single {@link #flushUpdates()} on the EDT unless one is already pending, so that
+     * bursts of progress events from the model collapse into one UI update.
+     */
+    private void scheduleUpdate() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flushUpdates);
+        }
+    }
+
+    /**
+     * Shows the latest pending progress and status in the view. Must be called on the EDT.
+     */
+    private void flushUpdates() {
+        updateScheduled.set(false);
+        Integer progress = pendingProgress.getAndSet(null);
+        if (progress != null) {
+            view.setProgress(progress);
+        }
+        String status = pendingStatus.getAndSet(null);
+        if (status != null) {
+            view.setStatus(status);
+        }
     }
 }
\ No newline at end of file
@@ -7,11 +7,17 @@ import adiputra.reinforcementlearning.chapter5.views.Example5_3View;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Example5_3Controller implements PropertyChangeListener {
     private final Example5_3Model model;
     private final Example5_3View view;
     private int episodes;
+    // Latest progress and status published by the model, waiting to be shown on the EDT.
+    private final AtomicReference<Integer> pendingProgress = new AtomicReference<>();
+    private final AtomicReference<String> pendingStatus = new AtomicReference<>();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
 
     public Example5_3Controller(Example5_3Model model, Example5_3View view) {
         this.model = model;
@@ -19,6 +25,7 @@ public class Example5_3Controller implements PropertyChangeListener {
 
         this.model.addPropertyChangeListener(this);
         this.view.addSimulateListener(e -> handleSimulationRequest());
+        this.view.addStopListener(e -> model.cancel());
     }
 
     private void handleSimulationRequest() {
@@ -30,19 +37,21 @@ public class Example5_3Controller implements PropertyChangeListener {
         }
 
         view.setSimulateButtonEnabled(false);
+        view.setStopButtonEnabled(true);
         view.setProgress(0);
         view.setStatus("Status: Starting simulation...");
 
         SwingWorker<Void, Void> worker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() throws Exception {
-                model.runSimulation(episodes);
+                model.runSimulation(episodes, Runtime.getRuntime().availableProcessors());
                 return null;
             }
 
             @Override
             protected void done() {
                 view.setSimulateButtonEnabled(true);
+                view.setStopButtonEnabled(false);
             }
         };
         worker.execute();
@@ -52,20 +61,43 @@ public class Example5_3Controller implements PropertyChangeListener {
     public void propertyChange(PropertyChangeEvent evt) {
         String propertyName = evt.getPropertyName();
 
-        SwingUtilities.invokeLater(() -> {
-            switch (propertyName) {
-                case Example5_3Model.PROGRESS_PROPERTY:
-                    view.setProgress((Integer) evt.getNewValue());
-                    break;
-                case Example5_3Model.STATUS_PROPERTY:
-                    view.setStatus((String) evt.getNewValue());
-                    break;
-                case Example5_3Model.RESULT_PROPERTY:
-                	Example5_3Model.SimulationResult result = (Example5_3Model.SimulationResult) evt.getNewValue();
-                    view.showResultCharts(result.usableAceGrid(), result.nonUsableAceGrid(), episodes);
-                    view.setStatus("Status: Completed");
-                    break;
-            }
-        });
+        switch (propertyName) {
+            case Example5_3Model.PROGRESS_PROPERTY:
+                pendingProgress.set((Integer) evt.getNewValue());
+                scheduleUpdate();
+                break;
+            case Example5_3Model.STATUS_PROPERTY:
+                pendingStatus.set((String) evt.getNewValue());
+                scheduleUpdate();
+                break;
+            case Example5_3Model.RESULT_PROPERTY:
+                Example5_3Model.SimulationResult result = (Example5_3Model.SimulationResult) evt.getNewValue();
+                SwingUtilities.invokeLater(() -> {
+                    flushUpdates();
+                    view.showResultCharts(result.usableAceGrid(), result.nonUsableAceGrid(), result.episodes());
+                    view.setStatus(result.cancelled()
+                            ? "Status: Stopped after " + result.episodes() + " episodes"
+                            : "Status: Completed");
+                });
+                break;
+        }
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flushUpdates);
+        }
+    }
+
+    private void flushUpdates() {
+        updateScheduled.set(false);
+        Integer progress = pendingProgress.getAndSet(null);
+        if (progress != null) {
+            view.setProgress(progress);
+        }
+        String status = pendingStatus.getAndSet(null);
+        if (status != null) {
+            view.setStatus(status);
+        }
     }
 }
@@ -0,0 +1,170 @@
+package adiputra.reinforcementlearning.chapter5.controllers;
+
+import javax.swing.*;
+
+import adiputra.reinforcementlearning.chapter5.cli.BatchReport;
+import adiputra.reinforcementlearning.chapter5.cli.BatchRunner;
+import adiputra.reinforcementlearning.chapter5.cli.BatchRunner.BatchOptions;
+import adiputra.reinforcementlearning.chapter5.experiments.ExperimentJob;
+import adiputra.reinforcementlearning.chapter5.experiments.ExperimentScheduler;
+import adiputra.reinforcementlearning.chapter5.views.ExperimentsView;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The Controller of the experiment scheduler. It parses the jobs entered in the
+ * {@link ExperimentsView} with {@link BatchRunner#parse(String[])}, submits them to the
+ * {@link ExperimentScheduler} and keeps the view's job list up to date. The scheduler announces
+ * changes from its own threads, often several per job and second, so refreshing the list is
+ * coalesced into one update on the EDT.
+ *
+ * @see ExperimentScheduler
+ * @see ExperimentsView
+ */
+public class ExperimentsController implements PropertyChangeListener {
+    private final ExperimentScheduler scheduler;
+    private final ExperimentsView view;
+    // The jobs shown by the view, by row; only accessed on the EDT.
+    private List<ExperimentJob> shownJobs = List.of();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+
+    public ExperimentsController(ExperimentScheduler scheduler, ExperimentsView view) {
+        this.scheduler = scheduler;
+        this.view = view;
+
+        this.scheduler.addPropertyChangeListener(this);
+        this.view.addSubmitListener(e -> handleSubmitRequest());
+        this.view.addCancelListener(e -> selectedJobs().forEach(ExperimentJob::cancel));
+        this.view.addClearListener(e -> scheduler.removeFinishedJobs());
+        this.view.addSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showDetails();
+            }
+        });
+    }
+
+    /**
+     * Parses every non-empty line of the job area that is not a {@code #} comment, and submits the
+     * jobs only if all of them are valid and none shares a checkpoint or episode log with another.
+     */
+    private void handleSubmitRequest() {
+        String[] lines = view.getJobs().split("\\R");
+        List<String> names = new ArrayList<>();
+        List<BatchOptions> jobs = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                BatchOptions options = BatchRunner.parse(line.split("\\s+"));
+                if (options.threads() > scheduler.getParallelism()) {
+                    throw new IllegalArgumentException("--threads must be at most " + scheduler.getParallelism());
+                }
+                names.add(line);
+                jobs.add(options);
+            } catch (IllegalArgumentException ex) {
+                view.setStatus("Error on line " + (i + 1) + ": " + ex.getMessage());
+                return;
+            }
+        }
+        try {
+            scheduler.submitAll(names, jobs);
+        } catch (IllegalArgumentException ex) {
+            view.setStatus("Error: " + ex.getMessage());
+            return;
+        }
+        view.setStatus("Status: Submitted " + jobs.size() + " jobs");
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (updateScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flushUpdates);
+        }
+    }
+
+    private void flushUpdates() {
+        updateScheduled.set(false);
+        shownJobs = scheduler.getJobs();
+        List<Object[]> rows = new ArrayList<>();
+        int running = 0;
+        int queued = 0;
+        for (ExperimentJob job : shownJobs) {
+            rows.add(new Object[] { job.getId(), job.getName(), describeState(job), summarize(job) });
+            if (job.getState() == ExperimentJob.State.RUNNING) {
+                running++;
+            } else if (job.getState() == ExperimentJob.State.QUEUED) {
+                queued++;
+            }
+        }
+        view.setJobs(rows);
+        view.setStatus("Status: " + running + " running, " + queued + " queued on " + scheduler.getParallelism() + " cores");
+        showDetails();
+    }
+
+    private List<ExperimentJob> selectedJobs() {
+        List<ExperimentJob> jobs = new ArrayList<>();
+        for (int row : view.getSelectedJobs()) {
+            if (row < shownJobs.size()) {
+                jobs.add(shownJobs.get(row));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Shows all statistics of the selected job, or why it failed.
+     */
+    private void showDetails() {
+        List<ExperimentJob> jobs = selectedJobs();
+        if (jobs.isEmpty()) {
+            view.setDetails("");
+            return;
+        }
+        ExperimentJob job = jobs.get(0);
+        StringBuilder details = new StringBuilder(job.getName()).append('\n');
+        if (job.getError() != null) {
+            details.append("error: ").append(job.getError()).append('\n');
+        }
+        if (job.getReport() != null) {
+            for (Map.Entry<String, Object> stat : job.getReport().getStats().entrySet()) {
+                details.append(stat.getKey()).append(": ").append(stat.getValue()).append('\n');
+            }
+            if (job.getState() == ExperimentJob.State.DONE) {
+                details.append("output: ").append(job.getOutput()).append('\n');
+            }
+        }
+        view.setDetails(details.toString());
+    }
+
+    private static String describeState(ExperimentJob job) {
+        return job.getState() == ExperimentJob.State.RUNNING ? "RUNNING " + job.getProgress() + "%" : job.getState().toString();
+    }
+
+    /**
+     * @return The main error measure and the wall time of an ended job.
+     */
+    private static String summarize(ExperimentJob job) {
+        if (job.getError() != null) {
+            return job.getError().getMessage();
+        }
+        BatchReport report = job.getReport();
+        if (report == null) {
+            return "";
+        }
+        Map<String, Object> stats = report.getStats();
+        String summary = stats.get("wallTimeMs") + " ms";
+        if (stats.containsKey("rmsError")) {
+            summary += String.format(", RMS error %.4f", ((Number) stats.get("rmsError")).doubleValue());
+        } else if (stats.containsKey("policyDisagreements")) {
+            summary += ", " + stats.get("policyDisagreements") + " non-optimal actions";
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,190 @@
+package adiputra.reinforcementlearning.chapter5.experiments;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.nio.file.Path;
+
+import adiputra.reinforcementlearning.chapter5.cli.BatchReport;
+import adiputra.reinforcementlearning.chapter5.cli.BatchRunner.BatchOptions;
+import adiputra.reinforcementlearning.chapter5.models.Example5_1Model;
+import adiputra.reinforcementlearning.chapter5.models.Example5_3Model;
+import adiputra.reinforcementlearning.chapter5.models.Example5_4Model;
+
+/**
+ * A batch run submitted to an {@link ExperimentScheduler}, with its state, progress and result.
+ * The scheduler updates a job from its own threads and announces every change as a
+ * {@link ExperimentScheduler#JOB_PROPERTY} event; the getters can be called from any thread.
+ *
+ * <p>A job listens to the models of its run, which gives it the run's progress and the model to
+ * stop when the job is cancelled.
+ */
+public final class ExperimentJob implements PropertyChangeListener {
+    /**
+     * The life cycle of a job: queued until the scheduler has CPU slots for it, then running, and
+     * finally done, cancelled or failed.
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, CANCELLED, FAILED;
+
+        /**
+         * @return True if the job has ended, one way or another.
+         */
+        public boolean isFinished() {
+            return this == DONE || this == CANCELLED || this == FAILED;
+        }
+    }
+
+    private final ExperimentScheduler scheduler;
+    private final int id;
+    private final String name;
+    private final BatchOptions options;
+    private volatile State state = State.QUEUED;
+    private volatile int progress;
+    private volatile BatchReport report;
+    private volatile Throwable error;
+    private volatile boolean cancelRequested;
+    // The thread orchestrating the job, and the model running it.
+    private volatile Thread thread;
+    private volatile Object model;
+
+    ExperimentJob(ExperimentScheduler scheduler, int id, String name, BatchOptions options) {
+        this.scheduler = scheduler;
+        this.id = id;
+        this.name = name;
+        this.options = options;
+    }
+
+    /**
+     * @return The number of the job, unique within its scheduler and increasing in submission order.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The name the job was submitted with, e.g. its command line.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public BatchOptions getOptions() {
+        return options;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return The completed share of the current model run as a percentage between 0 and 100.
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return The report of the run, or null if the job has not ended or failed.
+     */
+    public BatchReport getReport() {
+        return report;
+    }
+
+    /**
+     * @return Why the job failed, or null.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return The directory the report of the job is written to once it is done, unique to the
+     *         job and its scheduler: {@code <output>/experiments-<session>/job-<id>}.
+     */
+    public Path getOutput() {
+        return options.output().resolve(scheduler.getSession()).resolve("job-" + id);
+    }
+
+    /**
+     * Cancels the job: a queued job is dropped, and a running one stops its model after the
+     * current chunk of episodes and ends with the partial result. Ended jobs are not affected.
+     */
+    public void cancel() {
+        if (state.isFinished()) {
+            return;
+        }
+        cancelRequested = true;
+        Thread thread = this.thread;
+        if (state == State.QUEUED && thread != null) {
+            // Wakes the scheduler's thread waiting for CPU slots.
+            thread.interrupt();
+        }
+        cancelModel(model);
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Follows the models of the run. A model started after the job was cancelled, e.g. by the next
+     * step of an accuracy sweep, is stopped by its first event.
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        Object source = evt.getSource();
+        if (model != source) {
+            model = source;
+            if (cancelRequested) {
+                cancelModel(source);
+            }
+        }
+        if (Example5_1Model.PROGRESS_PROPERTY.equals(evt.getPropertyName()) && evt.getNewValue() instanceof Integer value
+                && value != progress) {
+            progress = value;
+            scheduler.fireJobChanged(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + name + " (" + state + ")";
+    }
+
+    /**
+     * Records the thread waiting for the job's CPU slots, which {@link #cancel()} interrupts.
+     */
+    void waiting(Thread thread) {
+        this.thread = thread;
+    }
+
+    void started() {
+        state = State.RUNNING;
+        scheduler.fireJobChanged(this);
+    }
+
+    void finished(State state, BatchReport report, Throwable error) {
+        this.report = report;
+        this.error = error;
+        if (state == State.DONE) {
+            progress = 100;
+        }
+        this.state = state;
+        thread = null;
+        model = null;
+        scheduler.fireJobChanged(this);
+    }
+
+    /**
+     * Stops the current run of a model, if it is one of the chapter 5 models.
+     */
+    private static void cancelModel(Object model) {
+        if (model instanceof Example5_1Model example5_1Model) {
+            example5_1Model.cancel();
+        } else if (model instanceof Example5_3Model example5_3Model) {
+            example5_3Model.cancel();
+        } else if (model instanceof Example5_4Model example5_4Model) {
+            example5_4Model.cancel();
+        }
+    }
+}
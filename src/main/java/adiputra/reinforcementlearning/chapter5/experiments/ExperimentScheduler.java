@@ -0,0 +1,299 @@
+package adiputra.reinforcementlearning.chapter5.experiments;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import adiputra.reinforcementlearning.chapter5.cli.BatchReport;
+import adiputra.reinforcementlearning.chapter5.cli.BatchRunner;
+import adiputra.reinforcementlearning.chapter5.cli.BatchRunner.BatchOptions;
+
+/**
+ * Runs many batch runs of the chapter 5 models concurrently, e.g. a sweep over episode counts,
+ * seeds and variants, while keeping the CPU load within the number of cores.
+ *
+ * <p>Every submitted {@link ExperimentJob} is orchestrated by its own virtual thread, which waits
+ * for CPU slots, hands the run to a bounded pool of platform threads and writes the report once
+ * the run is done. A job takes one slot per worker thread of its run, {@code --threads}, so the
+ * runs in progress never use more threads than the scheduler has slots; waiting jobs and writing
+ * reports cost no platform thread at all. Jobs take their slots in about the order they were
+ * submitted, and slots are released before the report is written. Many jobs of one thread each keep
+ * all cores busy with no merging at all, and since a run is reproducible from its seed, its result
+ * does not depend on what else is running.
+ *
+ * <p>The report of a job that is done is written in the format of its options to the directory
+ * {@code experiments-<session>/job-<id>} of its output directory, where the session is the time
+ * the scheduler was created, see {@link ExperimentJob#getOutput()}. Reports are never
+ * overwritten: a job whose directory already exists fails. Jobs that would write to the same
+ * checkpoint or episode log, or read a log another job writes, are not run at the same time: such a
+ * job is rejected while the other one is queued or running. The CPU time of a report is that of the
+ * whole process, so it includes the jobs running alongside.
+ *
+ * <p>The scheduler fires a {@link #JOB_PROPERTY} event, from its own threads, whenever a job is
+ * submitted, starts, progresses or ends, and a {@link #JOBS_PROPERTY} event when jobs are removed.
+ */
+public final class ExperimentScheduler implements AutoCloseable {
+    /** The property of the events announcing a change of a job; the new value is the job. */
+    public static final String JOB_PROPERTY = "job";
+    /** The property of the events announcing that jobs were removed from the list. */
+    public static final String JOBS_PROPERTY = "jobs";
+
+    private static final DateTimeFormatter SESSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final int parallelism;
+    private final String session = "experiments-" + LocalDateTime.now().format(SESSION_FORMAT);
+    private final Semaphore cpuSlots;
+    private final ExecutorService cpuPool;
+    private final ExecutorService orchestrators = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<ExperimentJob> jobs = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final PropertyChangeSupport support = new PropertyChangeSupport(this);
+
+    /**
+     * Creates a scheduler with one CPU slot per available processor.
+     */
+    public ExperimentScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scheduler.
+     * @param parallelism The number of CPU slots, i.e. the most worker threads running at a time.
+     * @throws IllegalArgumentException if the parallelism is not positive.
+     */
+    public ExperimentScheduler(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.cpuSlots = new Semaphore(parallelism, true);
+        this.cpuPool = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("experiment-cpu-", 1).daemon().factory());
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        support.addPropertyChangeListener(listener);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        support.removePropertyChangeListener(listener);
+    }
+
+    /**
+     * @return The number of CPU slots.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The name of the directory, below the output directory of every job, that holds the
+     *         reports of this scheduler's jobs.
+     */
+    public String getSession() {
+        return session;
+    }
+
+    /**
+     * Queues a batch run.
+     * @param name The name of the job, e.g. its command line.
+     * @param options The run, as parsed by {@link BatchRunner#parse(String[])}.
+     * @return The job, queued until the scheduler has {@code options.threads()} free CPU slots.
+     * @throws IllegalArgumentException if the run needs more threads than the scheduler has slots,
+     *         or uses the checkpoint or episode log of a queued or running job.
+     * @throws java.util.concurrent.RejectedExecutionException if the scheduler is closed.
+     */
+    public synchronized ExperimentJob submit(String name, BatchOptions options) {
+        return submitAll(List.of(name), List.of(options)).get(0);
+    }
+
+    /**
+     * Queues several batch runs, either all of them or, if one of them is invalid, none.
+     * @param names The names of the jobs.
+     * @param options The runs, one per name.
+     * @return The jobs, in the order of the runs.
+     * @throws IllegalArgumentException if a run needs more threads than the scheduler has slots,
+     *         or uses the checkpoint or episode log of a queued or running job or of another run.
+     * @throws java.util.concurrent.RejectedExecutionException if the scheduler is closed.
+     */
+    public synchronized List<ExperimentJob> submitAll(List<String> names, List<BatchOptions> options) {
+        List<BatchOptions> active = new ArrayList<>();
+        for (ExperimentJob job : jobs) {
+            if (!job.getState().isFinished()) {
+                active.add(job.getOptions());
+            }
+        }
+        for (int i = 0; i < options.size(); i++) {
+            BatchOptions run = options.get(i);
+            if (run.threads() > parallelism) {
+                throw new IllegalArgumentException(names.get(i) + ": a job of " + run.threads() + " threads exceeds the "
+                        + parallelism + " CPU slots of the scheduler");
+            }
+            for (BatchOptions other : active) {
+                Path shared = sharedFile(run, other);
+                if (shared != null) {
+                    throw new IllegalArgumentException(names.get(i) + ": " + shared + " is used by another job");
+                }
+            }
+            active.add(run);
+        }
+        List<ExperimentJob> submitted = new ArrayList<>();
+        for (int i = 0; i < options.size(); i++) {
+            submitted.add(enqueue(names.get(i), options.get(i)));
+        }
+        return submitted;
+    }
+
+    private ExperimentJob enqueue(String name, BatchOptions options) {
+        ExperimentJob job = new ExperimentJob(this, nextId.getAndIncrement(), name, options);
+        jobs.add(job);
+        orchestrators.execute(() -> run(job));
+        fireJobChanged(job);
+        return job;
+    }
+
+    /**
+     * @return The jobs in submission order, from queued to ended ones.
+     */
+    public List<ExperimentJob> getJobs() {
+        return List.copyOf(jobs);
+    }
+
+    /**
+     * Removes the jobs that have ended from the list.
+     */
+    public void removeFinishedJobs() {
+        if (jobs.removeIf(job -> job.getState().isFinished())) {
+            support.firePropertyChange(JOBS_PROPERTY, null, getJobs());
+        }
+    }
+
+    /**
+     * Cancels all jobs, and waits until the running ones have stopped and the pools have shut down.
+     */
+    @Override
+    public void close() {
+        jobs.forEach(ExperimentJob::cancel);
+        orchestrators.close();
+        cpuPool.close();
+    }
+
+    /**
+     * @return A file that one of the runs writes and the other one reads or writes, or null.
+     */
+    private static Path sharedFile(BatchOptions run, BatchOptions other) {
+        List<Path> written = filesWritten(run);
+        List<Path> otherWritten = filesWritten(other);
+        for (Path file : written) {
+            if (otherWritten.contains(file) || file.equals(normalize(other.replay()))) {
+                return file;
+            }
+        }
+        for (Path file : otherWritten) {
+            if (file.equals(normalize(run.replay()))) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The checkpoint and episode log a run writes, as absolute paths.
+     */
+    private static List<Path> filesWritten(BatchOptions options) {
+        List<Path> files = new ArrayList<>();
+        if (options.checkpoint() != null) {
+            files.add(normalize(options.checkpoint()));
+        }
+        if (options.record() != null) {
+            files.add(normalize(options.record()));
+        }
+        return files;
+    }
+
+    private static Path normalize(Path path) {
+        return path == null ? null : path.toAbsolutePath().normalize();
+    }
+
+    void fireJobChanged(ExperimentJob job) {
+        support.firePropertyChange(JOB_PROPERTY, null, job);
+    }
+
+    /**
+     * Orchestrates a job on its virtual thread: waits for its CPU slots, runs it on the CPU pool and
+     * writes its report.
+     */
+    private void run(ExperimentJob job) {
+        int slots = Math.max(1, job.getOptions().threads());
+        job.waiting(Thread.currentThread());
+        try {
+            if (job.isCancelRequested()) {
+                job.finished(ExperimentJob.State.CANCELLED, null, null);
+                return;
+            }
+            cpuSlots.acquire(slots);
+        } catch (InterruptedException e) {
+            job.finished(ExperimentJob.State.CANCELLED, null, null);
+            return;
+        }
+
+        BatchReport report;
+        try {
+            job.started();
+            report = await(cpuPool.submit(() -> BatchRunner.run(job.getOptions(), job)), job);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                job.finished(ExperimentJob.State.CANCELLED, null, null);
+            } else {
+                job.finished(ExperimentJob.State.FAILED, null, e.getCause());
+            }
+            return;
+        } finally {
+            cpuSlots.release(slots);
+        }
+        if (job.isCancelRequested()) {
+            job.finished(ExperimentJob.State.CANCELLED, report, null);
+            return;
+        }
+        try {
+            Path output = job.getOutput();
+            Files.createDirectories(output.getParent());
+            // Fails if the directory exists, rather than overwriting the reports of another session.
+            Files.createDirectory(output);
+            BatchRunner.writeReport(report, job.getOptions().format(), output);
+        } catch (IOException e) {
+            job.finished(ExperimentJob.State.FAILED, report, e);
+            return;
+        }
+        job.finished(ExperimentJob.State.DONE, report, null);
+    }
+
+    /**
+     * Waits for the run of a job. An interrupt, from {@link ExperimentJob#cancel()} racing with the
+     * start of the job, cancels the job, and the run is still waited for so that its slots are only
+     * released once it has stopped.
+     */
+    private static BatchReport await(Future<BatchReport> run, ExperimentJob job) throws ExecutionException {
+        while (true) {
+            try {
+                return run.get();
+            } catch (InterruptedException e) {
+                job.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.random.RandomGenerator;
+
+import adiputra.reinforcementlearning.engine.Environment;
+
+/**
+ * The Blackjack game of chapter 5 as an {@link Environment}, shared by the models of Examples 5.1,
+ * 5.3 and 5.4.
+ *
+ * <p>The initial hands are dealt until their sum reaches a minimum (12 in Examples 5.1 and 5.4, 11
+ * in Example 5.3), the dealer hits below 17 and an ace drawn by a hit counts as 1. A state is the
+ * player's decision point, numbered like in {@link StateActionValueTable}, and the actions are
+ * {@link #HIT} and {@link #STICK}, the ordinals of {@link Example5_3Model.Action}. The reward is 0
+ * for a hit the player survives, and 1, 0 or -1 when the game ends.
+ *
+ * <p>Hands are packed as {@code sum << 1 | usableAce} and hit through a {@link HandTransitionTable},
+ * so a game is a handful of table lookups and does not allocate. The player's initial hand and the
+ * dealer's final sum can either be dealt and played card by card or sampled with a single random
+ * number from their exact distributions; a sampled dealer is not drawn at all when the player went
+ * bust. Both ways give the same distribution of returns but consume the random streams differently.
+ * Card by card, the dealer's hand is dealt at the start of a game and played at its end even when
+ * the player went bust, in the order the models have always drawn their cards.
+ *
+ * <p>An instance holds the game in progress and must only be used by one thread at a time.
+ */
+public final class BlackjackEnvironment implements Environment {
+    /** The action of drawing another card. */
+    public static final int HIT = 0;
+    /** The action of ending the player's turn. */
+    public static final int STICK = 1;
+    /** Upper bound on the number of decisions of the player in one game. */
+    public static final int MAX_DECISIONS = 32;
+
+    private final HandTransitionTable transitions;
+    private final DealerOutcomeDistribution dealerOutcomes;
+    private final int minPlayerSum;
+    private final int playerSums;
+    private boolean sampleDealerOutcomes;
+    private boolean sampleInitialHands;
+    // The packed start hand and dealer card, or -1 to deal every game.
+    private int startHand = -1;
+    private int startDealerCard;
+
+    // The game in progress.
+    private int hand;
+    private int dealerCard;
+    private int dealerHand;
+    private int reward;
+
+    /**
+     * Creates the game for the minimum initial sum of the given tables.
+     * @param transitions The hit transitions and initial hands.
+     * @param dealerOutcomes The dealer's final sums, for the same minimum initial sum.
+     */
+    public BlackjackEnvironment(HandTransitionTable transitions, DealerOutcomeDistribution dealerOutcomes) {
+        this.transitions = transitions;
+        this.dealerOutcomes = dealerOutcomes;
+        this.minPlayerSum = transitions.getMinInitialSum();
+        this.playerSums = 21 - minPlayerSum + 1;
+    }
+
+    /**
+     * @param sampleDealerOutcomes True to sample the dealer's final sum, false to play the dealer's hand.
+     */
+    public void setSampleDealerOutcomes(boolean sampleDealerOutcomes) {
+        this.sampleDealerOutcomes = sampleDealerOutcomes;
+    }
+
+    /**
+     * @param sampleInitialHands True to sample the player's initial hand, false to deal it card by card.
+     */
+    public void setSampleInitialHands(boolean sampleInitialHands) {
+        this.sampleInitialHands = sampleInitialHands;
+    }
+
+    /**
+     * Lets every game start from the given state instead of dealt cards.
+     * @param usableAce True if the player holds a usable ace.
+     * @param playerSum The player's sum.
+     * @param dealerCard The dealer's face-up card (1-10).
+     */
+    public void setStartState(boolean usableAce, int playerSum, int dealerCard) {
+        this.startHand = (playerSum << 1) | (usableAce ? 1 : 0);
+        this.startDealerCard = dealerCard;
+    }
+
+    /**
+     * Lets every game start from dealt cards again.
+     */
+    public void clearStartState() {
+        this.startHand = -1;
+    }
+
+    @Override
+    public int reset(RandomGenerator random) {
+        if (startHand >= 0) {
+            hand = startHand;
+            dealerCard = startDealerCard;
+        } else {
+            hand = sampleInitialHands ? transitions.dealInitialHand(random) : dealInitialHand(drawCard(random), random);
+            dealerCard = drawCard(random);
+        }
+        dealerHand = sampleDealerOutcomes ? 0 : dealInitialHand(dealerCard, random);
+        reward = 0;
+        return state(hand);
+    }
+
+    @Override
+    public int step(int action, RandomGenerator random) {
+        if (action == HIT) {
+            hand = transitions.hit(hand, random);
+            if ((hand >> 1) <= 21) {
+                return state(hand);
+            }
+        }
+        reward = finalReward(random);
+        return TERMINAL;
+    }
+
+    @Override
+    public int getReward() {
+        return reward;
+    }
+
+    @Override
+    public int getStates() {
+        return 2 * playerSums * StateActionValueTable.DEALER_CARDS;
+    }
+
+    @Override
+    public int getActions() {
+        return 2;
+    }
+
+    /**
+     * @param usableAce True if the player holds a usable ace.
+     * @param playerSum The player's sum.
+     * @param dealerCard The dealer's face-up card (1-10).
+     * @return The number of the state.
+     */
+    public int stateIndex(boolean usableAce, int playerSum, int dealerCard) {
+        return ((usableAce ? playerSums : 0) + playerSum - minPlayerSum) * StateActionValueTable.DEALER_CARDS
+                + dealerCard - 1;
+    }
+
+    /**
+     * @param state The number of a state.
+     * @return The player's sum in the state.
+     */
+    public int getPlayerSum(int state) {
+        return state / StateActionValueTable.DEALER_CARDS % playerSums + minPlayerSum;
+    }
+
+    /**
+     * @param state The number of a state.
+     * @return True if the player holds a usable ace in the state.
+     */
+    public boolean hasUsableAce(int state) {
+        return state >= playerSums * StateActionValueTable.DEALER_CARDS;
+    }
+
+    /**
+     * @param state The number of a state.
+     * @return The dealer's face-up card in the state (1-10).
+     */
+    public int getDealerCard(int state) {
+        return state % StateActionValueTable.DEALER_CARDS + 1;
+    }
+
+    /**
+     * Draws a single card, assuming an infinite deck.
+     * Card values are 1 (Ace) through 10 (10, Jack, Queen, King).
+     * @param random The generator to draw from.
+     * @return The value of the drawn card.
+     */
+    public static int drawCard(RandomGenerator random) {
+        int card = random.nextInt(HandTransitionTable.RANKS) + 1;
+        return card > 10 ? 10 : card;
+    }
+
+    private int state(int hand) {
+        return stateIndex((hand & 1) != 0, hand >> 1, dealerCard);
+    }
+
+    /**
+     * Ends the game: the dealer plays or its final sum is sampled, and the hands are compared.
+     * @return 1 for a win, -1 for a loss, 0 for a draw.
+     */
+    private int finalReward(RandomGenerator random) {
+        int playerSum = hand >> 1;
+        int dealerSum;
+        if (!sampleDealerOutcomes) {
+            dealerSum = dealerPlaying(random);
+        } else if (playerSum > 21) {
+            dealerSum = 0; // The player loses whatever the dealer holds.
+        } else {
+            dealerSum = dealerOutcomes.sampleFinalSum(dealerCard, random);
+        }
+
+        if (playerSum > 21) {
+            return -1;
+        } else if (dealerSum > 21) {
+            return 1;
+        } else {
+            return Integer.compare(playerSum, dealerSum);
+        }
+    }
+
+    /**
+     * Plays the dealer's turn: hit until the sum is 17 or greater, then stick.
+     * @return The final sum of the dealer's hand.
+     */
+    private int dealerPlaying(RandomGenerator random) {
+        int hand = dealerHand;
+        while ((hand >> 1) < 17) {
+            hand = transitions.hit(hand, random);
+        }
+        return hand >> 1;
+    }
+
+    /**
+     * Deals an initial hand, drawing cards until the sum reaches the minimum. An ace becomes usable
+     * if it fits.
+     * @param firstCard The first card of the hand, already drawn by the caller.
+     * @param random The generator to draw from.
+     * @return The packed hand.
+     */
+    private int dealInitialHand(int firstCard, RandomGenerator random) {
+        int secondCard = drawCard(random);
+        int rawSum = firstCard + secondCard;
+        boolean usableAce = firstCard == 1 || secondCard == 1;
+
+        while (rawSum + (usableAce ? 10 : 0) < minPlayerSum) {
+            int addedCard = drawCard(random);
+            rawSum += addedCard;
+            if (!usableAce && addedCard == 1 && rawSum + 10 <= 21) {
+                usableAce = true;
+            }
+        }
+        return ((rawSum + (usableAce ? 10 : 0)) << 1) | (usableAce ? 1 : 0);
+    }
+}
@@ -0,0 +1,119 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The exact distribution of the dealer's final sum for each face-up card.
+ *
+ * <p>The dealer's policy is fixed (hit below 17), so the distribution of the final sum given the
+ * face-up card never changes between episodes. This class computes it once by enumerating every
+ * card sequence of the infinite deck, following the same rules as the models' simulation: the
+ * initial hand is dealt until it reaches a minimum sum, and an ace drawn while hitting always
+ * counts as 1. A simulation can then sample the dealer's outcome with a single random number
+ * instead of playing the dealer's hand card by card.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class DealerOutcomeDistribution {
+    /** The smallest final sum of a dealer who does not go bust. */
+    public static final int MIN_FINAL_SUM = 17;
+    /** The final sum reported for a dealer who went bust. */
+    public static final int BUST = 22;
+
+    private static final int OUTCOMES = BUST - MIN_FINAL_SUM + 1;
+    private static final double CARD_PROBABILITY = 1.0 / 13;
+
+    // The probability of each outcome (17-21, bust) per face-up card (1-10).
+    private final double[][] probabilities = new double[10][OUTCOMES];
+    // The cumulative probabilities of the outcomes per face-up card, for sampling.
+    private final double[][] cumulative = new double[10][OUTCOMES];
+
+    /**
+     * Computes the distribution for initial hands dealt until their sum reaches the given minimum.
+     * @param minInitialSum The minimum sum of the dealer's initial hand, 12 in Example 5.1 and 11 in Example 5.3.
+     */
+    public DealerOutcomeDistribution(int minInitialSum) {
+        for (int faceUpCard = 1; faceUpCard <= 10; faceUpCard++) {
+            double[] outcome = probabilities[faceUpCard - 1];
+            for (int card = 1; card <= 10; card++) {
+                boolean usableAce = faceUpCard == 1 || card == 1;
+                dealInitialCards(faceUpCard + card, usableAce, cardProbability(card), minInitialSum, outcome);
+            }
+            double total = 0;
+            for (int i = 0; i < OUTCOMES; i++) {
+                total += outcome[i];
+                cumulative[faceUpCard - 1][i] = total;
+            }
+            // Guard the last bucket against rounding, so sampling always finds an outcome.
+            cumulative[faceUpCard - 1][OUTCOMES - 1] = 1.0;
+        }
+    }
+
+    /**
+     * Samples the dealer's final sum with a single random number.
+     * @param faceUpCard The dealer's face-up card (1-10).
+     * @param random The generator to draw from.
+     * @return The final sum (17-21), or {@link #BUST} if the dealer went bust.
+     */
+    public int sampleFinalSum(int faceUpCard, RandomGenerator random) {
+        double[] cdf = cumulative[faceUpCard - 1];
+        double u = random.nextDouble();
+        int i = 0;
+        while (u >= cdf[i]) {
+            i++;
+        }
+        return MIN_FINAL_SUM + i;
+    }
+
+    /**
+     * @param faceUpCard The dealer's face-up card (1-10).
+     * @param finalSum The final sum (17-21), or {@link #BUST}.
+     * @return The probability that the dealer ends with the given sum.
+     */
+    public double getProbability(int faceUpCard, int finalSum) {
+        return probabilities[faceUpCard - 1][finalSum - MIN_FINAL_SUM];
+    }
+
+    /**
+     * Follows the initial deal, which continues until the hand reaches the minimum sum. An ace
+     * drawn here becomes usable if it fits.
+     */
+    private static void dealInitialCards(int rawSum, boolean usableAce, double probability, int minInitialSum,
+            double[] outcome) {
+        if (rawSum + (usableAce ? 10 : 0) >= minInitialSum) {
+            play(rawSum + (usableAce ? 10 : 0), usableAce, probability, outcome);
+            return;
+        }
+        for (int card = 1; card <= 10; card++) {
+            int newSum = rawSum + card;
+            boolean newUsableAce = usableAce || (card == 1 && newSum + 10 <= 21);
+            dealInitialCards(newSum, newUsableAce, probability * cardProbability(card), minInitialSum, outcome);
+        }
+    }
+
+    /**
+     * Follows the dealer's turn: hit until the sum is 17 or greater, counting drawn aces as 1.
+     */
+    private static void play(int sum, boolean usableAce, double probability, double[] outcome) {
+        if (sum > 21) {
+            if (usableAce) {
+                play(sum - 10, false, probability, outcome);
+            } else {
+                outcome[OUTCOMES - 1] += probability;
+            }
+        } else if (sum < 17) {
+            for (int card = 1; card <= 10; card++) {
+                play(sum + card, usableAce, probability * cardProbability(card), outcome);
+            }
+        } else {
+            outcome[sum - MIN_FINAL_SUM] += probability;
+        }
+    }
+
+    /**
+     * @return The probability of drawing a card of the given value; the 10, jack, queen and king all count as 10.
+     */
+    private static double cardProbability(int card) {
+        return card == 10 ? 4 * CARD_PROBABILITY : CARD_PROBABILITY;
+    }
+}
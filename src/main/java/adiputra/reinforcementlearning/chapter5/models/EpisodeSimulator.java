@@ -0,0 +1,15 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+/**
+ * Plays batches of Example 5.1 games and records their returns. It keeps the models free of
+ * direct references to optional implementations such as {@link VectorBlackjackSimulator}, so that
+ * those are only loaded when they are used.
+ */
+interface EpisodeSimulator {
+    /**
+     * Plays the given number of games and records the return of every visited state.
+     * @param episodes The number of games to play.
+     * @param valueFunction The table receiving the returns.
+     */
+    void playEpisodes(int episodes, StateActionValueTable valueFunction);
+}
@@ -0,0 +1,243 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import adiputra.reinforcementlearning.chapter5.models.Example5_3Model.Action;
+
+/**
+ * Solves the infinite-deck Blackjack game of chapter 5 exactly by dynamic programming, as a ground
+ * truth for the Monte Carlo estimates.
+ *
+ * <p>The game follows the models' rules: the initial hands are dealt until their sum reaches a
+ * minimum (12 in Example 5.1, 11 in Example 5.3), the dealer hits below 17, and an ace drawn by a
+ * hit always counts as 1. The dealer's outcome comes from {@link DealerOutcomeDistribution} and the
+ * player's hits from {@link HandTransitionTable}. A hit never lowers the sum of a hand without a
+ * usable ace, and only turns a hand with a usable ace into a higher one or into a hand without a
+ * usable ace, so all values are computed in a single backward pass: first the hands without a
+ * usable ace from 21 down, then those with a usable ace. The whole solution takes well under a
+ * millisecond.
+ *
+ * <p>It provides the state values of the fixed policy of Example 5.1 (stick on 20 or 21), and the
+ * optimal action values, state values and policy sought by Example 5.3. All grids are indexed as
+ * {@code [playerSum - minPlayerSum][dealerCard - 1]}, matching the grids of the models.
+ */
+public final class ExactBlackjackSolver {
+    private final int minPlayerSum;
+    private final int playerSums;
+    private final DealerOutcomeDistribution dealer;
+    private final HandTransitionTable transitions;
+    // All tables are indexed [usableAce ? 1 : 0][playerSum - minPlayerSum][dealerCard - 1].
+    private final double[][][] stickValues;
+    private final double[][][] hitValues;
+    private final double[][][] optimalValues;
+    private final double[][][] stickOn20Values;
+
+    /**
+     * Solves the game for the states with player sums from the minimum initial sum to 21.
+     * @param minInitialSum The minimum sum of an initial hand, 12 in Example 5.1 and 11 in Example 5.3.
+     */
+    public ExactBlackjackSolver(int minInitialSum) {
+        this.minPlayerSum = minInitialSum;
+        this.playerSums = 21 - minInitialSum + 1;
+        this.dealer = new DealerOutcomeDistribution(minInitialSum);
+        this.transitions = new HandTransitionTable(minInitialSum);
+        this.stickValues = new double[2][playerSums][10];
+        this.hitValues = new double[2][playerSums][10];
+        this.optimalValues = new double[2][playerSums][10];
+        this.stickOn20Values = new double[2][playerSums][10];
+
+        for (int usableAce = 0; usableAce <= 1; usableAce++) {
+            for (int playerSum = 21; playerSum >= minPlayerSum; playerSum--) {
+                for (int dealerCard = 1; dealerCard <= 10; dealerCard++) {
+                    int i = playerSum - minPlayerSum;
+                    int j = dealerCard - 1;
+                    int hand = (playerSum << 1) | usableAce;
+                    stickValues[usableAce][i][j] = stickValue(playerSum, dealerCard);
+                    hitValues[usableAce][i][j] = expectedValueAfterHit(optimalValues, hand, dealerCard);
+                    optimalValues[usableAce][i][j] = Math.max(stickValues[usableAce][i][j], hitValues[usableAce][i][j]);
+                    stickOn20Values[usableAce][i][j] = playerSum >= 20 ? stickValues[usableAce][i][j]
+                            : expectedValueAfterHit(stickOn20Values, hand, dealerCard);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param usableAce Whether to return the states with or without a usable ace.
+     * @return The state values of the policy that sticks on 20 or 21 and hits otherwise (Example 5.1).
+     */
+    public double[][] getStickOn20Values(boolean usableAce) {
+        return copy(stickOn20Values[usableAce ? 1 : 0]);
+    }
+
+    /**
+     * @param usableAce Whether to return the states with or without a usable ace.
+     * @return The state values of the optimal policy.
+     */
+    public double[][] getOptimalValues(boolean usableAce) {
+        return copy(optimalValues[usableAce ? 1 : 0]);
+    }
+
+    /**
+     * @param usableAce Whether to return the states with or without a usable ace.
+     * @param action The action taken in the state, after which the optimal policy is followed.
+     * @return The optimal action values of the given action.
+     */
+    public double[][] getActionValues(boolean usableAce, Action action) {
+        return copy((action == Action.HIT ? hitValues : stickValues)[usableAce ? 1 : 0]);
+    }
+
+    /**
+     * @param usableAce Whether to return the states with or without a usable ace.
+     * @return The optimal policy as 1 for HIT and 0 for STICK, like the grids of Example 5.3; ties stick.
+     */
+    public int[][] getOptimalPolicy(boolean usableAce) {
+        int u = usableAce ? 1 : 0;
+        int[][] grid = new int[playerSums][10];
+        for (int i = 0; i < playerSums; i++) {
+            for (int j = 0; j < 10; j++) {
+                grid[i][j] = hitValues[u][i][j] > stickValues[u][i][j] ? 1 : 0;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Evaluates a deterministic policy, e.g. a target policy of off-policy prediction.
+     * @param usableAcePolicy The policy grid of the states with a usable ace, with 1 for HIT and 0 for STICK.
+     * @param nonUsableAcePolicy The policy grid of the states without a usable ace.
+     * @return The state values of the policy, indexed {@code [usableAce ? 1 : 0][playerSum - minPlayerSum][dealerCard - 1]}.
+     */
+    public double[][][] getPolicyValues(int[][] usableAcePolicy, int[][] nonUsableAcePolicy) {
+        int[][][] policy = { nonUsableAcePolicy, usableAcePolicy };
+        double[][][] values = new double[2][playerSums][10];
+        for (int usableAce = 0; usableAce <= 1; usableAce++) {
+            for (int playerSum = 21; playerSum >= minPlayerSum; playerSum--) {
+                for (int dealerCard = 1; dealerCard <= 10; dealerCard++) {
+                    int i = playerSum - minPlayerSum;
+                    int j = dealerCard - 1;
+                    values[usableAce][i][j] = policy[usableAce][i][j] == 1
+                            ? expectedValueAfterHit(values, (playerSum << 1) | usableAce, dealerCard)
+                            : stickValues[usableAce][i][j];
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Counts the states in which a policy chooses a different action than the optimal policy.
+     * Unreachable states (a usable ace with a sum below 12) are skipped.
+     * @param usableAce Whether the policy grid holds the states with or without a usable ace.
+     * @param policy A policy grid with 1 for HIT and 0 for STICK.
+     * @return The number of states whose action differs from the optimal one.
+     */
+    public int countPolicyDisagreements(boolean usableAce, int[][] policy) {
+        int[][] optimal = getOptimalPolicy(usableAce);
+        int disagreements = 0;
+        for (int i = firstReachableRow(usableAce); i < playerSums; i++) {
+            for (int j = 0; j < 10; j++) {
+                if (policy[i][j] != optimal[i][j]) {
+                    disagreements++;
+                }
+            }
+        }
+        return disagreements;
+    }
+
+    /**
+     * Measures how much expected return a policy gives up per state by taking its action once and
+     * playing optimally afterwards. Unlike counting disagreements, this weighs a wrong action by its
+     * cost, so near-ties, which Monte Carlo estimates resolve slowly, hardly count. Unreachable
+     * states are skipped.
+     * @param usableAce Whether the policy grid holds the states with or without a usable ace.
+     * @param policy A policy grid with 1 for HIT and 0 for STICK.
+     * @return The average over the reachable states of the optimal value minus the value of the policy's action.
+     */
+    public double averageActionLoss(boolean usableAce, int[][] policy) {
+        int u = usableAce ? 1 : 0;
+        int firstRow = firstReachableRow(usableAce);
+        double loss = 0;
+        for (int i = firstRow; i < playerSums; i++) {
+            for (int j = 0; j < 10; j++) {
+                double chosen = policy[i][j] == 1 ? hitValues[u][i][j] : stickValues[u][i][j];
+                loss += optimalValues[u][i][j] - chosen;
+            }
+        }
+        return loss / ((playerSums - firstRow) * 10);
+    }
+
+    /**
+     * @return The root mean square difference between two grids of the same shape.
+     */
+    public static double rmsError(double[][] estimate, double[][] exact) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < exact.length; i++) {
+            for (int j = 0; j < exact[i].length; j++) {
+                double error = estimate[i][j] - exact[i][j];
+                sum += error * error;
+                count++;
+            }
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    /**
+     * @return The largest absolute difference between two grids of the same shape.
+     */
+    public static double maxAbsError(double[][] estimate, double[][] exact) {
+        double max = 0;
+        for (int i = 0; i < exact.length; i++) {
+            for (int j = 0; j < exact[i].length; j++) {
+                max = Math.max(max, Math.abs(estimate[i][j] - exact[i][j]));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The smallest player sum of the grids.
+     */
+    public int getMinPlayerSum() {
+        return minPlayerSum;
+    }
+
+    /**
+     * A usable ace counts as 11, so a hand holding one has a sum of at least 12.
+     */
+    private int firstReachableRow(boolean usableAce) {
+        return usableAce ? Math.max(0, 12 - minPlayerSum) : 0;
+    }
+
+    /**
+     * The expected return of sticking: the player wins if the dealer goes bust or ends lower.
+     */
+    private double stickValue(int playerSum, int dealerCard) {
+        double value = dealer.getProbability(dealerCard, DealerOutcomeDistribution.BUST);
+        for (int dealerSum = DealerOutcomeDistribution.MIN_FINAL_SUM; dealerSum <= 21; dealerSum++) {
+            value += dealer.getProbability(dealerCard, dealerSum) * Integer.compare(playerSum, dealerSum);
+        }
+        return value;
+    }
+
+    /**
+     * The expected value of the hand after one hit, with the given values for the hands that did
+     * not go bust and -1 for those that did.
+     */
+    private double expectedValueAfterHit(double[][][] values, int hand, int dealerCard) {
+        double total = 0;
+        for (int rank = 0; rank < HandTransitionTable.RANKS; rank++) {
+            int next = transitions.afterHit(hand, rank);
+            int nextSum = next >> 1;
+            total += nextSum > 21 ? -1 : values[next & 1][nextSum - minPlayerSum][dealerCard - 1];
+        }
+        return total / HandTransitionTable.RANKS;
+    }
+
+    private static double[][] copy(double[][] grid) {
+        double[][] copy = new double[grid.length][];
+        for (int i = 0; i < grid.length; i++) {
+            copy[i] = grid[i].clone();
+        }
+        return copy;
+    }
+}
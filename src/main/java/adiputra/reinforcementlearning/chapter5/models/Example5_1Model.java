@@ -2,8 +2,34 @@ package adiputra.reinforcementlearning.chapter5.models;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+import adiputra.reinforcementlearning.engine.CheckpointFile;
+import adiputra.reinforcementlearning.engine.CheckpointHeader;
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.reinforcementlearning.engine.EpisodeLogHeader;
+import adiputra.reinforcementlearning.engine.EpisodeLogReader;
+import adiputra.reinforcementlearning.engine.EpisodeLogWriter;
+import adiputra.reinforcementlearning.engine.EpisodeRunner;
+import adiputra.reinforcementlearning.engine.EpisodeWorker;
+import adiputra.reinforcementlearning.engine.EvaluationEvent;
+import adiputra.reinforcementlearning.engine.Policy;
+import adiputra.reinforcementlearning.engine.PublishEvent;
+import adiputra.reinforcementlearning.engine.SimulationMetrics;
+import adiputra.utils.ProgressThrottle;
+import adiputra.utils.RandomSource;
 
 
 /**
@@ -15,6 +41,24 @@ import java.util.List;
  * state-value function ($V(s)$) for a fixed Blackjack policy (player sticks on 20 or 21). The state is defined by
  * the player's current sum, the dealer's showing card, and whether the player has a usable ace.
  *
+ * <p>The games are played in a {@link BlackjackEnvironment} by an {@link EpisodeRunner}, either
+ * sequentially on the calling thread or sharded across worker threads, in which case every shard
+ * accumulates into its own private value table and the shards are merged before the final grids
+ * are computed. Cards are drawn from a seedable {@link RandomSource}: every block of
+ * {@value #RANDOM_STREAM_EPISODES} episodes uses its own stream, so a run is reproducible from its
+ * seed and gives the same result whether it is played sequentially or in parallel, with any number
+ * of threads.
+ *
+ * <p>Long runs can save the value table to a {@link CheckpointFile} every so many episodes and be
+ * resumed from the last checkpoint after they were stopped; see {@link #setCheckpoint(Path, long)}.
+ * The episodes of a run can also be recorded to an episode log and replayed later, to evaluate other
+ * estimators on the same episodes; see {@link #recordSimulation(int, Path)}.
+ *
+ * <p>The episodes, throughput, time split, visits and allocations of the current run are kept in
+ * {@link SimulationMetrics}, which can be registered as an MXBean; see {@link #getMetrics()}. Runs,
+ * blocks of episodes, evaluation steps and publications are also recorded as Java Flight Recorder
+ * events, which cost next to nothing unless a recording is enabled.
+ *
  * <p>This class is observable; it fires property change events to notify listeners (e.g., a Controller)
  * about the simulation's progress, status, and final results.
  *
@@ -27,21 +71,137 @@ public class Example5_1Model {
     public static final String STATUS_PROPERTY = "status";
     /** Property name for the final simulation result (a SimulationResult object). */
     public static final String RESULT_PROPERTY = "result";
+    /** Number of consecutive episodes played with one random stream; also the size of a parallel shard. */
+    public static final int RANDOM_STREAM_EPISODES = EpisodeRunner.RANDOM_STREAM_EPISODES;
+    /** The dealer's final-sum distribution for initial hands dealt up to a sum of 12. */
+    private static final DealerOutcomeDistribution DEALER_OUTCOMES = new DealerOutcomeDistribution(12);
+    /** The hit transitions of all hands and the distribution of initial hands dealt up to a sum of 12. */
+    private static final HandTransitionTable TRANSITIONS = new HandTransitionTable(12);
+    /** Number of episode batches in flight per producer of the pipelined simulation. */
+    private static final int PIPELINE_BATCHES_PER_PRODUCER = 4;
+    // Whether the incubating Vector API can be used; it must be added with --add-modules jdk.incubator.vector.
+    private static final boolean VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
 
-    // Stores the returns for each state (Player Sum 12-21, Dealer Card 1-10) with a usable ace.
-    private final StateRewards[][] usableAceStateValueFunction;
-    // Stores the returns for each state (Player Sum 12-21, Dealer Card 1-10) without a usable ace.
-    private final StateRewards[][] nonUsableAceStateValueFunction;
+    // Accumulates the returns for each state (Usable Ace, Player Sum 12-21, Dealer Card 1-10).
+    private final StateActionValueTable stateValueFunction;
     private final PropertyChangeSupport support;
+    private final SimulationMetrics metrics;
+    // Minimum number of episodes and milliseconds between two progress updates.
+    private long progressEpisodeInterval = 1000;
+    private long progressMillisInterval = 100;
+    // The source of the card draws, or null to use a new random seed for every run.
+    private RandomSource randomSource;
+    // Set by cancel() and polled by the episode loops every EpisodeRunner.PROGRESS_BATCH episodes.
+    private volatile boolean cancelRequested;
+    // Whether the dealer's final sum is sampled from DEALER_OUTCOMES instead of played card by card.
+    private boolean sampleDealerOutcomes;
+    // Whether the player's initial hand is sampled from TRANSITIONS instead of dealt card by card.
+    private boolean sampleInitialHands;
+    // Whether the episodes are played by the VectorBlackjackSimulator when the Vector API is available.
+    private boolean vectorized;
+    // The file runs save their checkpoints to, or null to run without checkpoints.
+    private Path checkpointFile;
+    // The minimum number of episodes between two checkpoints.
+    private long checkpointInterval;
 
     /**
      * Constructs the model and initializes the data structures for the state-value functions
-     * and the mechanism for property change notifications.
+     * and the mechanism for property change notifications. Every run uses a new random seed.
      */
     public Example5_1Model() {
-        this.usableAceStateValueFunction = createValueFunctionArray();
-        this.nonUsableAceStateValueFunction = createValueFunctionArray();
+        this(null);
+    }
+
+    /**
+     * Constructs the model with a fixed source of randomness, so that every run is reproducible.
+     * @param randomSource The source of the card draws, or null to use a new random seed for every run.
+     */
+    public Example5_1Model(RandomSource randomSource) {
+        this.stateValueFunction = createValueFunctionTable();
         this.support = new PropertyChangeSupport(this);
+        this.randomSource = randomSource;
+        this.metrics = new SimulationMetrics("Example5_1Model");
+        metrics.setStateVisits(stateValueFunction::getStateVisits);
+    }
+
+    /**
+     * Sets the source of randomness used by subsequent runs.
+     * @param randomSource The source of the card draws, or null to use a new random seed for every run.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.randomSource = randomSource;
+    }
+
+    /**
+     * Chooses how subsequent runs determine the dealer's final sum. When sampling, the sum is drawn
+     * with a single random number from the exact distribution for the dealer's face-up card, and not
+     * at all if the player went bust, instead of playing the dealer's hand card by card. Both ways
+     * give the same distribution of returns, but consume the random streams differently, so a seed
+     * reproduces a run only in the same mode.
+     * @param sampleDealerOutcomes True to sample the dealer's final sum, false to play the dealer's hand.
+     */
+    public void setSampleDealerOutcomes(boolean sampleDealerOutcomes) {
+        this.sampleDealerOutcomes = sampleDealerOutcomes;
+    }
+
+    /**
+     * Chooses how subsequent runs deal the player's initial hand. When sampling, the hand is drawn
+     * with a single random number from the exact distribution of initial hands, instead of drawing
+     * cards until the sum reaches 12. As with {@link #setSampleDealerOutcomes(boolean)}, the returns
+     * have the same distribution either way, but a seed reproduces a run only in the same mode.
+     * @param sampleInitialHands True to sample the initial hand, false to deal it card by card.
+     */
+    public void setSampleInitialHands(boolean sampleInitialHands) {
+        this.sampleInitialHands = sampleInitialHands;
+    }
+
+    /**
+     * Chooses whether subsequent runs play the episodes with SIMD instructions through the incubating
+     * Vector API, many games in lockstep per vector, when the {@code jdk.incubator.vector} module is
+     * present ({@link #isVectorApiAvailable()}); otherwise the scalar simulation is used. The vectorized
+     * games always play the dealer's hand and deal the initial hand card by card, and draw their
+     * cards from per-lane generators, so the estimates agree with the scalar ones statistically but
+     * not bit for bit. It applies to {@link #runSimulation(int)}, {@link #runSimulation(int, int)}
+     * and {@link #runSimulation(int, int, ConvergenceCriteria)}, not to the pipelined simulation.
+     * @param vectorized True to use the vectorized simulation when available.
+     */
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
+    }
+
+    /**
+     * @return true if the JVM was started with {@code --add-modules jdk.incubator.vector}, so that
+     *         {@link #setVectorized(boolean)} takes effect.
+     */
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API_AVAILABLE;
+    }
+
+    /**
+     * Lets subsequent runs of {@link #runSimulation(int, int, boolean)} save a checkpoint of the value
+     * table every given number of episodes, rounded up to whole blocks of
+     * {@value #RANDOM_STREAM_EPISODES} episodes and to at least one block per thread. A checkpoint is
+     * only written between blocks, when the table holds exactly the episodes of the blocks played so
+     * far, so a resumed run continues with the next block's random stream and ends with the same
+     * result as an uninterrupted one. Writing a checkpoint pauses the run for well under a
+     * millisecond.
+     * @param checkpointFile The file to save the checkpoints to, or null to run without checkpoints.
+     * @param episodeInterval The minimum number of episodes between two checkpoints.
+     */
+    public void setCheckpoint(Path checkpointFile, long episodeInterval) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = episodeInterval;
+    }
+
+    /**
+     * Returns the runtime metrics of the model's runs. They are always collected, at a negligible
+     * cost; {@link SimulationMetrics#register()} exposes them to JMX clients. The visits of the
+     * states are those of the model's table, into which a parallel run merges its shards only at
+     * its end. The pipelined simulation only counts its episodes.
+     * @return The metrics.
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -60,6 +220,28 @@ public class Example5_1Model {
         support.removePropertyChangeListener(pcl);
     }
 
+    /**
+     * Configures how often progress is published. An update is fired once at least the given number
+     * of episodes and the given number of milliseconds have passed since the previous one, and always
+     * after the last episode. Both limits keep the cost of progress events negligible for long runs.
+     * @param episodeInterval The minimum number of episodes between two updates.
+     * @param millisInterval The minimum number of milliseconds between two updates.
+     */
+    public void setProgressInterval(long episodeInterval, long millisInterval) {
+        this.progressEpisodeInterval = episodeInterval;
+        this.progressMillisInterval = millisInterval;
+    }
+
+    /**
+     * Requests the running simulation to stop. The episode loops notice the request within a few
+     * hundred episodes; the run then publishes the grids estimated from the episodes completed so
+     * far, flagged as cancelled. A request made while a run is being started applies to that run;
+     * the request is cleared when the run ends.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
     /**
      * Runs the main Monte Carlo simulation for a given number of episodes.
      * It clears previous results, simulates Blackjack games, performs policy evaluation for each game,
@@ -68,326 +250,750 @@ public class Example5_1Model {
      * @param noOfEpisodes The total number of Blackjack games to simulate.
      */
     public void runSimulation(final int noOfEpisodes) {
-        for (int i = 0; i < 10; i++) {
-            for (int j = 0; j < 10; j++) {
-                usableAceStateValueFunction[i][j].clear();
-                nonUsableAceStateValueFunction[i][j].clear();
+        runSimulation(noOfEpisodes, 1);
+    }
+
+    /**
+     * Runs the Monte Carlo simulation with the episodes sharded across worker threads.
+     * Every shard plays one block of episodes with its own random stream into its own private
+     * value table, so the workers never contend on shared state; the run proceeds in rounds of
+     * one block per thread, whose shards are merged into the model's tables once the round has
+     * finished. Since the blocks and their streams are the same as those of the sequential path
+     * and the accumulators are exact, the result is identical to the sequential one for the same
+     * seed, only computed on several cores.
+     *
+     * <p>Shards report their completed episodes to a shared {@link ProgressThrottle} in small batches,
+     * so progress reporting does not serialize the workers.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate.
+     * @param noOfThreads The number of worker threads; values below 2 play the shards on the calling thread.
+     */
+    public void runSimulation(final int noOfEpisodes, final int noOfThreads) {
+        runSimulation(noOfEpisodes, noOfThreads, false);
+    }
+
+    /**
+     * Runs the sharded Monte Carlo simulation like {@link #runSimulation(int, int)}, saving a
+     * checkpoint to the file set by {@link #setCheckpoint(Path, long)}, if any, between segments of
+     * the run. When resuming, the value table, the random algorithm and the seed are restored from the
+     * file's last checkpoint and the run continues after the episodes it holds; the model's random
+     * source is not used. Without a checkpoint in the file, the run starts from scratch.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate, including those of the checkpoint.
+     * @param noOfThreads The number of worker threads; values below 2 play the shards on the calling thread.
+     * @param resume True to continue from the last checkpoint.
+     * @throws IllegalArgumentException if the checkpoint was saved by a run with other settings.
+     * @throws UncheckedIOException if the checkpoint file cannot be read or written.
+     */
+    public void runSimulation(final int noOfEpisodes, final int noOfThreads, final boolean resume) {
+        try {
+            clearValueFunctions();
+
+            RandomSource source = resolveRandomSource();
+            long completedEpisodes = 0;
+            CheckpointHeader checkpoint = resume ? readCheckpoint() : null;
+            if (checkpoint != null) {
+                source = new RandomSource(checkpoint.algorithm(), checkpoint.seed());
+                completedEpisodes = checkpoint.completedEpisodes();
+            }
+            EpisodeRunner runner = createRunner(source, noOfEpisodes, completedEpisodes);
+            boolean vectorSimulator = useVectorSimulator();
+            long playedEpisodes = completedEpisodes;
+            try (CheckpointFile checkpoints = openCheckpointFile()) {
+                // Rounds of one block per thread keep only a round's shard tables alive at a time.
+                long round = (long) noOfThreads * RANDOM_STREAM_EPISODES;
+                int segment = EpisodeRunner.alignToBlocks(checkpoints == null ? round : Math.max(checkpointInterval, round));
+                while (playedEpisodes < noOfEpisodes && !cancelRequested) {
+                    int segmentEpisodes = (int) Math.min(segment, noOfEpisodes - playedEpisodes);
+                    int played = runner.runSharded(playedEpisodes, segmentEpisodes, noOfThreads,
+                            block -> new EpisodeShard(vectorSimulator, null), shard -> stateValueFunction.merge(shard.stateValueFunction));
+                    playedEpisodes += played;
+                    if (checkpoints != null && played == segmentEpisodes && playedEpisodes % RANDOM_STREAM_EPISODES == 0) {
+                        checkpoints.write(new CheckpointHeader(describeConfiguration(vectorSimulator), source.getAlgorithm(),
+                                source.getSeed(), playedEpisodes), stateValueFunction);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            publishResult(source, (int) playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
+        }
+    }
+
+    /**
+     * Runs the Monte Carlo simulation sequentially like {@link #runSimulation(int)} and writes every
+     * episode to an {@link EpisodeLogWriter episode log}, together with the seed of the run.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate.
+     * @param episodeLog The file to write the episodes to; an existing file is replaced.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public void recordSimulation(final int noOfEpisodes, final Path episodeLog) {
+        recordSimulation(noOfEpisodes, 1, episodeLog);
+    }
+
+    /**
+     * Runs the Monte Carlo simulation like {@link #runSimulation(int, int)} and writes every episode
+     * to an {@link EpisodeLogWriter episode log}, together with the seed of the run. Every shard
+     * records the episodes of its block into an {@link EpisodeLogWriter.Block}, and the blocks are
+     * appended in block order as the shards are merged, so the log is the same for any number of
+     * threads. The shards are played in rounds of one block per thread, which bounds the memory of
+     * the buffered blocks. The episodes are always played by the scalar simulation, so the result is
+     * identical to that of {@link #runSimulation(int)} for the same seed.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate.
+     * @param noOfThreads The number of worker threads; values below 2 play the shards on the calling thread.
+     * @param episodeLog The file to write the episodes to; an existing file is replaced.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public void recordSimulation(final int noOfEpisodes, final int noOfThreads, final Path episodeLog) {
+        try {
+            clearValueFunctions();
+
+            RandomSource source = resolveRandomSource();
+            EpisodeRunner runner = createRunner(source, noOfEpisodes, 0);
+            EpisodeLogHeader header = new EpisodeLogHeader(describeConfiguration(false), source.getAlgorithm(), source.getSeed(),
+                    stateValueFunction.getStates(), 2);
+            int round = EpisodeRunner.alignToBlocks((long) noOfThreads * RANDOM_STREAM_EPISODES);
+            int playedEpisodes = 0;
+            try (EpisodeLogWriter log = EpisodeLogWriter.create(episodeLog, header)) {
+                while (playedEpisodes < noOfEpisodes && !cancelRequested) {
+                    int roundEpisodes = Math.min(round, noOfEpisodes - playedEpisodes);
+                    int played = runner.runSharded(playedEpisodes, roundEpisodes, noOfThreads,
+                            block -> new EpisodeShard(false, log.newBlock()), shard -> {
+                                stateValueFunction.merge(shard.stateValueFunction);
+                                log.write(shard.log);
+                            });
+                    playedEpisodes += played;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            publishResult(source, playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
+        }
+    }
+
+    /**
+     * Evaluates the fixed policy from the episodes of a log instead of playing them. The log is
+     * memory-mapped and decoded straight into the value table, so a replay runs at the speed of the
+     * disk rather than that of the simulation. The episodes must have been played with the states of
+     * this model, e.g. by {@link #recordSimulation(int, Path)}; replaying a recorded run gives the same
+     * result as the run, and the result reports the run's seed.
+     *
+     * @param episodeLog The file to read the episodes from.
+     * @throws IllegalArgumentException if the file is not a log of Example 5.1's states.
+     * @throws UncheckedIOException if the log cannot be read.
+     */
+    public void replaySimulation(final Path episodeLog) {
+        try {
+            clearValueFunctions();
+
+            long replayedEpisodes;
+            RandomSource source;
+            try (EpisodeLogReader log = EpisodeLogReader.open(episodeLog)) {
+                EpisodeLogHeader header = log.getHeader();
+                if (header.states() != stateValueFunction.getStates() || header.actions() != 2) {
+                    throw new IllegalArgumentException(episodeLog + " does not hold episodes of Example 5.1: " + header.configuration());
+                }
+                source = new RandomSource(header.algorithm(), header.seed());
+                ProgressThrottle progress = new ProgressThrottle(log.getEpisodes(), progressEpisodeInterval, progressMillisInterval);
+                metrics.runStarted(log.getEpisodes());
+                EpisodeRunner runner = new EpisodeRunner(source, 0, progress, () -> publishProgress(progress), () -> cancelRequested,
+                        metrics);
+                replayedEpisodes = runner.replay(log, stateValueFunction::update);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            publishResult(source, (int) Math.min(replayedEpisodes, Integer.MAX_VALUE));
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
+        }
+    }
+
+    /**
+     * Restores the value table from the checkpoint file, if there is one.
+     * @return The header of the restored checkpoint, or null if there is none.
+     */
+    private CheckpointHeader readCheckpoint() {
+        if (checkpointFile == null) {
+            return null;
+        }
+        try {
+            return CheckpointFile.read(checkpointFile, describeConfiguration(useVectorSimulator()), stateValueFunction);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The open checkpoint file, or null to run without checkpoints.
+     */
+    private CheckpointFile openCheckpointFile() throws IOException {
+        return checkpointFile != null ? CheckpointFile.open(checkpointFile, stateValueFunction) : null;
+    }
+
+    /**
+     * @param vectorSimulator Whether the run plays its episodes with the vectorized simulation.
+     * @return The settings that determine how a run consumes its random streams; a checkpoint is only
+     *         resumed with the same ones.
+     */
+    private String describeConfiguration(boolean vectorSimulator) {
+        return "Example5_1Model sampleDealerOutcomes=" + sampleDealerOutcomes + " sampleInitialHands=" + sampleInitialHands
+                + " vectorized=" + vectorSimulator;
+    }
+
+    /**
+     * Runs the Monte Carlo simulation as a generator/learner pipeline. Producer threads claim blocks
+     * of {@value #RANDOM_STREAM_EPISODES} episodes, play them with the block's random stream and
+     * write the outcomes into fixed-size {@link EpisodeBatch}es in struct-of-arrays form. Full
+     * batches pass through a bounded ring of recycled batches to the calling thread, which learns
+     * from them a whole batch at a time into the model's single value table. Generation and learning
+     * overlap, no table is ever merged, and the ring bounds the memory in flight: producers wait for
+     * a free batch when the learner falls behind.
+     *
+     * <p>The blocks and streams are those of the sequential path and the accumulators are exact, so
+     * for the same seed the result is identical to {@link #runSimulation(int)}.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate.
+     * @param noOfProducers The number of producer threads generating episodes.
+     */
+    public void runPipelinedSimulation(final int noOfEpisodes, final int noOfProducers) {
+        try {
+            clearValueFunctions();
+
+            RandomSource source = resolveRandomSource();
+            ProgressThrottle progress = createProgressThrottle(noOfEpisodes);
+            metrics.runStarted(noOfEpisodes);
+            int producers = Math.max(1, noOfProducers);
+            int batches = producers * PIPELINE_BATCHES_PER_PRODUCER;
+            BlockingQueue<EpisodeBatch> freeBatches = new ArrayBlockingQueue<>(batches);
+            BlockingQueue<EpisodeBatch> fullBatches = new ArrayBlockingQueue<>(batches + producers);
+            for (int i = 0; i < batches; i++) {
+                freeBatches.add(new EpisodeBatch());
+            }
+
+            AtomicInteger nextBlock = new AtomicInteger();
+            List<EpisodeProducer> tasks = new ArrayList<>();
+            for (int i = 0; i < producers; i++) {
+                tasks.add(new EpisodeProducer(source, nextBlock, noOfEpisodes, freeBatches, fullBatches));
+            }
+
+            int playedEpisodes = 0;
+            ForkJoinPool pool = new ForkJoinPool(producers);
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (EpisodeProducer task : tasks) {
+                    futures.add(pool.submit(task));
+                }
+                int finishedProducers = 0;
+                while (finishedProducers < producers) {
+                    EpisodeBatch batch = fullBatches.take();
+                    if (batch == EpisodeBatch.END) {
+                        finishedProducers++;
+                        continue;
+                    }
+                    EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.BATCH, batch.episodes);
+                    batch.learnInto(stateValueFunction);
+                    event.commit();
+                    playedEpisodes += batch.episodes;
+                    metrics.episodesCompleted(batch.episodes, 0);
+                    if (progress.episodesCompleted(batch.episodes)) {
+                        publishProgress(progress);
+                    }
+                    batch.clear();
+                    freeBatches.put(batch);
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                cancelRequested = true;
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Episode producer failed", e.getCause());
+            } finally {
+                pool.shutdownNow();
             }
+
+            publishResult(source, playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
+        }
+    }
+
+    /**
+     * Runs the Monte Carlo simulation until the estimates have converged or the episode budget is
+     * exhausted. Episodes are played in rounds of one block per thread; after every round the shards
+     * are merged and the standard error of every state is checked against the given criteria. The
+     * result reports the number of episodes actually played and the per-state standard errors.
+     *
+     * <p>Since convergence is only checked between rounds, a run always plays whole blocks of
+     * {@value #RANDOM_STREAM_EPISODES} episodes (except for the last block of the budget), and for the
+     * same seed the estimates equal those of a fixed-length run of the reported length.
+     *
+     * @param maxEpisodes The maximum number of Blackjack games to simulate.
+     * @param noOfThreads The number of worker threads.
+     * @param criteria When to stop early, or null to always play all episodes.
+     */
+    public void runSimulation(final int maxEpisodes, final int noOfThreads, final ConvergenceCriteria criteria) {
+        try {
+            if (criteria == null) {
+                runSimulation(maxEpisodes, noOfThreads);
+                return;
+            }
+            clearValueFunctions();
+
+            RandomSource source = resolveRandomSource();
+            EpisodeRunner runner = createRunner(source, maxEpisodes, 0);
+            boolean vectorSimulator = useVectorSimulator();
+            int threads = Math.max(1, noOfThreads);
+            int playedEpisodes = 0;
+            try {
+                int scheduledEpisodes = 0;
+                while (scheduledEpisodes < maxEpisodes && !cancelRequested) {
+                    int roundEpisodes = (int) Math.min((long) threads * RANDOM_STREAM_EPISODES, maxEpisodes - scheduledEpisodes);
+                    playedEpisodes += runner.runSharded(scheduledEpisodes, roundEpisodes, threads,
+                            block -> new EpisodeShard(vectorSimulator, null), shard -> stateValueFunction.merge(shard.stateValueFunction));
+                    scheduledEpisodes += roundEpisodes;
+
+                    if (hasConverged(criteria)) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            publishResult(source, playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
         }
+    }
 
-        for (int i = 0; i < noOfEpisodes; i++) {
-            GameResult gameResult = simulateBlackjackGame();
-            policyEvaluation(gameResult);
+    private boolean useVectorSimulator() {
+        return vectorized && VECTOR_API_AVAILABLE;
+    }
 
-            int progress = (i + 1) * 100 / noOfEpisodes;
-            support.firePropertyChange(PROGRESS_PROPERTY, null, progress);
-            support.firePropertyChange(STATUS_PROPERTY, null, "Processing episode: " + (i + 1) + "/" + noOfEpisodes);
+    /**
+     * Checks whether enough states have a confidence interval narrower than the tolerance.
+     * @param criteria The convergence criteria.
+     * @return true if the share of converged states reaches the criteria's target share.
+     */
+    private boolean hasConverged(ConvergenceCriteria criteria) {
+        EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.CONVERGENCE, 0);
+        int convergedStates = 0;
+        int states = stateValueFunction.getStates();
+        for (int state = 0; state < states; state++) {
+            if (criteria.isConverged(stateValueFunction, state)) {
+                convergedStates++;
+            }
         }
+        event.commit();
+        return convergedStates >= Math.ceil(criteria.convergedShare() * states);
+    }
+
+    /**
+     * Clears the returns collected by a previous run.
+     */
+    private void clearValueFunctions() {
+        stateValueFunction.clear();
+    }
+
+    /**
+     * @return The configured random source, or a new randomly seeded one if none is configured.
+     */
+    private RandomSource resolveRandomSource() {
+        return randomSource != null ? randomSource : RandomSource.withRandomSeed();
+    }
+
+    /**
+     * Creates a progress throttle for a run of the given length using the configured intervals.
+     */
+    private ProgressThrottle createProgressThrottle(int noOfEpisodes) {
+        return new ProgressThrottle(noOfEpisodes, progressEpisodeInterval, progressMillisInterval);
+    }
+
+    /**
+     * Creates the runner of a run of the given length, which publishes its progress and stops on {@link #cancel()}.
+     * The progress starts after the given number of episodes already completed, e.g. by a checkpoint.
+     * The runner records the run in the model's metrics.
+     */
+    private EpisodeRunner createRunner(RandomSource source, int noOfEpisodes, long completedEpisodes) {
+        ProgressThrottle progress = createProgressThrottle(noOfEpisodes);
+        progress.episodesCompleted(completedEpisodes);
+        metrics.runStarted(noOfEpisodes - completedEpisodes);
+        return new EpisodeRunner(source, 0, progress, () -> publishProgress(progress), () -> cancelRequested, metrics);
+    }
+
+    /**
+     * Fires the progress and status events for the episodes completed so far.
+     * @param progress The throttle tracking the completed episodes.
+     */
+    private void publishProgress(ProgressThrottle progress) {
+        PublishEvent event = PublishEvent.start(PROGRESS_PROPERTY);
+        support.firePropertyChange(PROGRESS_PROPERTY, null, progress.getProgress());
+        support.firePropertyChange(STATUS_PROPERTY, null,
+                "Processing episode: " + progress.getCompletedEpisodes() + "/" + progress.getTotalEpisodes());
+        event.commit();
+    }
+
+    /**
+     * Converts the model's value tables into grids and fires them as the simulation result.
+     * @param source The random source the run was played with.
+     * @param playedEpisodes The number of episodes the tables were estimated from.
+     */
+    private void publishResult(RandomSource source, int playedEpisodes) {
+        PublishEvent event = PublishEvent.start(RESULT_PROPERTY);
+        long start = System.nanoTime();
+        double[][] usableAceGrid = convertToGrid(stateValueFunction, true);
+        double[][] nonUsableAceGrid = convertToGrid(stateValueFunction, false);
+
+        long[][] usableAceVisits = convertToVisitGrid(stateValueFunction, true);
+        long[][] nonUsableAceVisits = convertToVisitGrid(stateValueFunction, false);
 
-        double[][] usableAceGrid = convertToGrid(usableAceStateValueFunction);
-        double[][] nonUsableAceGrid = convertToGrid(nonUsableAceStateValueFunction);
+        double[][] usableAceErrors = convertToStandardErrorGrid(stateValueFunction, true);
+        double[][] nonUsableAceErrors = convertToStandardErrorGrid(stateValueFunction, false);
 
-        SimulationResult result = new SimulationResult(usableAceGrid, nonUsableAceGrid);
+        SimulationResult result = new SimulationResult(usableAceGrid, nonUsableAceGrid, usableAceVisits, nonUsableAceVisits,
+                usableAceErrors, nonUsableAceErrors, playedEpisodes, source.getSeed(), cancelRequested);
         support.firePropertyChange(RESULT_PROPERTY, null, result);
+        metrics.published(System.nanoTime() - start);
+        event.commit();
     }
 
     /**
-     * Converts a value function array (containing {@link StateRewards} objects) into a 2D grid of average values.
-     * @param valueFunction The 2D array of {@link StateRewards} objects.
+     * Converts the states of one usable ace flag of a value table into a 2D grid of average values.
+     * @param valueFunction The table of returns.
+     * @param usableAce Whether to convert the states with or without a usable ace.
      * @return A 2D double array representing the estimated state-value function.
      */
-    private double[][] convertToGrid(StateRewards[][] valueFunction) {
+    double[][] convertToGrid(StateActionValueTable valueFunction, boolean usableAce) {
         double[][] grid = new double[10][10];
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 10; j++) {
-                grid[i][j] = calculateAverage(valueFunction[i][j]);
+                grid[i][j] = valueFunction.getMean(valueFunction.stateIndex(usableAce, i + 12, j + 1));
             }
         }
         return grid;
     }
 
     /**
-     * Creates and initializes a 10x10 2D array of {@link StateRewards} objects.
-     * @return The initialized 2D array.
+     * Creates an empty value table for the states with player sums 12-21.
+     * @return The new table.
      */
-    private StateRewards[][] createValueFunctionArray() {
-    	StateRewards[][] array = new StateRewards[10][10];
+    StateActionValueTable createValueFunctionTable() {
+        return new StateActionValueTable(12, 21, 1);
+    }
+    
+    /**
+     * Converts the states of one usable ace flag of a value table into a 2D grid of visit counts.
+     * @param valueFunction The table of returns.
+     * @param usableAce Whether to convert the states with or without a usable ace.
+     * @return A 2D long array holding the number of returns observed for each state.
+     */
+    private long[][] convertToVisitGrid(StateActionValueTable valueFunction, boolean usableAce) {
+        long[][] grid = new long[10][10];
         for (int i = 0; i < 10; i++) {
             for (int j = 0; j < 10; j++) {
-                array[i][j] = new StateRewards();
+                grid[i][j] = valueFunction.getCount(valueFunction.stateIndex(usableAce, i + 12, j + 1));
             }
         }
-        return array;
+        return grid;
     }
     
     /**
-     * Calculates the average of the rewards stored in a {@link StateRewards} object.
-     * @param stateRewards The object containing the list of rewards.
-     * @return The average, or 0 if the list is null or empty.
+     * Converts the states of one usable ace flag of a value table into a 2D grid of the standard
+     * errors of the state values.
+     * @param valueFunction The table of returns.
+     * @param usableAce Whether to convert the states with or without a usable ace.
+     * @return A 2D double array holding the standard error of each state's estimate.
      */
-    private double calculateAverage(StateRewards list) {
-        if (list == null || list.rewards.isEmpty()) {
-            return 0;
-        }
-        double sum = 0;
-        for (int i : list.rewards) {
-            sum += i;
+    private double[][] convertToStandardErrorGrid(StateActionValueTable valueFunction, boolean usableAce) {
+        double[][] grid = new double[10][10];
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                grid[i][j] = valueFunction.getStandardError(valueFunction.stateIndex(usableAce, i + 12, j + 1));
+            }
         }
-        return sum / list.rewards.size();
+        return grid;
     }
 
     /**
-     * Simulates one full game of Blackjack, from dealing cards to determining the reward.
-     * @return A {@link GameResult} object containing the outcome of the game.
+     * Creates a game with the configured ways of dealing the initial hand and the dealer's outcome.
+     * @return The new environment, for use by one thread.
      */
-    private GameResult simulateBlackjackGame() {
-        Hand playerHand = setupInitialCards();
-        Hand dealerHand = setupInitialCards();
-        int dealerFaceUpCard = dealerHand.getInitialCards().get(0);
-
-        int playerSum = playerPlaying(playerHand);
-        int dealerSum = dealerPlaying(dealerHand);
-        int reward = calculateReward(playerSum, dealerSum);
-        
-        return new GameResult(reward, playerHand, dealerFaceUpCard);
+    BlackjackEnvironment createEnvironment() {
+        BlackjackEnvironment environment = new BlackjackEnvironment(TRANSITIONS, DEALER_OUTCOMES);
+        environment.setSampleDealerOutcomes(sampleDealerOutcomes);
+        environment.setSampleInitialHands(sampleInitialHands);
+        return environment;
     }
-    
+
     /**
-     * Draws a single card, assuming an infinite deck.
-     * Card values are 1 (Ace) through 10 (10, Jack, Queen, King).
-     * @return The value of the drawn card.
+     * The fixed policy of Example 5.1: stick on 20 or 21, hit otherwise.
+     * @param environment The game whose states the policy reads.
+     * @return The policy.
      */
-    private int drawCard() {
-        int card = (int) (Math.random() * 13) + 1;
-        if (card > 10) {
-            return 10;
-        } else {
-            return card;
-        }
+    static Policy stickOn20(BlackjackEnvironment environment) {
+        return (state, step, random) -> environment.getPlayerSum(state) >= 20 ? BlackjackEnvironment.STICK
+                : BlackjackEnvironment.HIT;
     }
-    
+
     /**
-     * Calculates the sum of a list of cards.
-     * @param hand The list of cards.
-     * @param usable_ace True if an Ace in the hand should be counted as 11, false if it should be 1.
-     * @return The total sum of the hand.
+     * Simulates one full game of Blackjack with the fixed policy, from dealing cards to determining
+     * the reward. The game is written into the given reusable {@link Episode} buffer and does not allocate.
+     * @param environment The game to play.
+     * @param episode The buffer receiving the trajectory and outcome of the game.
+     * @param random The generator the cards are drawn from.
      */
-    private int sumHand(ArrayList<Integer> hand, boolean usable_ace) {
-        int sum = 0;
-        for (Integer card : hand) {
-            sum += card;
-        }
-        if (usable_ace) {
-            return sum + 10;
-        } else {
-            return sum;
-        }
+    void simulateBlackjackGame(BlackjackEnvironment environment, Episode episode, RandomGenerator random) {
+        EpisodeRunner.playEpisode(environment, stickOn20(environment), episode, random);
     }
-    
+
     /**
-     * Simulates the player's turn based on a fixed policy: hit until the sum is 20 or 21, then stick.
-     * @param playerHand The player's hand.
-     * @return The final sum of the player's hand.
-     */
-    private int playerPlaying(Hand playerHand) {
-    	while (true) {
-        	int currentSum = sumHand(playerHand.getInitialCards(), playerHand.isUsableAce()) + 
-            		sumHand(playerHand.getExtraCards(), false);
-        	
-        	if (currentSum > 21) {
-                if (playerHand.isUsableAce()) {
-                	playerHand.setUsableAce(false);
-                	playerHand.setConvertedAceIndex(playerHand.getExtraCards().size() - 1); 
-                    continue; 
-                } else {
-                    return currentSum;
-                }
-        	} else if (currentSum < 20) {
-        		playerHand.addToExtraCards(drawCard());
-        	} else {
-        		return currentSum;
-        	}
-    	}
+     * Performs first-visit Monte Carlo policy evaluation for a single episode: the return (G) of
+     * every visited state is recorded in the table entry of the state.
+     *
+     * @param episode The trajectory and outcome of a single simulated Blackjack game.
+     * @param valueFunction The table receiving the returns.
+     */
+    void policyEvaluation(final Episode episode, StateActionValueTable valueFunction) {
+        valueFunction.update(episode);
     }
     
+    // --- NESTED DATA-HOLDER CLASSES ---
     /**
-     * Simulates the dealer's turn based on a fixed policy: hit until the sum is 17 or greater, then stick.
-     * @param dealerHand The dealer's hand.
-     * @return The final sum of the dealer's hand.
-     */
-    private int dealerPlaying(Hand dealerHand) {
-        while (true) {
-        	int currentSum = sumHand(dealerHand.getInitialCards(), dealerHand.isUsableAce()) + 
-            		sumHand(dealerHand.getExtraCards(), false);
-        	
-        	if (currentSum > 21) {
-                if (dealerHand.isUsableAce()) {
-                	dealerHand.setUsableAce(false);
-                	dealerHand.setConvertedAceIndex(dealerHand.getExtraCards().size() - 1); 
-                    continue; 
-                } else {
-                    return currentSum;
-                }
-        	} else if (currentSum < 17) {
-        		dealerHand.addToExtraCards(drawCard());
-        	} else {
-        		return currentSum;
-        	}
-        }
-    }
-    
+     * A record to encapsulate the final result of the entire simulation.
+     * @param usableAceGrid The 10x10 grid of state-values for states with a usable ace.
+     * @param nonUsableAceGrid The 10x10 grid of state-values for states without a usable ace.
+     * @param usableAceVisits The 10x10 grid of visit counts for states with a usable ace.
+     * @param nonUsableAceVisits The 10x10 grid of visit counts for states without a usable ace.
+     * @param usableAceErrors The 10x10 grid of standard errors for states with a usable ace.
+     * @param nonUsableAceErrors The 10x10 grid of standard errors for states without a usable ace.
+     * @param episodes The number of episodes actually played.
+     * @param seed The seed of the random source, which reproduces the run.
+     * @param cancelled True if the run was stopped by {@link Example5_1Model#cancel()} and the grids are partial.
+     */
+    public record SimulationResult(double[][] usableAceGrid, double[][] nonUsableAceGrid,
+            long[][] usableAceVisits, long[][] nonUsableAceVisits,
+            double[][] usableAceErrors, double[][] nonUsableAceErrors, int episodes, long seed, boolean cancelled) {}
+
     /**
-     * Calculates the reward for the game based on player and dealer sums.
-     * @param player_sum The final sum of the player's hand.
-     * @param dealer_sum The final sum of the dealer's hand.
-     * @return 1 for a win, -1 for a loss, 0 for a draw.
+     * When a simulation may stop early: once the given share of states has a confidence interval
+     * of half-width {@code z * standardError} no larger than the tolerance.
+     * @param tolerance The target half-width of the confidence interval of a state value.
+     * @param z The number of standard errors of the half-width, e.g. 1.96 for a 95% interval.
+     * @param convergedShare The share of states (0 to 1) that must have converged, e.g. 1 for all states.
+     * @param minVisits The minimum number of visits before a state's standard error is trusted.
      */
-    private int calculateReward(int player_sum, int dealer_sum) {
-        if (player_sum > 21)
-        {
-            return -1;
+    public record ConvergenceCriteria(double tolerance, double z, double convergedShare, long minVisits) {
+        /**
+         * Creates criteria for a 95% confidence interval over all states, trusted after 30 visits.
+         * @param tolerance The target half-width of the confidence interval of a state value.
+         */
+        public ConvergenceCriteria(double tolerance) {
+            this(tolerance, 1.96, 1.0, 30);
         }
-        else if (dealer_sum > 21)
-        {
-            return 1;
-        }
-        else
-        {
-            return Integer.compare(player_sum, dealer_sum);
+
+        boolean isConverged(StateActionValueTable valueFunction, int index) {
+            return valueFunction.getCount(index) >= minVisits && z * valueFunction.getStandardError(index) <= tolerance;
         }
     }
-    
+
     /**
-     * Sets up an initial two-card hand for a player or dealer, ensuring the sum is at least 12.
-     * This is a specific requirement from the Blackjack example in Sutton & Barto's book.
-     * @return The initialized {@link Hand}.
+     * A fixed-size batch of played episodes in struct-of-arrays form, handed from a producer to the
+     * learner of the pipelined simulation. Every recorded state is stored as its index in the value
+     * table, which already encodes the player sum, the usable ace and the dealer's card, so learning
+     * from a batch is a tight loop of indexed adds. Batches are allocated once per run and recycled.
      */
-    private Hand setupInitialCards() {
-        Hand hand = new Hand();
-        hand.addToInitialCards(drawCard());
-        hand.addToInitialCards(drawCard());
+    static final class EpisodeBatch {
+        /** Marks the end of a producer's episodes in the queue of full batches. */
+        static final EpisodeBatch END = new EpisodeBatch();
+        /** The maximum number of episodes of a batch. */
+        static final int EPISODES = 1024;
+        /** The maximum number of states of a batch; episodes visit fewer than two states on average. */
+        static final int STATES = EPISODES * 4;
 
-        if (hand.getInitialCards().contains(1)) {
-            hand.setUsableAce(true);
+        /** The value table index of every recorded state, episode after episode. */
+        final short[] states = new short[STATES];
+        /** The end of each episode's states in {@link #states} (exclusive). */
+        final short[] episodeEnds = new short[EPISODES];
+        /** The reward of each episode (1, 0, or -1). */
+        final byte[] rewards = new byte[EPISODES];
+        int episodes;
+        int length;
+
+        /**
+         * @return True if another episode of any length fits into the batch.
+         */
+        boolean hasRoom() {
+            return episodes < EPISODES && length + BlackjackEnvironment.MAX_DECISIONS <= STATES;
         }
 
-        while (sumHand(hand.getInitialCards(), hand.isUsableAce()) < 12) {
-            int addedCard = hand.addToInitialCards(drawCard());
-            if (!hand.isUsableAce() && addedCard == 1 && sumHand(hand.getInitialCards(), true) <= 21) {
-                hand.setUsableAce(true);
+        /**
+         * Appends an episode. The states of a {@link BlackjackEnvironment} are numbered like those
+         * of the value table, whose single action makes a state number an entry index.
+         */
+        void add(Episode episode) {
+            for (int i = 0; i < episode.getLength(); i++) {
+                states[length++] = (short) episode.getState(i);
+            }
+            episodeEnds[episodes] = (short) length;
+            rewards[episodes] = (byte) episode.getReturn();
+            episodes++;
+        }
+
+        /**
+         * Records the return of every state of the batch. With a discount rate of 1, every state of
+         * an episode receives the episode's reward.
+         */
+        void learnInto(StateActionValueTable valueFunction) {
+            int state = 0;
+            for (int e = 0; e < episodes; e++) {
+                int reward = rewards[e];
+                for (int end = episodeEnds[e]; state < end; state++) {
+                    valueFunction.add(states[state], reward);
+                }
             }
         }
-        return hand;
+
+        void clear() {
+            episodes = 0;
+            length = 0;
+        }
     }
 
     /**
-     * Performs first-visit Monte Carlo policy evaluation for a single episode.
-     * It traverses the states visited during the game in reverse order and appends the
-     * final return (G) to the list of returns for each state.
-     *
-     * @param gameResult The results of a single simulated Blackjack game.
-     */
-    private void policyEvaluation(final GameResult gameResult) {
-        ArrayList<Integer> initialPlayerCards = gameResult.playerHand().getInitialCards();
-        ArrayList<Integer> addedPlayerCards = gameResult.playerHand().getExtraCards();
-        boolean usableAce = gameResult.playerHand().isUsableAce();
-        int playerSum = sumHand(initialPlayerCards, usableAce) + sumHand(addedPlayerCards, false);
-        int convertedAceIndex = gameResult.playerHand().getConvertedAceIndex();
-        int dealerFaceUpCard = gameResult.dealerFaceUpCard();
-        int G = gameResult.reward();
-        int gamma = 1;
-
-        if (playerSum >= 12 && playerSum <= 21) {
-            if (usableAce) {
-                usableAceStateValueFunction[playerSum - 12][dealerFaceUpCard - 1].rewards.add(G);
-            } else {
-                nonUsableAceStateValueFunction[playerSum - 12][dealerFaceUpCard - 1].rewards.add(G);
-            }
+     * A producer of the pipelined simulation: claims blocks of episodes until the run is exhausted
+     * or cancelled, and passes the played episodes to the learner in batches.
+     */
+    private class EpisodeProducer implements Callable<Void> {
+        private final RandomSource source;
+        private final AtomicInteger nextBlock;
+        private final int noOfEpisodes;
+        private final BlockingQueue<EpisodeBatch> freeBatches;
+        private final BlockingQueue<EpisodeBatch> fullBatches;
+
+        EpisodeProducer(RandomSource source, AtomicInteger nextBlock, int noOfEpisodes,
+                BlockingQueue<EpisodeBatch> freeBatches, BlockingQueue<EpisodeBatch> fullBatches) {
+            this.source = source;
+            this.nextBlock = nextBlock;
+            this.noOfEpisodes = noOfEpisodes;
+            this.freeBatches = freeBatches;
+            this.fullBatches = fullBatches;
         }
 
-        for (int i = (addedPlayerCards.size() - 1); i >= 0; i--) {
-            G = G * gamma;
-            playerSum -= addedPlayerCards.get(i);
-            if ((convertedAceIndex != -1) && (i == convertedAceIndex)) {
-                usableAce = true;
-                playerSum += 10;
-            }
-            if (playerSum >= 12 && playerSum <= 21) { // Check bounds again
-                if (usableAce) {
-                    usableAceStateValueFunction[playerSum - 12][dealerFaceUpCard - 1].rewards.add(G);
-                } else {
-                    nonUsableAceStateValueFunction[playerSum - 12][dealerFaceUpCard - 1].rewards.add(G);
+        @Override
+        public Void call() throws InterruptedException {
+            BlackjackEnvironment environment = createEnvironment();
+            Policy policy = stickOn20(environment);
+            Episode episode = new Episode();
+            EpisodeBatch batch = null;
+            try {
+                while (!cancelRequested) {
+                    int block = nextBlock.getAndIncrement();
+                    long first = (long) block * RANDOM_STREAM_EPISODES;
+                    if (first >= noOfEpisodes) {
+                        break;
+                    }
+                    RandomGenerator random = source.stream(block);
+                    int blockEpisodes = (int) Math.min(RANDOM_STREAM_EPISODES, noOfEpisodes - first);
+                    for (int i = 0; i < blockEpisodes; i++) {
+                        if (i % EpisodeRunner.PROGRESS_BATCH == 0 && cancelRequested) {
+                            break;
+                        }
+                        if (batch == null) {
+                            batch = freeBatches.take();
+                        }
+                        EpisodeRunner.playEpisode(environment, policy, episode, random);
+                        batch.add(episode);
+                        if (!batch.hasRoom()) {
+                            fullBatches.put(batch);
+                            batch = null;
+                        }
+                    }
+                }
+                if (batch != null) {
+                    fullBatches.put(batch);
                 }
+            } finally {
+                // The queue of full batches has room for one end marker per producer.
+                fullBatches.offer(EpisodeBatch.END);
             }
+            return null;
         }
     }
     
-    // --- NESTED DATA-HOLDER CLASSES ---
     /**
-     * A record to encapsulate the final result of the entire simulation.
-     * @param usableAceGrid The 10x10 grid of state-values for states with a usable ace.
-     * @param nonUsableAceGrid The 10x10 grid of state-values for states without a usable ace.
+     * A unit of work for the parallel simulation: plays one block of episodes with its own random
+     * stream into its own private value table, so that no state is shared between worker threads.
+     * A shard of a sequential run can also write its episodes to a log.
      */
-    public record SimulationResult(double[][] usableAceGrid, double[][] nonUsableAceGrid) {}
+    private class EpisodeShard implements EpisodeWorker {
+        private final StateActionValueTable stateValueFunction = createValueFunctionTable();
+        private final boolean vectorized;
+        private final EpisodeLogWriter.Block log;
+        private BlackjackEnvironment environment;
+        private Policy policy;
+        private Episode episode;
+        private EpisodeSimulator simulator;
+
+        EpisodeShard(boolean vectorized, EpisodeLogWriter.Block log) {
+            this.vectorized = vectorized;
+            this.log = log;
+        }
 
-    /**
-     * A record to encapsulate the result of a single game (episode).
-     * @param reward The final reward from the game (1, 0, or -1).
-     * @param playerHand The final state of the player's hand.
-     * @param dealerFaceUpCard The dealer's first card (1-10).
-     */
-    public record GameResult(int reward, Hand playerHand, int dealerFaceUpCard) {}
-    
-    /**
-     * A container class to hold a list of rewards for a single state.
-     * This is used to collect all returns observed for a state across many episodes.
-     */
-    public class StateRewards {
-    	List<Integer> rewards;
-    	
-    	/**
-    	 * Constructs a new StateRewards object with an empty list of rewards.
-    	 */
-    	public StateRewards() {
-    		rewards = new ArrayList<>();
-    	}
-    	
-    	/**
-    	 * Clears all collected rewards from the list.
-    	 */
-    	public void clear() {
-    		this.rewards.clear();
-    	}
-    	
-    	/**
-    	 * Returns a string representation of the StateRewards object.
-    	 * @return a string detailing the contents of the rewards list.
-    	 */
         @Override
-        public String toString() {
-            return "StateRewards{\n" +
-                    "  rewards=" + rewards + ",\n" +
-                    "}";
+        public void playEpisodes(RandomGenerator random, long firstEpisode, int episodes) {
+            if (vectorized) {
+                if (simulator == null) {
+                    // Only referenced here, so the class is not loaded without the Vector API.
+                    simulator = new VectorBlackjackSimulator(random);
+                }
+                simulator.playEpisodes(episodes, stateValueFunction);
+                return;
+            }
+            if (environment == null) {
+                environment = createEnvironment();
+                policy = stickOn20(environment);
+                episode = new Episode();
+            }
+            for (int i = 0; i < episodes; i++) {
+                EpisodeRunner.playEpisode(environment, policy, episode, random);
+                if (i == 0) {
+                    // Time the learning of one episode per chunk for the metrics' time split and the recording.
+                    EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.EPISODE, 1);
+                    long start = System.nanoTime();
+                    stateValueFunction.update(episode);
+                    metrics.evaluationSampled(System.nanoTime() - start);
+                    event.commit();
+                } else {
+                    stateValueFunction.update(episode);
+                }
+                if (log != null) {
+                    log.write(episode);
+                }
+            }
         }
     }
-    
-    /**
-     * A mutable class to represent a hand of cards for either the player or the dealer.
-     * It tracks the cards, whether there's a usable ace, and the history of ace conversions.
-     */
-    public class Hand {
-        private ArrayList<Integer> initialCards = new ArrayList<>();
-        private ArrayList<Integer> extraCards = new ArrayList<>();
-        private boolean usableAce = false;
-        private int convertedAceIndex = -1;
-
-        public ArrayList<Integer> getInitialCards() { return initialCards; }
-        public ArrayList<Integer> getExtraCards() { return extraCards; }
-        public boolean isUsableAce() { return usableAce; }
-        public int getConvertedAceIndex() { return convertedAceIndex; }
-        public int addToInitialCards(Integer card) { this.initialCards.add(card); return card; }
-        public int addToExtraCards(int card) { this.extraCards.add(card); return card; }
-        public void setUsableAce(boolean usableAce) { this.usableAce = usableAce; }
-        public void setConvertedAceIndex(int convertedAceIndex) { this.convertedAceIndex = convertedAceIndex; }
-    }
-}
\ No newline at end of file
+}
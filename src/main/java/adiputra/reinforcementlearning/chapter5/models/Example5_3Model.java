@@ -2,20 +2,65 @@ package adiputra.reinforcementlearning.chapter5.models;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.random.RandomGenerator;
+
+import adiputra.reinforcementlearning.engine.CheckpointFile;
+import adiputra.reinforcementlearning.engine.CheckpointHeader;
+import adiputra.reinforcementlearning.engine.Checkpointable;
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.reinforcementlearning.engine.EpisodeLogHeader;
+import adiputra.reinforcementlearning.engine.EpisodeLogReader;
+import adiputra.reinforcementlearning.engine.EpisodeLogWriter;
+import adiputra.reinforcementlearning.engine.EpisodeRunner;
+import adiputra.reinforcementlearning.engine.EpisodeWorker;
+import adiputra.reinforcementlearning.engine.EvaluationEvent;
+import adiputra.reinforcementlearning.engine.Policy;
+import adiputra.reinforcementlearning.engine.PublishEvent;
+import adiputra.reinforcementlearning.engine.SimulationMetrics;
+import adiputra.utils.ProgressThrottle;
+import adiputra.utils.RandomSource;
 
 public class Example5_3Model {
     public static final String PROGRESS_PROPERTY = "progress";
     public static final String STATUS_PROPERTY = "status";
     public static final String RESULT_PROPERTY = "result";
+    /** Number of consecutive episodes played with one random stream. */
+    public static final int RANDOM_STREAM_EPISODES = EpisodeRunner.RANDOM_STREAM_EPISODES;
+    private static final DealerOutcomeDistribution DEALER_OUTCOMES = new DealerOutcomeDistribution(11);
+    private static final HandTransitionTable TRANSITIONS = new HandTransitionTable(11);
+    
+    private static final Action[] ACTIONS = Action.values();
+    // The epsilon of a ControlPolicy for control with exploring starts.
+    private static final double EXPLORING_STARTS = -1;
     
-    private final StateActionRewards[][] usableAceStateActionValueFunction;
-    private final StateActionRewards[][] nonUsableAceStateActionValueFunction;
-    private final Action[][] usableAcePolicy;
-    private final Action[][] nonUsableAcePolicy;
+    // Accumulates the returns of each action in each state (Usable Ace, Player Sum 11-21, Dealer Card 1-10).
+    private final StateActionValueTable stateActionValueFunction;
+    // The ordinal of the greedy action in each state, indexed like the states of the table.
+    private final byte[] policy;
+    // The exploring-starts policy of simulateBlackjackGame, reused for every game.
+    private final ControlPolicy explorationPolicy = new ControlPolicy();
     private final PropertyChangeSupport support;
+    private final SimulationMetrics metrics;
+    private long progressEpisodeInterval = 1000;
+    private long progressMillisInterval = 100;
+    // The source of card draws and random actions, or null to use a new random seed for every run.
+    private RandomSource randomSource;
+    // Set by cancel() and polled by the episode loop every EpisodeRunner.PROGRESS_BATCH episodes.
+    private volatile boolean cancelRequested;
+    // Whether the dealer's final sum is sampled from DEALER_OUTCOMES instead of played card by card.
+    private boolean sampleDealerOutcomes;
+    // Whether the player's initial hand is sampled from TRANSITIONS instead of dealt card by card.
+    private boolean sampleInitialHands;
+    // The exploration of epsilon-soft control, or null for exploring starts.
+    private EpsilonSchedule epsilonSchedule;
+    // The file runs save their checkpoints to, or null to run without checkpoints.
+    private Path checkpointFile;
+    // The minimum number of episodes between two checkpoints.
+    private long checkpointInterval;
     
     public enum Action {
         HIT,
@@ -23,11 +68,70 @@ public class Example5_3Model {
     }
 	
     public Example5_3Model() {
-        this.usableAceStateActionValueFunction = createValueFunctionArray();
-        this.nonUsableAceStateActionValueFunction = createValueFunctionArray();
-        this.usableAcePolicy = createPolicyArray();
-        this.nonUsableAcePolicy = createPolicyArray();
+        this(null);
+    }
+    
+    /**
+     * Constructs the model with a fixed source of randomness, so that every run is reproducible.
+     * Stream 0 of the source initializes the policy and stream {@code k + 1} plays the k-th block
+     * of {@value #RANDOM_STREAM_EPISODES} episodes.
+     */
+    public Example5_3Model(RandomSource randomSource) {
+        this.randomSource = randomSource;
+        this.stateActionValueFunction = createValueFunctionTable();
+        this.policy = createPolicy();
         this.support = new PropertyChangeSupport(this);
+        this.metrics = new SimulationMetrics("Example5_3Model");
+        metrics.setStateVisits(stateActionValueFunction::getStateVisits);
+    }
+    
+    /**
+     * Chooses whether subsequent runs sample the dealer's final sum from its exact distribution
+     * instead of playing the dealer's hand. See {@link Example5_1Model#setSampleDealerOutcomes(boolean)}.
+     */
+    public void setSampleDealerOutcomes(boolean sampleDealerOutcomes) {
+        this.sampleDealerOutcomes = sampleDealerOutcomes;
+    }
+    
+    /**
+     * Chooses whether subsequent runs sample the player's initial hand from its exact distribution
+     * instead of dealing it card by card. See {@link Example5_1Model#setSampleInitialHands(boolean)}.
+     */
+    public void setSampleInitialHands(boolean sampleInitialHands) {
+        this.sampleInitialHands = sampleInitialHands;
+    }
+    
+    /**
+     * Chooses how subsequent runs explore. With exploring starts (null), the first action of every
+     * episode is random and the policy is followed afterwards. With an epsilon schedule, every action
+     * is epsilon-greedy with respect to the current policy, so no special start is needed; the
+     * greedy policy is what the run publishes. The schedule is indexed by the number of the episode
+     * in the run, so seeded sequential runs stay reproducible.
+     * @param epsilonSchedule The exploration rate of epsilon-soft control, or null for exploring starts.
+     */
+    public void setEpsilonSchedule(EpsilonSchedule epsilonSchedule) {
+        this.epsilonSchedule = epsilonSchedule;
+    }
+    
+    /**
+     * Lets subsequent runs of {@link #runSimulation(int, int, boolean)} save the Q-table and the
+     * policy every given number of episodes, rounded up to whole blocks of
+     * {@value #RANDOM_STREAM_EPISODES} episodes and to at least one block per thread. See
+     * {@link Example5_1Model#setCheckpoint(Path, long)}.
+     * @param checkpointFile The file to save the checkpoints to, or null to run without checkpoints.
+     * @param episodeInterval The minimum number of episodes between two checkpoints.
+     */
+    public void setCheckpoint(Path checkpointFile, long episodeInterval) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = episodeInterval;
+    }
+    
+    /**
+     * Returns the runtime metrics of the model's runs, including the changes of the policy. See
+     * {@link Example5_1Model#getMetrics()}.
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
     }
     
     public void addPropertyChangeListener(PropertyChangeListener pcl) {
@@ -38,279 +142,342 @@ public class Example5_3Model {
         support.removePropertyChangeListener(pcl);
     }
     
-    private StateActionRewards[][] createValueFunctionArray() {
-    	StateActionRewards[][] array = new StateActionRewards[11][10];
-        for (int i = 0; i < 11; i++) {
-            for (int j = 0; j < 10; j++) {
-                array[i][j] = new StateActionRewards();
-            }
-        }
-        return array;
+    private StateActionValueTable createValueFunctionTable() {
+        return new StateActionValueTable(11, 21, ACTIONS.length);
     }
     
-    private Action[][] createPolicyArray() {
-    	Action[][] array = new Action[11][10];
-    	for (int i = 0; i < 11; i++) {
-    		for (int j = 0; j < 10; j++) {
-    			array[i][j] = getRandomAction(); 
-    		}
+    byte[] createPolicy() {
+    	byte[] array = new byte[stateActionValueFunction.getStates()];
+    	for (int i = 0; i < array.length; i++) {
+    		array[i] = (byte) getRandomAction().ordinal();
     	}
     	return array;
     }
     
+    /**
+     * Sets the source of randomness used by subsequent runs, or null to use a new random seed for every run.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.randomSource = randomSource;
+    }
+    
+    /**
+     * Configures how often progress is published: at most once per the given number of episodes
+     * and milliseconds, plus once after the last episode.
+     */
+    public void setProgressInterval(long episodeInterval, long millisInterval) {
+        this.progressEpisodeInterval = episodeInterval;
+        this.progressMillisInterval = millisInterval;
+    }
+    
+    /**
+     * Requests the running simulation to stop. The run then publishes the policy learned from the
+     * episodes completed so far, flagged as cancelled. A request made while a run is being started
+     * applies to that run; the request is cleared when the run ends.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+    
     public void runSimulation(final int noOfEpisodes) {
-        for (int i = 0; i < 11; i++) {
-            for (int j = 0; j < 10; j++) {
-                usableAceStateActionValueFunction[i][j].clearAll();
-                nonUsableAceStateActionValueFunction[i][j].clearAll();
-                usableAcePolicy[i][j] = getRandomAction();
-                nonUsableAcePolicy[i][j] = getRandomAction();
-            }
-        }
-
-        for (int i = 0; i < noOfEpisodes; i++) {
-            GameResult gameResult = simulateBlackjackGame();
-            policyEvaluationAndImprovement(gameResult);
-
-            int progress = (i + 1) * 100 / noOfEpisodes;
-            support.firePropertyChange(PROGRESS_PROPERTY, null, progress);
-            support.firePropertyChange(STATUS_PROPERTY, null, "Processing episode: " + (i + 1) + "/" + noOfEpisodes);
-        }
-
-        int[][] usableAceGrid = convertToGrid(usableAcePolicy);
-        int[][] nonUsableAceGrid = convertToGrid(nonUsableAcePolicy);
-
-        SimulationResult result = new SimulationResult(usableAceGrid, nonUsableAceGrid);
-        support.firePropertyChange(RESULT_PROPERTY, null, result);
+        runSimulation(noOfEpisodes, 1);
     }
     
-    private GameResult simulateBlackjackGame() {
-        Hand playerHand = setupInitialCards();
-        Hand dealerHand = setupInitialCards();
-        int dealerFaceUpCard = dealerHand.getInitialCards().get(0);
-        
-        Action playerFirstRandomAction = getRandomAction();
-
-        int playerSum = playerPlaying(playerHand, playerFirstRandomAction, dealerFaceUpCard);
-        int dealerSum = dealerPlaying(dealerHand);
-        int reward = calculateReward(playerSum, dealerSum);
-        
-        return new GameResult(reward, playerHand, dealerFaceUpCard, playerFirstRandomAction);
+    /**
+     * Runs Monte Carlo control (with exploring starts or epsilon-soft) on several worker threads that share one
+     * Q-table and one policy, Hogwild-style. Workers claim blocks of {@value #RANDOM_STREAM_EPISODES}
+     * episodes, each played with the same random stream as in the sequential path, and update the
+     * shared tables after every episode. Returns are recorded with atomic adds into the flat
+     * {@link StateActionValueTable}, so no return is ever lost and workers only contend on the cache
+     * lines of the states they visit at the same moment. The greedy action of a state is recomputed
+     * and written without locking; workers may briefly act on a slightly stale action or compare
+     * averages one return apart, which the next visit of the state corrects.
+     *
+     * <p>Because the interleaving of updates depends on scheduling, runs with several threads are
+     * not reproducible bit-for-bit even with a fixed seed, but they converge to the same stick/hit
+     * boundaries as the sequential path.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate.
+     * @param noOfThreads The number of worker threads; values below 2 play all episodes sequentially
+     *        on the calling thread.
+     */
+    public void runSimulation(final int noOfEpisodes, final int noOfThreads) {
+        runSimulation(noOfEpisodes, noOfThreads, false);
     }
     
-    private Hand setupInitialCards() {
-        Hand hand = new Hand();
-        hand.addToInitialCards(drawCard());
-        hand.addToInitialCards(drawCard());
-
-        if (hand.getInitialCards().contains(1)) {
-            hand.setUsableAce(true);
-        }
+    /**
+     * Runs Monte Carlo control like {@link #runSimulation(int, int)}, saving the Q-table and the
+     * policy to the file set by {@link #setCheckpoint(Path, long)}, if any, between segments of the
+     * run. When resuming, the tables, the random algorithm and the seed are restored from the file's
+     * last checkpoint and the run continues after the episodes it holds; without a checkpoint in the
+     * file, the run starts from scratch. A sequential run resumed from a checkpoint ends with the same
+     * policy as an uninterrupted one.
+     *
+     * @param noOfEpisodes The total number of Blackjack games to simulate, including those of the checkpoint.
+     * @param noOfThreads The number of worker threads.
+     * @param resume True to continue from the last checkpoint.
+     * @throws IllegalArgumentException if the checkpoint was saved by a run with other settings.
+     * @throws UncheckedIOException if the checkpoint file cannot be read or written.
+     */
+    public void runSimulation(final int noOfEpisodes, final int noOfThreads, final boolean resume) {
+        try {
+            RandomSource source = randomSource != null ? randomSource : RandomSource.withRandomSeed();
+            resetTables(source.stream(0));
+            Checkpointable[] parts = { stateActionValueFunction, Checkpointable.of(policy) };
+            long completedEpisodes = 0;
+            CheckpointHeader checkpoint = resume ? readCheckpoint(parts) : null;
+            if (checkpoint != null) {
+                source = new RandomSource(checkpoint.algorithm(), checkpoint.seed());
+                completedEpisodes = checkpoint.completedEpisodes();
+            }
 
-        while (sumHand(hand.getInitialCards(), hand.isUsableAce()) < 11) {
-            int addedCard = hand.addToInitialCards(drawCard());
-            if (!hand.isUsableAce() && addedCard == 1 && sumHand(hand.getInitialCards(), true) <= 21) {
-                hand.setUsableAce(true);
+            ProgressThrottle progress = new ProgressThrottle(noOfEpisodes, progressEpisodeInterval, progressMillisInterval);
+            progress.episodesCompleted(completedEpisodes);
+            metrics.runStarted(noOfEpisodes - completedEpisodes);
+            EpisodeRunner runner = new EpisodeRunner(source, 1, progress, () -> publishProgress(progress), () -> cancelRequested,
+                    metrics);
+            EpsilonSchedule schedule = epsilonSchedule;
+            boolean shared = noOfThreads >= 2;
+            long playedEpisodes = completedEpisodes;
+            try (CheckpointFile checkpoints = checkpointFile != null ? CheckpointFile.open(checkpointFile, parts) : null) {
+                int segment = checkpoints == null ? noOfEpisodes
+                        : EpisodeRunner.alignToBlocks(Math.max(checkpointInterval, (long) noOfThreads * RANDOM_STREAM_EPISODES));
+                while (playedEpisodes < noOfEpisodes && !cancelRequested) {
+                    int segmentEpisodes = (int) Math.min(segment, noOfEpisodes - playedEpisodes);
+                    int played = runner.runShared(playedEpisodes, segmentEpisodes, noOfThreads,
+                            () -> new ControlWorker(schedule, shared, null));
+                    playedEpisodes += played;
+                    if (checkpoints != null && played == segmentEpisodes && playedEpisodes % RANDOM_STREAM_EPISODES == 0) {
+                        checkpoints.write(new CheckpointHeader(describeConfiguration(), source.getAlgorithm(), source.getSeed(),
+                                playedEpisodes), parts);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+
+            publishResult(source, (int) playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
         }
-        return hand;
     }
     
-    private int playerPlaying(Hand playerHand, Action playerFirstRandomAction, int dealerFaceUpCard) {
-        if (playerFirstRandomAction == Action.STICK) {
-            return sumHand(playerHand.getInitialCards(), playerHand.isUsableAce());
-        }
-        
-        playerHand.addToExtraCards(drawCard());
-        
-        while (true) {
-            int currentSum = sumHand(playerHand.getInitialCards(), playerHand.isUsableAce()) + 
-            		sumHand(playerHand.getExtraCards(), false);
-            
-            if (currentSum > 21) {
-                if (playerHand.isUsableAce()) {
-                    playerHand.setUsableAce(false);
-                    playerHand.setConvertedAceIndex(playerHand.getExtraCards().size() - 1); 
-                    continue; 
-                } else {
-                    return currentSum;
-                }
-            }
-            
-            Action policyAction;
-            if (playerHand.isUsableAce()) {
-                policyAction = usableAcePolicy[currentSum - 11][dealerFaceUpCard - 1]; 
-            } else {
-                policyAction = nonUsableAcePolicy[currentSum - 11][dealerFaceUpCard - 1];
-            }
+    /**
+     * Runs Monte Carlo control sequentially like {@link #runSimulation(int)} and writes every
+     * episode to an {@link EpisodeLogWriter episode log}, together with the seed of the run.
+     * @param episodeLog The file to write the episodes to; an existing file is replaced.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public void recordSimulation(final int noOfEpisodes, final Path episodeLog) {
+        try {
+            RandomSource source = randomSource != null ? randomSource : RandomSource.withRandomSeed();
+            resetTables(source.stream(0));
 
-            if (policyAction == Action.HIT) {
-                playerHand.addToExtraCards(drawCard());
-            } else {
-                return currentSum;
+            ProgressThrottle progress = new ProgressThrottle(noOfEpisodes, progressEpisodeInterval, progressMillisInterval);
+            metrics.runStarted(noOfEpisodes);
+            EpisodeRunner runner = new EpisodeRunner(source, 1, progress, () -> publishProgress(progress), () -> cancelRequested,
+                    metrics);
+            EpsilonSchedule schedule = epsilonSchedule;
+            EpisodeLogHeader header = new EpisodeLogHeader(describeConfiguration(), source.getAlgorithm(), source.getSeed(),
+                    stateActionValueFunction.getStates(), ACTIONS.length);
+            int playedEpisodes;
+            try (EpisodeLogWriter log = EpisodeLogWriter.create(episodeLog, header)) {
+                playedEpisodes = runner.runShared(0, noOfEpisodes, 1, () -> new ControlWorker(schedule, false, log));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+
+            publishResult(source, playedEpisodes);
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
         }
     }
     
-    private int dealerPlaying(Hand dealerHand) {
-        while (true) {
-        	int currentSum = sumHand(dealerHand.getInitialCards(), dealerHand.isUsableAce()) + 
-            		sumHand(dealerHand.getExtraCards(), false);
-        	
-        	if (currentSum > 21) {
-                if (dealerHand.isUsableAce()) {
-                	dealerHand.setUsableAce(false);
-                	dealerHand.setConvertedAceIndex(dealerHand.getExtraCards().size() - 1); 
-                    continue; 
-                } else {
-                    return currentSum;
+    /**
+     * Learns from the episodes of a log instead of playing them: every episode is evaluated and the
+     * policy improved in its states, as if it had been played by the run. The initial policy is
+     * drawn with the log's seed, so replaying a run recorded by {@link #recordSimulation(int, Path)}
+     * gives the same policy as the run. Episodes recorded with other exploration give other
+     * policies, since control learns about the policy that played them.
+     * @param episodeLog The file to read the episodes from.
+     * @throws IllegalArgumentException if the file is not a log of Example 5.3's states.
+     * @throws UncheckedIOException if the log cannot be read.
+     */
+    public void replaySimulation(final Path episodeLog) {
+        try {
+            long replayedEpisodes;
+            RandomSource source;
+            try (EpisodeLogReader log = EpisodeLogReader.open(episodeLog)) {
+                EpisodeLogHeader header = log.getHeader();
+                if (header.states() != stateActionValueFunction.getStates() || header.actions() != ACTIONS.length) {
+                    throw new IllegalArgumentException(episodeLog + " does not hold episodes of Example 5.3: " + header.configuration());
                 }
-        	} else if (currentSum < 17) {
-        		dealerHand.addToExtraCards(drawCard());
-        	} else {
-        		return currentSum;
-        	}
+                source = new RandomSource(header.algorithm(), header.seed());
+                resetTables(source.stream(0));
+                ProgressThrottle progress = new ProgressThrottle(log.getEpisodes(), progressEpisodeInterval, progressMillisInterval);
+                metrics.runStarted(log.getEpisodes());
+                EpisodeRunner runner = new EpisodeRunner(source, 1, progress, () -> publishProgress(progress), () -> cancelRequested,
+                        metrics);
+                replayedEpisodes = runner.replay(log, episode -> policyEvaluationAndImprovement(episode, false));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            publishResult(source, (int) Math.min(replayedEpisodes, Integer.MAX_VALUE));
+        } finally {
+            metrics.runFinished();
+            cancelRequested = false;
         }
     }
     
-    private int calculateReward(int player_sum, int dealer_sum) {
-        if (player_sum > 21)
-        {
-            return -1;
-        }
-        else if (dealer_sum > 21)
-        {
-            return 1;
+    /**
+     * Restores the tables from the checkpoint file, if there is one.
+     * @return The header of the restored checkpoint, or null if there is none.
+     */
+    private CheckpointHeader readCheckpoint(Checkpointable... parts) {
+        if (checkpointFile == null) {
+            return null;
         }
-        else
-        {
-            return Integer.compare(player_sum, dealer_sum);
+        try {
+            return CheckpointFile.read(checkpointFile, describeConfiguration(), parts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
     
-    private int drawCard() {
-        int card = (int) (Math.random() * 13) + 1;
-        if (card > 10) {
-            return 10;
-        } else {
-            return card;
-        }
+    /**
+     * The settings that determine how a run consumes its random streams; a checkpoint is only
+     * resumed with the same ones.
+     */
+    private String describeConfiguration() {
+        return "Example5_3Model sampleDealerOutcomes=" + sampleDealerOutcomes + " sampleInitialHands=" + sampleInitialHands
+                + " epsilonSchedule=" + epsilonSchedule;
     }
     
-    private int sumHand(ArrayList<Integer> hand, boolean usable_ace) {
-        int sum = 0;
-        for (Integer card : hand) {
-            sum += card;
-        }
-        if (usable_ace) {
-            return sum + 10;
-        } else {
-            return sum;
+    /**
+     * Clears the Q-table and draws a new random initial policy.
+     */
+    private void resetTables(RandomGenerator random) {
+        stateActionValueFunction.clear();
+        // Draw in the order of the former [sum][dealer card] grids, so a seed keeps its initial policy.
+        for (int i = 0; i < 11; i++) {
+            for (int j = 0; j < 10; j++) {
+                policy[stateActionValueFunction.stateIndex(true, i + 11, j + 1)] = (byte) getRandomAction(random).ordinal();
+                policy[stateActionValueFunction.stateIndex(false, i + 11, j + 1)] = (byte) getRandomAction(random).ordinal();
+            }
         }
     }
     
-    public static Action getRandomAction() {
-        return ThreadLocalRandom.current().nextBoolean() ? Action.HIT : Action.STICK;
-    }
-    
-    private void policyEvaluationAndImprovement(GameResult gameResult) {
-        // --- Unpack all data from the game result ---
-        int G = gameResult.reward;
-        final int gamma = 1; // Discount rate is 1 for non-discounted Monte Carlo
-        Hand playerHand = gameResult.playerHand;
-        int dealerFaceUpCard = gameResult.dealerFaceUpCard;
-        ArrayList<Integer> initialPlayerCards = playerHand.getInitialCards();
-        ArrayList<Integer> addedPlayerCards = playerHand.getExtraCards();
-        int convertedAceIndex = playerHand.getConvertedAceIndex();
-
-        // --- Determine the final state of the player's hand ---
-        // Note: We calculate sum without the "usable ace" bonus initially to handle ace conversions correctly.
-        int playerSum = sumHand(initialPlayerCards, false) + sumHand(addedPlayerCards, false);
-        boolean usableAce = playerHand.isUsableAce();
-        if (usableAce) {
-            playerSum += 10;
-        }
-
-        // --- LOGIC FIX 1: Account for the final "STICK" action ---
-        // The player's turn ends by either busting or sticking. If they didn't bust,
-        // their last action in their final state was to STICK. Your original code
-        // never accounted for this action, except in the trivial case where the
-        // very first random action was STICK.
-        if (playerSum <= 21) {
-            if (usableAce) {
-                usableAceStateActionValueFunction[playerSum - 11][dealerFaceUpCard - 1].stickRewards.add(G);
-                policyImprovement(usableAcePolicy, usableAceStateActionValueFunction, playerSum, dealerFaceUpCard);
-            } else {
-                nonUsableAceStateActionValueFunction[playerSum - 11][dealerFaceUpCard - 1].stickRewards.add(G);
-                policyImprovement(nonUsableAcePolicy, nonUsableAceStateActionValueFunction, playerSum, dealerFaceUpCard);
-            }
-        }
-        
-        // --- LOGIC FIX 2: Correctly update all preceding "HIT" actions ---
-        // The `addedPlayerCards` list exists precisely because the player chose to HIT
-        // at each preceding step. Therefore, we must update the `hitRewards` for each of
-        // those states. Your original code incorrectly checked the current policy to decide
-        // whether to update hitRewards or stickRewards.
-        for (int i = (addedPlayerCards.size() - 1); i >= 0; i--) {
-            G = G * gamma; // This has no effect if gamma=1, but is correct form.
+    private void publishProgress(ProgressThrottle progress) {
+        PublishEvent event = PublishEvent.start(PROGRESS_PROPERTY);
+        support.firePropertyChange(PROGRESS_PROPERTY, null, progress.getProgress());
+        support.firePropertyChange(STATUS_PROPERTY, null,
+                "Processing episode: " + progress.getCompletedEpisodes() + "/" + progress.getTotalEpisodes());
+        event.commit();
+    }
+    
+    private void publishResult(RandomSource source, int playedEpisodes) {
+        PublishEvent event = PublishEvent.start(RESULT_PROPERTY);
+        long start = System.nanoTime();
+        int[][] usableAceGrid = convertToGrid(policy, true);
+        int[][] nonUsableAceGrid = convertToGrid(policy, false);
 
-            // Revert to the state *before* the last card was drawn.
-            playerSum -= addedPlayerCards.get(i);
-            
-            // As we move backward in time, we might "un-convert" an ace.
-            // If the current step `i` is where an ace was converted from 11 to 1,
-            // it means for all prior states (including this one), the ace was usable.
-            if (convertedAceIndex != -1 && i == convertedAceIndex) {
-                usableAce = true;
-                playerSum += 10; // Add the 10 points back for the usable ace.
-            }
+        SimulationResult result = new SimulationResult(usableAceGrid, nonUsableAceGrid, playedEpisodes, source.getSeed(),
+                cancelRequested);
+        support.firePropertyChange(RESULT_PROPERTY, null, result);
+        metrics.published(System.nanoTime() - start);
+        event.commit();
+    }
+    
+    /**
+     * Creates a game with the configured ways of dealing the initial hand and the dealer's outcome.
+     */
+    BlackjackEnvironment createEnvironment() {
+        BlackjackEnvironment environment = new BlackjackEnvironment(TRANSITIONS, DEALER_OUTCOMES);
+        environment.setSampleDealerOutcomes(sampleDealerOutcomes);
+        environment.setSampleInitialHands(sampleInitialHands);
+        return environment;
+    }
+    
+    /**
+     * Simulates one game with an exploring start into the given reusable buffer, without allocating.
+     */
+    void simulateBlackjackGame(BlackjackEnvironment environment, Episode episode, RandomGenerator random) {
+        EpisodeRunner.playEpisode(environment, explorationPolicy, episode, random);
+    }
+    
+    public static Action getRandomAction() {
+        return getRandomAction(ThreadLocalRandom.current());
+    }
+    
+    public static Action getRandomAction(RandomGenerator random) {
+        return random.nextBoolean() ? Action.HIT : Action.STICK;
+    }
+    
+    /**
+     * Records the episode's returns and improves the policy in every visited state. With
+     * {@code shared} set, returns are recorded with atomic adds, so that concurrent workers can
+     * update the same table.
+     */
+    void policyEvaluationAndImprovement(Episode episode, boolean shared) {
+        int G = 0; // Discount rate is 1 for non-discounted Monte Carlo
 
-            // At this state, we know the action taken was HIT.
-            // We update the value for the (state, HIT) pair.
-            if (usableAce) {
-                usableAceStateActionValueFunction[playerSum - 11][dealerFaceUpCard - 1].hitRewards.add(G);
-                policyImprovement(usableAcePolicy, usableAceStateActionValueFunction, playerSum, dealerFaceUpCard);
+        // Walk the trajectory backwards. The player's turn ends by either busting or sticking, so
+        // every recorded state except possibly the last one is a HIT; the last one is a STICK
+        // unless the player went bust. The states are numbered like those of the table.
+        for (int i = episode.getLength() - 1; i >= 0; i--) {
+            G += episode.getReward(i);
+            int state = episode.getState(i);
+            int index = stateActionValueFunction.index(state, episode.getAction(i));
+            if (shared) {
+                stateActionValueFunction.addConcurrently(index, G);
             } else {
-                nonUsableAceStateActionValueFunction[playerSum - 11][dealerFaceUpCard - 1].hitRewards.add(G);
-                policyImprovement(nonUsableAcePolicy, nonUsableAceStateActionValueFunction, playerSum, dealerFaceUpCard);
+                stateActionValueFunction.add(index, G);
             }
+            policyImprovement(state);
         }
     }
     
-    private void policyImprovement(Action[][] policy, StateActionRewards[][] stateActionValueFunction, int playerSum, int dealerFaceUpCard) {
-    	if (stateActionValueFunction[playerSum-11][dealerFaceUpCard-1].hitRewards.isEmpty()) {
-    		policy[playerSum-11][dealerFaceUpCard-1] = Action.STICK;
+    private void policyImprovement(int state) {
+    	int hit = stateActionValueFunction.index(state, Action.HIT.ordinal());
+    	int stick = stateActionValueFunction.index(state, Action.STICK.ordinal());
+    	byte action = policy[state];
+    	if (stateActionValueFunction.getCount(hit) == 0) {
+    		action = (byte) Action.STICK.ordinal();
     	}
-    	else if (stateActionValueFunction[playerSum-11][dealerFaceUpCard-1].stickRewards.isEmpty()) {
-    		policy[playerSum-11][dealerFaceUpCard-1] = Action.HIT;
+    	else if (stateActionValueFunction.getCount(stick) == 0) {
+    		action = (byte) Action.HIT.ordinal();
     	}
     	else {
-    		double avgHitRewards = getAvgRewards(stateActionValueFunction[playerSum-11][dealerFaceUpCard-1].hitRewards);
-    		double avgStickRewards =  getAvgRewards(stateActionValueFunction[playerSum-11][dealerFaceUpCard-1].stickRewards);
+    		double avgHitRewards = stateActionValueFunction.getMean(hit);
+    		double avgStickRewards = stateActionValueFunction.getMean(stick);
     		
     		if (avgHitRewards > avgStickRewards) {
-    			policy[playerSum-11][dealerFaceUpCard-1] = Action.HIT;
+    			action = (byte) Action.HIT.ordinal();
     		}
     		else if (avgHitRewards < avgStickRewards) {
-    			policy[playerSum-11][dealerFaceUpCard-1] = Action.STICK;
+    			action = (byte) Action.STICK.ordinal();
     		}
     	}
-    }
-    
-    public double getAvgRewards (List<Integer> rewards) {
-    	double sumRewards = 0;
-    	for (int reward : rewards) {
-    		sumRewards += reward;
+    	if (action != policy[state]) {
+    		policy[state] = action;
+    		metrics.policyChanged();
     	}
-    	
-    	return sumRewards / rewards.size();
     }
     
-    private int[][] convertToGrid(Action[][] policy) {
+    int[][] convertToGrid(byte[] policy, boolean usableAce) {
     	int[][] grid = new int[11][10];
         for (int i = 0; i < 11; i++) {
             for (int j = 0; j < 10; j++) {
-                if(policy[i][j] == Action.HIT) {
+                if(ACTIONS[policy[stateActionValueFunction.stateIndex(usableAce, i + 11, j + 1)]] == Action.HIT) {
                 	grid[i][j] = 1;
                 } else {
                 	grid[i][j] = 0;
@@ -322,46 +489,98 @@ public class Example5_3Model {
     }
     
     // --- NESTED DATA-HOLDER CLASSES ---
-    public record SimulationResult(int[][] usableAceGrid, int[][] nonUsableAceGrid) {}
+    public record SimulationResult(int[][] usableAceGrid, int[][] nonUsableAceGrid, int episodes, long seed,
+            boolean cancelled) {}
+
+    /**
+     * The exploration rate of epsilon-soft control over a run. Epsilon decays hyperbolically,
+     * {@code initial / (1 + episode / decayEpisodes)}, but not below the minimum; with a minimum of
+     * 0 every action keeps being explored while the policy becomes greedy in the limit.
+     * @param initial The exploration rate of the first episode, between 0 and 1.
+     * @param minimum The smallest exploration rate, between 0 and the initial rate.
+     * @param decayEpisodes The number of episodes after which epsilon has halved; infinite for a constant rate.
+     */
+    public record EpsilonSchedule(double initial, double minimum, double decayEpisodes) {
+        public EpsilonSchedule {
+            if (!(initial >= 0 && initial <= 1) || !(minimum >= 0 && minimum <= initial) || !(decayEpisodes > 0)) {
+                throw new IllegalArgumentException("Invalid epsilon schedule " + initial + ", " + minimum + ", " + decayEpisodes);
+            }
+        }
+
+        /**
+         * @return A schedule with a constant exploration rate.
+         */
+        public static EpsilonSchedule constant(double epsilon) {
+            return new EpsilonSchedule(epsilon, epsilon, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * @param episode The number of the episode in the run, from 0.
+         * @return The exploration rate of the episode.
+         */
+        public double epsilon(long episode) {
+            return Math.max(minimum, initial / (1 + episode / decayEpisodes));
+        }
+    }
 
-    public record GameResult(int reward, Hand playerHand, int dealerFaceUpCard, Action playerFirstRandomAction) {}
+    /**
+     * Follows the model's current policy: after a random first action with exploring starts
+     * ({@link #EXPLORING_STARTS}), or epsilon-greedily in every state, so that every action has a
+     * probability of at least epsilon / 2.
+     */
+    private class ControlPolicy implements Policy {
+        double epsilon = EXPLORING_STARTS;
+        
+        @Override
+        public int action(int state, int step, RandomGenerator random) {
+            if (epsilon == EXPLORING_STARTS) {
+                return step == 0 ? getRandomAction(random).ordinal() : policy[state];
+            }
+            if (epsilon > 0 && random.nextDouble() < epsilon) {
+                return getRandomAction(random).ordinal();
+            }
+            return policy[state];
+        }
+    }
     
-    public class StateActionRewards {
-    	List<Integer> hitRewards;
-    	List<Integer> stickRewards;
+    /**
+     * A worker of the control loop. It plays the blocks of episodes the {@link EpisodeRunner} hands
+     * it and updates the model's tables after every episode, with atomic adds when the tables are
+     * shared with other workers, and writes them to a log if it has one.
+     */
+    private class ControlWorker implements EpisodeWorker {
+    	private final BlackjackEnvironment environment = createEnvironment();
+    	private final ControlPolicy controlPolicy = new ControlPolicy();
+    	private final Episode episode = new Episode();
+    	private final EpsilonSchedule schedule;
+    	private final boolean shared;
+    	private final EpisodeLogWriter log;
     	
-    	public StateActionRewards() {
-    		hitRewards = new ArrayList<>();
-    		stickRewards = new ArrayList<>();
+    	ControlWorker(EpsilonSchedule schedule, boolean shared, EpisodeLogWriter log) {
+    		this.schedule = schedule;
+    		this.shared = shared;
+    		this.log = log;
     	}
     	
-    	public void clearAll() {
-    		this.hitRewards.clear();
-    		this.stickRewards.clear();
+    	@Override
+    	public void playEpisodes(RandomGenerator random, long firstEpisode, int episodes) {
+    		for (int i = 0; i < episodes; i++) {
+    			controlPolicy.epsilon = schedule == null ? EXPLORING_STARTS : schedule.epsilon(firstEpisode + i);
+    			EpisodeRunner.playEpisode(environment, controlPolicy, episode, random);
+    			if (i == 0) {
+    				// Time the learning of one episode per chunk for the metrics' time split and the recording.
+    				EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.EPISODE, 1);
+    				long start = System.nanoTime();
+    				policyEvaluationAndImprovement(episode, shared);
+    				metrics.evaluationSampled(System.nanoTime() - start);
+    				event.commit();
+    			} else {
+    				policyEvaluationAndImprovement(episode, shared);
+    			}
+    			if (log != null) {
+    				log.write(episode);
+    			}
+    		}
     	}
-    	
-        @Override
-        public String toString() {
-            return "StateActionRewards{\n" +
-                    "  hitRewards=" + hitRewards + ",\n" +
-                    "  stickRewards=" + stickRewards + "\n" +
-                    "}";
-        }
-    }
-    
-    public class Hand {
-        private ArrayList<Integer> initialCards = new ArrayList<>();
-        private ArrayList<Integer> extraCards = new ArrayList<>();
-        private boolean usableAce = false;
-        private int convertedAceIndex = -1;
-
-        public ArrayList<Integer> getInitialCards() { return initialCards; }
-        public ArrayList<Integer> getExtraCards() { return extraCards; }
-        public boolean isUsableAce() { return usableAce; }
-        public int getConvertedAceIndex() { return convertedAceIndex; }
-        public int addToInitialCards(Integer card) { this.initialCards.add(card); return card; }
-        public int addToExtraCards(int card) { this.extraCards.add(card); return card; }
-        public void setUsableAce(boolean usableAce) { this.usableAce = usableAce; }
-        public void setConvertedAceIndex(int convertedAceIndex) { this.convertedAceIndex = convertedAceIndex; }
     }
 }
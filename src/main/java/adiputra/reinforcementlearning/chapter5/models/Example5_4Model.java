@@ -0,0 +1,396 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.reinforcementlearning.engine.EpisodeRunner;
+import adiputra.reinforcementlearning.engine.EstimatingWorker;
+import adiputra.reinforcementlearning.engine.Estimator;
+import adiputra.reinforcementlearning.engine.Policy;
+import adiputra.utils.ProgressThrottle;
+import adiputra.utils.RandomSource;
+
+
+/**
+ * The Model for Example 5.4, off-policy Monte Carlo prediction of Blackjack state values with
+ * importance sampling.
+ *
+ * <p>Episodes are generated by a behavior policy that hits or sticks with probability 1/2 each, and
+ * the state values of deterministic target policies are estimated from them with both ordinary and
+ * weighted importance sampling. The simulation cost is paid once: every behavior episode is weighed
+ * against all target policies, which only takes a backward pass over its few states per policy.
+ * With the behavior probability of 1/2, the importance-sampling ratio of an action the target
+ * policy would take is 2, and that of any other action is 0, so the ratio of the rest of an episode
+ * is a power of two until the first deviation, and zero before it. The updates are incremental sums
+ * in an {@link ImportanceSamplingTable} and allocate nothing.
+ *
+ * <p>The game follows Example 5.1: initial hands are dealt up to a sum of 12, the dealer hits below
+ * 17 and an ace drawn by a hit counts as 1. The player's initial hand and the dealer's final sum are
+ * sampled from their exact distributions. Like in the book, episodes can also all start from one
+ * fixed state, e.g. a usable ace, a sum of 13 and a dealer's 2, whose value under the policy that
+ * sticks on 20 or 21 is -0.27720 with these rules (the book reports -0.27726).
+ *
+ * <p>The episodes are played in a {@link BlackjackEnvironment} by an {@link EpisodeRunner}, in blocks
+ * of {@value #RANDOM_STREAM_EPISODES} episodes with their own random streams, sharded across worker
+ * threads into private tables that are merged at the end, so a run is reproducible from its seed
+ * with any number of threads.
+ *
+ * <p>This class is observable; it fires property change events to notify listeners about the
+ * simulation's progress, status, and final results.
+ */
+public class Example5_4Model {
+    /** Property name for progress updates (an integer from 0 to 100). */
+    public static final String PROGRESS_PROPERTY = "progress";
+    /** Property name for status message updates (a String). */
+    public static final String STATUS_PROPERTY = "status";
+    /** Property name for the final simulation result (a SimulationResult object). */
+    public static final String RESULT_PROPERTY = "result";
+    /** Number of consecutive episodes played with one random stream; also the size of a parallel shard. */
+    public static final int RANDOM_STREAM_EPISODES = EpisodeRunner.RANDOM_STREAM_EPISODES;
+    /** The dealer's final-sum distribution for initial hands dealt up to a sum of 12. */
+    private static final DealerOutcomeDistribution DEALER_OUTCOMES = new DealerOutcomeDistribution(12);
+    /** The hit transitions of all hands and the distribution of initial hands dealt up to a sum of 12. */
+    private static final HandTransitionTable TRANSITIONS = new HandTransitionTable(12);
+    /** The behavior policy, which hits or sticks with probability 1/2 each. */
+    private static final Policy BEHAVIOR_POLICY = (state, step, random) -> random.nextBoolean()
+            ? BlackjackEnvironment.HIT : BlackjackEnvironment.STICK;
+
+    private final PropertyChangeSupport support;
+    private long progressEpisodeInterval = 1000;
+    private long progressMillisInterval = 100;
+    // The source of the card draws, or null to use a new random seed for every run.
+    private RandomSource randomSource;
+    private volatile boolean cancelRequested;
+    private List<TargetPolicy> targetPolicies = List.of(TargetPolicy.stickOn(20));
+    // The packed start hand (sum << 1 | usableAce) and dealer card, or -1 to deal every episode.
+    private int startHand = -1;
+    private int startDealerCard;
+
+    /**
+     * Constructs the model with the target policy of Example 5.4, which sticks on 20 or 21. Every run
+     * uses a new random seed.
+     */
+    public Example5_4Model() {
+        this(null);
+    }
+
+    /**
+     * Constructs the model with a fixed source of randomness, so that every run is reproducible.
+     * @param randomSource The source of the card draws, or null to use a new random seed for every run.
+     */
+    public Example5_4Model(RandomSource randomSource) {
+        this.support = new PropertyChangeSupport(this);
+        this.randomSource = randomSource;
+    }
+
+    /**
+     * Sets the source of randomness used by subsequent runs.
+     * @param randomSource The source of the card draws, or null to use a new random seed for every run.
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.randomSource = randomSource;
+    }
+
+    /**
+     * Sets the policies evaluated by subsequent runs, all from the same behavior episodes.
+     * @param targetPolicies The target policies.
+     * @throws IllegalArgumentException if there are no policies or a policy grid is not 10 by 10.
+     */
+    public void setTargetPolicies(List<TargetPolicy> targetPolicies) {
+        if (targetPolicies.isEmpty()) {
+            throw new IllegalArgumentException("No target policies");
+        }
+        for (TargetPolicy policy : targetPolicies) {
+            if (!isPolicyGrid(policy.usableAcePolicy()) || !isPolicyGrid(policy.nonUsableAcePolicy())) {
+                throw new IllegalArgumentException("Policy " + policy.name() + " is not a 10x10 grid");
+            }
+        }
+        this.targetPolicies = List.copyOf(targetPolicies);
+    }
+
+    /**
+     * Lets every episode of subsequent runs start from the given state instead of a dealt hand, as in
+     * Example 5.4.
+     * @param usableAce True if the player holds a usable ace.
+     * @param playerSum The player's sum, from 12 to 21.
+     * @param dealerCard The dealer's face-up card, from 1 to 10.
+     * @throws IllegalArgumentException if the state does not exist.
+     */
+    public void setStartState(boolean usableAce, int playerSum, int dealerCard) {
+        if (playerSum < 12 || playerSum > 21 || dealerCard < 1 || dealerCard > 10) {
+            throw new IllegalArgumentException("No state with player sum " + playerSum + " and dealer card " + dealerCard);
+        }
+        this.startHand = (playerSum << 1) | (usableAce ? 1 : 0);
+        this.startDealerCard = dealerCard;
+    }
+
+    /**
+     * Lets every episode of subsequent runs start from a dealt hand again.
+     */
+    public void clearStartState() {
+        this.startHand = -1;
+    }
+
+    /**
+     * Adds a {@link PropertyChangeListener} to the listener list.
+     * @param pcl The listener to be added.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener pcl) {
+        support.addPropertyChangeListener(pcl);
+    }
+
+    /**
+     * Removes a {@link PropertyChangeListener} from the listener list.
+     * @param pcl The listener to be removed.
+     */
+    public void removePropertyChangeListener(PropertyChangeListener pcl) {
+        support.removePropertyChangeListener(pcl);
+    }
+
+    /**
+     * Configures how often progress is published, see {@link ProgressThrottle}.
+     * @param episodeInterval The minimum number of episodes between two updates.
+     * @param millisInterval The minimum number of milliseconds between two updates.
+     */
+    public void setProgressInterval(long episodeInterval, long millisInterval) {
+        this.progressEpisodeInterval = episodeInterval;
+        this.progressMillisInterval = millisInterval;
+    }
+
+    /**
+     * Requests the running simulation to stop. The run then publishes the estimates of the episodes
+     * completed so far, flagged as cancelled. A request made while a run is being started applies to
+     * that run; the request is cleared when the run ends.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * Runs the off-policy prediction on the calling thread.
+     * @param noOfEpisodes The total number of behavior episodes to simulate.
+     */
+    public void runSimulation(final int noOfEpisodes) {
+        runSimulation(noOfEpisodes, 1);
+    }
+
+    /**
+     * Runs the off-policy prediction with the episodes sharded across worker threads. Every
+     * shard plays one block of episodes into its own table; the tables are merged once all shards
+     * have finished, with the same result for any number of threads.
+     *
+     * @param noOfEpisodes The total number of behavior episodes to simulate.
+     * @param noOfThreads The number of worker threads.
+     */
+    public void runSimulation(final int noOfEpisodes, final int noOfThreads) {
+        try {
+            List<TargetPolicy> policies = targetPolicies;
+            byte[] targetActions = compileTargetActions(policies);
+            ImportanceSamplingTable table = createTable(policies.size());
+            OffPolicyEstimator estimator = new OffPolicyEstimator(table, targetActions);
+
+            RandomSource source = randomSource != null ? randomSource : RandomSource.withRandomSeed();
+            ProgressThrottle progress = new ProgressThrottle(noOfEpisodes, progressEpisodeInterval, progressMillisInterval);
+            EpisodeRunner runner = new EpisodeRunner(source, 0, progress, () -> publishProgress(progress), () -> cancelRequested);
+            IntFunction<EstimatingWorker<OffPolicyEstimator>> workers = block -> new EstimatingWorker<>(createEnvironment(),
+                    BEHAVIOR_POLICY, new OffPolicyEstimator(createTable(policies.size()), targetActions));
+            int playedEpisodes;
+            try {
+                playedEpisodes = runner.runSharded(0, noOfEpisodes, noOfThreads, workers,
+                        worker -> estimator.merge(worker.getEstimator()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            List<PolicyEstimate> estimates = new ArrayList<>();
+            for (int policy = 0; policy < policies.size(); policy++) {
+                estimates.add(new PolicyEstimate(policies.get(policy).name(),
+                        convertToGrid(table, policy, true, false), convertToGrid(table, policy, false, false),
+                        convertToGrid(table, policy, true, true), convertToGrid(table, policy, false, true)));
+            }
+            SimulationResult result = new SimulationResult(estimates, convertToVisitGrid(table, true),
+                    convertToVisitGrid(table, false), playedEpisodes, source.getSeed(), cancelRequested);
+            support.firePropertyChange(RESULT_PROPERTY, null, result);
+        } finally {
+            cancelRequested = false;
+        }
+    }
+
+    private void publishProgress(ProgressThrottle progress) {
+        support.firePropertyChange(PROGRESS_PROPERTY, null, progress.getProgress());
+        support.firePropertyChange(STATUS_PROPERTY, null,
+                "Processing episode: " + progress.getCompletedEpisodes() + "/" + progress.getTotalEpisodes());
+    }
+
+    /**
+     * Creates a game that samples the initial hand and the dealer's final sum, and starts from the
+     * configured start state if there is one.
+     * @return The new environment, for use by one thread.
+     */
+    BlackjackEnvironment createEnvironment() {
+        BlackjackEnvironment environment = new BlackjackEnvironment(TRANSITIONS, DEALER_OUTCOMES);
+        environment.setSampleDealerOutcomes(true);
+        environment.setSampleInitialHands(true);
+        if (startHand >= 0) {
+            environment.setStartState((startHand & 1) != 0, startHand >> 1, startDealerCard);
+        }
+        return environment;
+    }
+
+    ImportanceSamplingTable createTable(int policies) {
+        return new ImportanceSamplingTable(12, 21, policies);
+    }
+
+    /**
+     * Flattens the target policies into one array holding, for every policy and state, the action
+     * of the policy, {@link BlackjackEnvironment#HIT} or {@link BlackjackEnvironment#STICK}.
+     */
+    byte[] compileTargetActions(List<TargetPolicy> policies) {
+        ImportanceSamplingTable layout = createTable(1);
+        int states = layout.getStates();
+        byte[] actions = new byte[policies.size() * states];
+        for (int policy = 0; policy < policies.size(); policy++) {
+            TargetPolicy target = policies.get(policy);
+            for (int playerSum = 12; playerSum <= 21; playerSum++) {
+                for (int dealerCard = 1; dealerCard <= 10; dealerCard++) {
+                    actions[policy * states + layout.stateIndex(true, playerSum, dealerCard)] =
+                            toAction(target.usableAcePolicy()[playerSum - 12][dealerCard - 1]);
+                    actions[policy * states + layout.stateIndex(false, playerSum, dealerCard)] =
+                            toAction(target.nonUsableAcePolicy()[playerSum - 12][dealerCard - 1]);
+                }
+            }
+        }
+        return actions;
+    }
+
+    private static byte toAction(int gridValue) {
+        return (byte) (gridValue == 1 ? BlackjackEnvironment.HIT : BlackjackEnvironment.STICK);
+    }
+
+    /**
+     * Records an episode for all target policies. Walking backwards from the end, the ratio of the
+     * rest of the episode doubles with every action a target policy would also take; at the first
+     * action it would not take, the ratio of that and all earlier states drops to 0, which only
+     * counts as a visit.
+     * @param episode The behavior episode.
+     * @param table The table receiving the visits and weighted returns.
+     * @param targetActions The compiled target policies, see {@link #compileTargetActions(List)}.
+     */
+    static void importanceSampling(Episode episode, ImportanceSamplingTable table, byte[] targetActions) {
+        int states = table.getStates();
+        for (int t = 0; t < episode.getLength(); t++) {
+            table.addVisit(episode.getState(t));
+        }
+        for (int policy = 0; policy < table.getPolicies(); policy++) {
+            long weight = 1;
+            int G = 0;
+            for (int t = episode.getLength() - 1; t >= 0; t--) {
+                int state = episode.getState(t);
+                G += episode.getReward(t);
+                if (targetActions[policy * states + state] != episode.getAction(t)) {
+                    break;
+                }
+                weight <<= 1;
+                table.add(policy, state, weight, G);
+            }
+        }
+    }
+
+    private static boolean isPolicyGrid(int[][] grid) {
+        if (grid == null || grid.length != 10) {
+            return false;
+        }
+        for (int[] row : grid) {
+            if (row == null || row.length != 10) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[][] convertToGrid(ImportanceSamplingTable table, int policy, boolean usableAce, boolean weighted) {
+        double[][] grid = new double[table.getPlayerSums()][StateActionValueTable.DEALER_CARDS];
+        for (int playerSum = 12; playerSum <= 21; playerSum++) {
+            for (int dealerCard = 1; dealerCard <= 10; dealerCard++) {
+                int state = table.stateIndex(usableAce, playerSum, dealerCard);
+                grid[playerSum - 12][dealerCard - 1] = weighted
+                        ? table.getWeightedEstimate(policy, state) : table.getOrdinaryEstimate(policy, state);
+            }
+        }
+        return grid;
+    }
+
+    private static long[][] convertToVisitGrid(ImportanceSamplingTable table, boolean usableAce) {
+        long[][] grid = new long[table.getPlayerSums()][StateActionValueTable.DEALER_CARDS];
+        for (int playerSum = 12; playerSum <= 21; playerSum++) {
+            for (int dealerCard = 1; dealerCard <= 10; dealerCard++) {
+                grid[playerSum - 12][dealerCard - 1] = table.getVisits(table.stateIndex(usableAce, playerSum, dealerCard));
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * A deterministic target policy.
+     * @param name The name of the policy in the results.
+     * @param usableAcePolicy The action in the states with a usable ace, indexed
+     *        {@code [playerSum - 12][dealerCard - 1]}, with 1 for HIT and 0 for STICK.
+     * @param nonUsableAcePolicy The action in the states without a usable ace.
+     */
+    public record TargetPolicy(String name, int[][] usableAcePolicy, int[][] nonUsableAcePolicy) {
+        /**
+         * @param stickSum The smallest sum on which the policy sticks.
+         * @return The policy that sticks on the given sum or more and hits otherwise.
+         */
+        public static TargetPolicy stickOn(int stickSum) {
+            int[][] grid = new int[10][10];
+            for (int playerSum = 12; playerSum < stickSum && playerSum <= 21; playerSum++) {
+                Arrays.fill(grid[playerSum - 12], 1);
+            }
+            return new TargetPolicy("stick" + stickSum, grid, grid);
+        }
+    }
+
+    /**
+     * The estimated state values of one target policy, indexed {@code [playerSum - 12][dealerCard - 1]}.
+     */
+    public record PolicyEstimate(String name, double[][] usableAceOrdinary, double[][] nonUsableAceOrdinary,
+            double[][] usableAceWeighted, double[][] nonUsableAceWeighted) {}
+
+    /**
+     * The final result of a simulation: the estimates of every target policy, and the visits of the
+     * behavior policy to every state.
+     */
+    public record SimulationResult(List<PolicyEstimate> estimates, long[][] usableAceVisits,
+            long[][] nonUsableAceVisits, int episodes, long seed, boolean cancelled) {}
+
+    /**
+     * Learns the estimates of all target policies from behavior episodes into a table, see
+     * {@link Example5_4Model#importanceSampling(Episode, ImportanceSamplingTable, byte[])}.
+     */
+    private static final class OffPolicyEstimator implements Estimator<OffPolicyEstimator> {
+        private final ImportanceSamplingTable table;
+        private final byte[] targetActions;
+
+        OffPolicyEstimator(ImportanceSamplingTable table, byte[] targetActions) {
+            this.table = table;
+            this.targetActions = targetActions;
+        }
+
+        @Override
+        public void update(Episode episode) {
+            importanceSampling(episode, table, targetActions);
+        }
+
+        @Override
+        public void merge(OffPolicyEstimator other) {
+            table.merge(other.table);
+        }
+    }
+}
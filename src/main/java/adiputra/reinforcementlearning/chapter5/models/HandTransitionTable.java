@@ -0,0 +1,138 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.random.RandomGenerator;
+
+import adiputra.utils.AliasTable;
+
+/**
+ * Precomputed card transitions of a Blackjack hand, so that playing a hand is a sequence of
+ * integer table lookups instead of card arithmetic and ace bookkeeping.
+ *
+ * <p>Hands are packed as {@code sum << 1 | usableAce}, like in the models, where the sum counts a
+ * usable ace as 11. For every hand with a sum of at most 21 and every one of the 13 card ranks the
+ * table holds the hand after hitting, with a usable ace already converted to 1 if the hit would
+ * bust the hand; a hand whose sum exceeds 21 has gone bust. As in the models, an ace drawn by a
+ * hit always counts as 1. Since all ranks are equally likely, the hit distribution needs no alias
+ * columns: one {@code nextInt(13)} selects the entry, exactly the draw the models make for a card,
+ * so table-driven and card-by-card play consume the random streams identically.
+ *
+ * <p>The initial hand, dealt until its sum reaches a minimum, has a non-uniform distribution and is
+ * sampled from an {@link AliasTable} with a single random number.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class HandTransitionTable {
+    /** The number of equally likely card ranks (ace to king). */
+    public static final int RANKS = 13;
+
+    // The largest packed hand that can still hit: a sum of 21 with a usable ace.
+    private static final int MAX_HAND = (21 << 1) | 1;
+
+    private final int minInitialSum;
+    private final int[] hits = new int[(MAX_HAND + 1) * RANKS];
+    private final int[] initialHands;
+    private final AliasTable initialHandTable;
+
+    /**
+     * Builds the table for initial hands dealt until their sum reaches the given minimum.
+     * @param minInitialSum The minimum sum of an initial hand, 12 in Example 5.1 and 11 in Example 5.3.
+     */
+    public HandTransitionTable(int minInitialSum) {
+        this.minInitialSum = minInitialSum;
+        for (int hand = 0; hand <= MAX_HAND; hand++) {
+            for (int rank = 0; rank < RANKS; rank++) {
+                int sum = (hand >> 1) + Math.min(rank + 1, 10);
+                boolean usableAce = (hand & 1) != 0;
+                if (sum > 21 && usableAce) {
+                    sum -= 10;
+                    usableAce = false;
+                }
+                hits[hand * RANKS + rank] = (sum << 1) | (usableAce ? 1 : 0);
+            }
+        }
+
+        double[] weights = new double[MAX_HAND + 1];
+        for (int first = 1; first <= 10; first++) {
+            for (int second = 1; second <= 10; second++) {
+                dealInitialCards(first + second, first == 1 || second == 1,
+                        cardProbability(first) * cardProbability(second), minInitialSum, weights);
+            }
+        }
+        int outcomes = 0;
+        for (double weight : weights) {
+            if (weight > 0) {
+                outcomes++;
+            }
+        }
+        initialHands = new int[outcomes];
+        double[] initialWeights = new double[outcomes];
+        for (int hand = 0, i = 0; hand < weights.length; hand++) {
+            if (weights[hand] > 0) {
+                initialHands[i] = hand;
+                initialWeights[i++] = weights[hand];
+            }
+        }
+        initialHandTable = new AliasTable(initialWeights);
+    }
+
+    /**
+     * Hits a hand with one card.
+     * @param hand The packed hand, with a sum of at most 21.
+     * @param random The generator to draw from; exactly one {@code nextInt(13)} is consumed.
+     * @return The packed hand after the hit; its sum exceeds 21 if it went bust.
+     */
+    public int hit(int hand, RandomGenerator random) {
+        return hits[hand * RANKS + random.nextInt(RANKS)];
+    }
+
+    /**
+     * Looks up the hand after hitting with a card of the given rank.
+     * @param hand The packed hand, with a sum of at most 21.
+     * @param rank The rank of the card, from 0 (ace) to 12 (king).
+     * @return The packed hand after the hit; its sum exceeds 21 if it went bust.
+     */
+    public int afterHit(int hand, int rank) {
+        return hits[hand * RANKS + rank];
+    }
+
+    /**
+     * Deals an initial hand with a single random number.
+     * @param random The generator to draw from; exactly one {@code nextDouble()} is consumed.
+     * @return The packed initial hand.
+     */
+    public int dealInitialHand(RandomGenerator random) {
+        return initialHands[initialHandTable.sample(random)];
+    }
+
+    /**
+     * @return The minimum sum of an initial hand.
+     */
+    public int getMinInitialSum() {
+        return minInitialSum;
+    }
+
+    /**
+     * Accumulates the probability of every initial hand reachable from a partial deal. An ace
+     * drawn during the deal becomes usable if it fits, as in the models' {@code setupInitialCards}.
+     */
+    private static void dealInitialCards(int rawSum, boolean usableAce, double probability, int minInitialSum,
+            double[] weights) {
+        int sum = rawSum + (usableAce ? 10 : 0);
+        if (sum >= minInitialSum) {
+            weights[(sum << 1) | (usableAce ? 1 : 0)] += probability;
+            return;
+        }
+        for (int card = 1; card <= 10; card++) {
+            int newSum = rawSum + card;
+            boolean newUsableAce = usableAce || (card == 1 && newSum + 10 <= 21);
+            dealInitialCards(newSum, newUsableAce, probability * cardProbability(card), minInitialSum, weights);
+        }
+    }
+
+    /**
+     * @return The probability of drawing a card of the given value; the 10, jack, queen and king all count as 10.
+     */
+    private static double cardProbability(int card) {
+        return card == 10 ? 4.0 / RANKS : 1.0 / RANKS;
+    }
+}
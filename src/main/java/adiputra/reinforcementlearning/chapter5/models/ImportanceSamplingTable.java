@@ -0,0 +1,167 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.Arrays;
+
+/**
+ * A packed table of importance-sampled returns for off-policy prediction of several target policies
+ * at once, from a single stream of behavior episodes.
+ *
+ * <p>For every state the table counts the visits of the behavior policy, which are the same for all
+ * target policies, and for every target policy and state it accumulates the importance-sampling
+ * ratios {@code W} and the weighted returns {@code W * G}. The ordinary estimate divides the weighted
+ * returns by the visits, the weighted estimate divides them by the sum of the ratios. States are
+ * numbered like in {@link StateActionValueTable}.
+ *
+ * <p>Ratios and returns are recorded as integers: with a behavior policy choosing each action with
+ * probability 1/2 and deterministic target policies, every ratio is a power of two. The sums are
+ * therefore exact and tables filled by parallel shards can be merged in any order with the same result.
+ */
+public final class ImportanceSamplingTable {
+    private final int minPlayerSum;
+    private final int playerSums;
+    private final int policies;
+    private final int states;
+    private final long[] visits;
+    private final long[] weightSums;
+    private final long[] weightedReturnSums;
+
+    /**
+     * Creates an empty table.
+     * @param minPlayerSum The smallest player sum of the table.
+     * @param maxPlayerSum The largest player sum of the table.
+     * @param policies The number of target policies.
+     */
+    public ImportanceSamplingTable(int minPlayerSum, int maxPlayerSum, int policies) {
+        this.minPlayerSum = minPlayerSum;
+        this.playerSums = maxPlayerSum - minPlayerSum + 1;
+        this.policies = policies;
+        this.states = 2 * playerSums * StateActionValueTable.DEALER_CARDS;
+        this.visits = new long[states];
+        this.weightSums = new long[policies * states];
+        this.weightedReturnSums = new long[policies * states];
+    }
+
+    /**
+     * Returns the number of a state, between 0 and {@link #getStates()} - 1.
+     * @param usableAce True if the player holds a usable ace.
+     * @param playerSum The player's sum.
+     * @param dealerCard The dealer's face-up card (1-10).
+     * @return The state number.
+     */
+    public int stateIndex(boolean usableAce, int playerSum, int dealerCard) {
+        return ((usableAce ? playerSums : 0) + playerSum - minPlayerSum) * StateActionValueTable.DEALER_CARDS
+                + dealerCard - 1;
+    }
+
+    /**
+     * Records a visit of the behavior policy to a state.
+     * @param state The state number.
+     */
+    public void addVisit(int state) {
+        visits[state]++;
+    }
+
+    /**
+     * Records a return with a non-zero importance-sampling ratio for a target policy.
+     * @param policy The number of the target policy.
+     * @param state The state number.
+     * @param weight The importance-sampling ratio of the rest of the episode.
+     * @param reward The return.
+     */
+    public void add(int policy, int state, long weight, int reward) {
+        int index = policy * states + state;
+        weightSums[index] += weight;
+        weightedReturnSums[index] += weight * reward;
+    }
+
+    /**
+     * Adds all returns recorded in another table of the same shape, e.g. from a parallel shard.
+     * @param other The table to merge into this one.
+     */
+    public void merge(ImportanceSamplingTable other) {
+        for (int i = 0; i < visits.length; i++) {
+            visits[i] += other.visits[i];
+        }
+        for (int i = 0; i < weightSums.length; i++) {
+            weightSums[i] += other.weightSums[i];
+            weightedReturnSums[i] += other.weightedReturnSums[i];
+        }
+    }
+
+    /**
+     * Clears all recorded returns.
+     */
+    public void clear() {
+        Arrays.fill(visits, 0);
+        Arrays.fill(weightSums, 0);
+        Arrays.fill(weightedReturnSums, 0);
+    }
+
+    /**
+     * @param state The state number.
+     * @return The number of visits of the behavior policy to the state.
+     */
+    public long getVisits(int state) {
+        return visits[state];
+    }
+
+    /**
+     * @param policy The number of the target policy.
+     * @param state The state number.
+     * @return The sum of the importance-sampling ratios recorded for the state.
+     */
+    public long getWeightSum(int policy, int state) {
+        return weightSums[policy * states + state];
+    }
+
+    /**
+     * @param policy The number of the target policy.
+     * @param state The state number.
+     * @return The ordinary importance-sampling estimate: the weighted returns divided by the visits,
+     *         or 0 if the state was not visited.
+     */
+    public double getOrdinaryEstimate(int policy, int state) {
+        long n = visits[state];
+        return n == 0 ? 0 : (double) weightedReturnSums[policy * states + state] / n;
+    }
+
+    /**
+     * @param policy The number of the target policy.
+     * @param state The state number.
+     * @return The weighted importance-sampling estimate: the weighted returns divided by the sum of
+     *         the ratios, or 0 if no episode through the state followed the target policy.
+     */
+    public double getWeightedEstimate(int policy, int state) {
+        int index = policy * states + state;
+        long weight = weightSums[index];
+        return weight == 0 ? 0 : (double) weightedReturnSums[index] / weight;
+    }
+
+    /**
+     * @return The smallest player sum of the table.
+     */
+    public int getMinPlayerSum() {
+        return minPlayerSum;
+    }
+
+    /**
+     * @return The number of player sums per usable ace flag.
+     */
+    public int getPlayerSums() {
+        return playerSums;
+    }
+
+    /**
+     * @return The number of target policies.
+     */
+    public int getPolicies() {
+        return policies;
+    }
+
+    /**
+     * @return The number of states.
+     */
+    public int getStates() {
+        return states;
+    }
+}
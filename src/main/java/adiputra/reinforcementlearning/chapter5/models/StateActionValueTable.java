@@ -0,0 +1,249 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import adiputra.reinforcementlearning.engine.Checkpointable;
+import adiputra.reinforcementlearning.engine.Episode;
+import adiputra.reinforcementlearning.engine.Estimator;
+
+/**
+ * A packed table of the Monte Carlo returns observed for the Blackjack states of chapter 5.
+ *
+ * <p>An entry is addressed by the usable ace flag, the player's sum, the dealer's face-up card and
+ * an action, and holds the number of returns observed together with their exact sum and sum of
+ * squares, from which the mean and variance are derived. All entries live in three flat
+ * {@code long} arrays, so recording or reading a return is a single indexed load instead of a walk
+ * through a grid of objects. The entries of a state are adjacent and the states are ordered by
+ * usable ace, then player sum, then dealer card; the 440 entries of Example 5.3 take about 10 KB and
+ * fit in the L1 cache. Models without actions, like the prediction of Example 5.1, use a single action.
+ *
+ * <p>Since the returns are integers, the accumulated values are exact and tables filled by parallel
+ * shards can be merged in any order with the same result. For tables shared between threads,
+ * {@link #addConcurrently(int, int)} records a return with atomic adds, so no return is lost.
+ *
+ * <p>As an {@link Estimator}, the table records the return of every step of an episode under the
+ * step's state and action, with the states numbered like in {@link BlackjackEnvironment}. As
+ * {@link Checkpointable}, it saves its three arrays as they are.
+ */
+public final class StateActionValueTable implements Estimator<StateActionValueTable>, Checkpointable {
+    /** Number of possible dealer face-up cards (1-10). */
+    public static final int DEALER_CARDS = 10;
+
+    private static final VarHandle LONG_ARRAY = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int minPlayerSum;
+    private final int playerSums;
+    private final int actions;
+    private final long[] counts;
+    private final long[] sums;
+    private final long[] sumsOfSquares;
+
+    /**
+     * Creates an empty table.
+     * @param minPlayerSum The smallest player sum of the table.
+     * @param maxPlayerSum The largest player sum of the table.
+     * @param actions The number of actions per state; 1 for state values.
+     */
+    public StateActionValueTable(int minPlayerSum, int maxPlayerSum, int actions) {
+        this.minPlayerSum = minPlayerSum;
+        this.playerSums = maxPlayerSum - minPlayerSum + 1;
+        this.actions = actions;
+        int size = 2 * playerSums * DEALER_CARDS * actions;
+        this.counts = new long[size];
+        this.sums = new long[size];
+        this.sumsOfSquares = new long[size];
+    }
+
+    /**
+     * Returns the number of a state, between 0 and {@link #getStates()} - 1.
+     * @param usableAce True if the player holds a usable ace.
+     * @param playerSum The player's sum.
+     * @param dealerCard The dealer's face-up card (1-10).
+     * @return The state number.
+     */
+    public int stateIndex(boolean usableAce, int playerSum, int dealerCard) {
+        return ((usableAce ? playerSums : 0) + playerSum - minPlayerSum) * DEALER_CARDS + dealerCard - 1;
+    }
+
+    /**
+     * Returns the index of the entry of an action in a state.
+     * @param state The state number, see {@link #stateIndex(boolean, int, int)}.
+     * @param action The action, between 0 and {@link #getActions()} - 1.
+     * @return The entry index.
+     */
+    public int index(int state, int action) {
+        return state * actions + action;
+    }
+
+    /**
+     * Records a single return.
+     * @param index The entry index.
+     * @param reward The return to record.
+     */
+    public void add(int index, int reward) {
+        counts[index]++;
+        sums[index] += reward;
+        sumsOfSquares[index] += (long) reward * reward;
+    }
+
+    /**
+     * Records a single return with atomic adds, for tables updated by several threads at once.
+     * Readers may observe the count and the sums of an entry one return apart.
+     * @param index The entry index.
+     * @param reward The return to record.
+     */
+    public void addConcurrently(int index, int reward) {
+        LONG_ARRAY.getAndAdd(counts, index, 1L);
+        LONG_ARRAY.getAndAdd(sums, index, (long) reward);
+        LONG_ARRAY.getAndAdd(sumsOfSquares, index, (long) reward * reward);
+    }
+
+    /**
+     * Records the undiscounted return of every step of an episode, from that step to the end. A
+     * table with a single action records the returns of the states, whatever action was taken.
+     * @param episode The played episode.
+     */
+    @Override
+    public void update(Episode episode) {
+        int G = 0;
+        for (int t = episode.getLength() - 1; t >= 0; t--) {
+            G += episode.getReward(t);
+            add(index(episode.getState(t), actions == 1 ? 0 : episode.getAction(t)), G);
+        }
+    }
+
+    /**
+     * Adds all returns recorded in another table of the same shape, e.g. from a parallel shard.
+     * @param other The table to merge into this one.
+     */
+    @Override
+    public void merge(StateActionValueTable other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+            sums[i] += other.sums[i];
+            sumsOfSquares[i] += other.sumsOfSquares[i];
+        }
+    }
+
+    @Override
+    public int checkpointBytes() {
+        return 3 * counts.length * Long.BYTES;
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        LongBuffer longs = buffer.asLongBuffer();
+        longs.put(counts).put(sums).put(sumsOfSquares);
+        buffer.position(buffer.position() + checkpointBytes());
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        LongBuffer longs = buffer.asLongBuffer();
+        longs.get(counts).get(sums).get(sumsOfSquares);
+        buffer.position(buffer.position() + checkpointBytes());
+    }
+
+    /**
+     * Clears all recorded returns.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0);
+        Arrays.fill(sumsOfSquares, 0);
+    }
+
+    /**
+     * @param index The entry index.
+     * @return The number of returns recorded for the entry.
+     */
+    public long getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Sums the returns recorded for every state over its actions. The counts are read without
+     * synchronization, so while workers are adding returns the visits are a recent approximation.
+     * @return The number of visits of every state, indexed by state.
+     */
+    public long[] getStateVisits() {
+        long[] visits = new long[getStates()];
+        for (int i = 0; i < counts.length; i++) {
+            visits[i / actions] += counts[i];
+        }
+        return visits;
+    }
+
+    /**
+     * @param index The entry index.
+     * @return The sum of the returns recorded for the entry.
+     */
+    public long getSum(int index) {
+        return sums[index];
+    }
+
+    /**
+     * @param index The entry index.
+     * @return The average of the recorded returns, or 0 if none has been recorded.
+     */
+    public double getMean(int index) {
+        long count = counts[index];
+        return count == 0 ? 0 : (double) sums[index] / count;
+    }
+
+    /**
+     * Calculates the unbiased sample variance of the recorded returns.
+     * @param index The entry index.
+     * @return The variance, or 0 if fewer than two returns were recorded.
+     */
+    public double getVariance(int index) {
+        long count = counts[index];
+        if (count < 2) {
+            return 0;
+        }
+        double mean = (double) sums[index] / count;
+        return Math.max(0, (sumsOfSquares[index] - mean * sums[index]) / (count - 1));
+    }
+
+    /**
+     * Calculates the standard error of the mean of the recorded returns.
+     * @param index The entry index.
+     * @return The standard error, or 0 if fewer than two returns were recorded.
+     */
+    public double getStandardError(int index) {
+        long count = counts[index];
+        return count < 2 ? 0 : Math.sqrt(getVariance(index) / count);
+    }
+
+    /**
+     * @return The smallest player sum of the table.
+     */
+    public int getMinPlayerSum() {
+        return minPlayerSum;
+    }
+
+    /**
+     * @return The number of player sums of the table.
+     */
+    public int getPlayerSums() {
+        return playerSums;
+    }
+
+    /**
+     * @return The number of actions per state.
+     */
+    public int getActions() {
+        return actions;
+    }
+
+    /**
+     * @return The number of states of the table.
+     */
+    public int getStates() {
+        return 2 * playerSums * DEALER_CARDS;
+    }
+}
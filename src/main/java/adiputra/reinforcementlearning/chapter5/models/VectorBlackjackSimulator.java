@@ -0,0 +1,197 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import java.util.random.RandomGenerator;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Plays the games of Example 5.1 in SIMD lockstep with the incubating Vector API: every vector lane
+ * holds an independent game, and each step draws a card in all lanes at once and applies the
+ * hit, stick, ace and bust rules with lane masks. Lanes that are done with a phase sit out the
+ * remaining steps of the round, so a round costs as many steps as its longest game.
+ *
+ * <p>Every lane has its own SplitMix64 generator, seeded from the block's random stream, and cards
+ * are drawn from the high 32 bits by a multiply-shift (its bias is below 13 / 2^32). The games follow
+ * the same rules as the scalar {@link BlackjackEnvironment} and produce the same distribution of
+ * returns, but use the random numbers differently, so results match the scalar path statistically,
+ * not bit for bit; they are reproducible from the seed on machines with the same vector width. The
+ * dealer's hand is only played in lanes where the player did not go bust.
+ *
+ * <p>The returns are recorded into the value table by a scalar loop after each round, since
+ * scattered adds into the same table entries cannot be vectorized safely.
+ *
+ * <p>This class must only be loaded when the {@code jdk.incubator.vector} module is present; see
+ * {@link Example5_1Model#isVectorApiAvailable()}.
+ */
+final class VectorBlackjackSimulator implements EpisodeSimulator {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // The state of every lane's generator.
+    private final long[] generators = new long[LANES];
+    // Per-lane values shared between the steps of a round. They live in arrays rather than in vector
+    // variables, and the helper methods exchange only arrays, because C2 boxes vectors that are carried
+    // around a loop or passed to and returned from methods it does not inline.
+    private final long[] cards = new long[LANES];
+    private final long[] playerFirstCards = new long[LANES];
+    private final long[] playerSums = new long[LANES];
+    private final long[] playerUsableAces = new long[LANES];
+    private final long[] dealerCards = new long[LANES];
+    private final long[] dealerSums = new long[LANES];
+    private final long[] dealerUsableAces = new long[LANES];
+    // Whether a lane is taking part in the current phase, as 0 or 1.
+    private final long[] active = new long[LANES];
+    private final long[] rewards = new long[LANES];
+    // The packed hand (sum << 1 | usableAce) of every recorded state, step after step, or -1 for lanes without one.
+    private final long[] recordedHands = new long[BlackjackEnvironment.MAX_DECISIONS * LANES];
+
+    /**
+     * Creates a simulator whose lane generators are seeded from the given generator.
+     * @param seeds The random stream of the block to play.
+     */
+    VectorBlackjackSimulator(RandomGenerator seeds) {
+        for (int i = 0; i < LANES; i++) {
+            generators[i] = seeds.nextLong();
+        }
+    }
+
+    /**
+     * @return The number of games played per round.
+     */
+    static int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public void playEpisodes(int episodes, StateActionValueTable valueFunction) {
+        for (int remaining = episodes; remaining > 0; remaining -= LANES) {
+            playRound(Math.min(remaining, LANES), valueFunction);
+        }
+    }
+
+    /**
+     * Plays one game in each of the first lanes and records the returns.
+     */
+    private void playRound(int lanes, StateActionValueTable valueFunction) {
+        dealInitialHands(playerFirstCards, playerSums, playerUsableAces);
+        dealInitialHands(dealerCards, dealerSums, dealerUsableAces);
+
+        // The player's turn: record every state, hit below 20.
+        LongVector.zero(SPECIES).blend(1, SPECIES.indexInRange(0, lanes)).intoArray(active, 0);
+        int steps = 0;
+        while (true) {
+            VectorMask<Long> playing = LongVector.fromArray(SPECIES, active, 0).eq(1);
+            if (!playing.anyTrue()) {
+                break;
+            }
+            LongVector sum = LongVector.fromArray(SPECIES, playerSums, 0);
+            sum.lanewise(VectorOperators.LSHL, 1).or(LongVector.fromArray(SPECIES, playerUsableAces, 0))
+                    .blend(-1, playing.not())
+                    .intoArray(recordedHands, steps * LANES);
+            steps++;
+            LongVector.zero(SPECIES).blend(1, playing.and(sum.lt(20))).intoArray(active, 0);
+            hit(playerSums, playerUsableAces);
+            // Lanes that hit and went bust are done.
+            LongVector.fromArray(SPECIES, active, 0)
+                    .blend(0, LongVector.fromArray(SPECIES, playerSums, 0).compare(VectorOperators.GT, 21))
+                    .intoArray(active, 0);
+        }
+
+        // The dealer's turn: hit below 17, only where the player is still in the game.
+        VectorMask<Long> playerBust = LongVector.fromArray(SPECIES, playerSums, 0).compare(VectorOperators.GT, 21);
+        LongVector.zero(SPECIES).blend(1, SPECIES.indexInRange(0, lanes).andNot(playerBust)).intoArray(active, 0);
+        while (true) {
+            VectorMask<Long> hitting = LongVector.fromArray(SPECIES, active, 0).eq(1)
+                    .and(LongVector.fromArray(SPECIES, dealerSums, 0).lt(17));
+            if (!hitting.anyTrue()) {
+                break;
+            }
+            LongVector.zero(SPECIES).blend(1, hitting).intoArray(active, 0);
+            hit(dealerSums, dealerUsableAces);
+        }
+
+        LongVector playerSum = LongVector.fromArray(SPECIES, playerSums, 0);
+        LongVector dealerSum = LongVector.fromArray(SPECIES, dealerSums, 0);
+        LongVector difference = playerSum.sub(dealerSum);
+        LongVector.zero(SPECIES)
+                .blend(1, difference.compare(VectorOperators.GT, 0))
+                .blend(-1, difference.lt(0))
+                .blend(1, dealerSum.compare(VectorOperators.GT, 21))
+                .blend(-1, playerSum.compare(VectorOperators.GT, 21))
+                .intoArray(rewards, 0);
+
+        for (int step = 0; step < steps; step++) {
+            for (int lane = 0; lane < LANES; lane++) {
+                long hand = recordedHands[step * LANES + lane];
+                if (hand >= 0) {
+                    int state = valueFunction.stateIndex((hand & 1) != 0, (int) (hand >> 1), (int) dealerCards[lane]);
+                    valueFunction.add(state, (int) rewards[lane]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hits the hands of the active lanes with one card each, like {@code HandTransitionTable}: a
+     * usable ace turns into 1 if the hand would otherwise go bust, and a drawn ace counts as 1.
+     */
+    private void hit(long[] sums, long[] usableAces) {
+        drawCards();
+        VectorMask<Long> hitting = LongVector.fromArray(SPECIES, active, 0).eq(1);
+        LongVector usableAce = LongVector.fromArray(SPECIES, usableAces, 0);
+        LongVector sum = LongVector.fromArray(SPECIES, sums, 0)
+                .lanewise(VectorOperators.ADD, LongVector.fromArray(SPECIES, cards, 0), hitting);
+        VectorMask<Long> soften = hitting.and(sum.compare(VectorOperators.GT, 21)).and(usableAce.eq(1));
+        sum.lanewise(VectorOperators.SUB, 10, soften).intoArray(sums, 0);
+        usableAce.blend(0, soften).intoArray(usableAces, 0);
+    }
+
+    /**
+     * Deals initial hands until their sums are at least 12, like the scalar {@link BlackjackEnvironment}:
+     * an ace becomes usable if it fits.
+     * @param firstCards Receives the first card of every hand.
+     * @param sums Receives the sums of the hands.
+     * @param usableAces Receives whether the hands hold a usable ace, as 0 or 1.
+     */
+    private void dealInitialHands(long[] firstCards, long[] sums, long[] usableAces) {
+        drawCards();
+        System.arraycopy(cards, 0, firstCards, 0, LANES);
+        drawCards();
+        LongVector firstCard = LongVector.fromArray(SPECIES, firstCards, 0);
+        LongVector secondCard = LongVector.fromArray(SPECIES, cards, 0);
+        VectorMask<Long> ace = firstCard.eq(1).or(secondCard.eq(1));
+        firstCard.add(secondCard).lanewise(VectorOperators.ADD, 10, ace).intoArray(sums, 0);
+        LongVector.zero(SPECIES).blend(1, ace).intoArray(usableAces, 0);
+        while (LongVector.fromArray(SPECIES, sums, 0).lt(12).anyTrue()) {
+            drawCards();
+            LongVector sum = LongVector.fromArray(SPECIES, sums, 0);
+            LongVector usableAce = LongVector.fromArray(SPECIES, usableAces, 0);
+            LongVector card = LongVector.fromArray(SPECIES, cards, 0);
+            VectorMask<Long> dealing = sum.lt(12);
+            sum = sum.lanewise(VectorOperators.ADD, card, dealing);
+            VectorMask<Long> newAce = dealing.and(card.eq(1)).and(usableAce.eq(0))
+                    .and(sum.compare(VectorOperators.LE, 11));
+            sum.lanewise(VectorOperators.ADD, 10, newAce).intoArray(sums, 0);
+            usableAce.blend(1, newAce).intoArray(usableAces, 0);
+        }
+    }
+
+    /**
+     * Draws one card in every lane into {@code cards}: 1 (ace) to 10, with the jack, queen and king
+     * counting as 10.
+     */
+    private void drawCards() {
+        LongVector state = LongVector.fromArray(SPECIES, generators, 0).add(GOLDEN_GAMMA);
+        state.intoArray(generators, 0);
+        LongVector z = state;
+        z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 30)).mul(0xBF58476D1CE4E5B9L);
+        z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 27)).mul(0x94D049BB133111EBL);
+        z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 31));
+        LongVector rank = z.lanewise(VectorOperators.LSHR, 32).mul(13).lanewise(VectorOperators.LSHR, 32);
+        rank.add(1).min(10).intoArray(cards, 0);
+    }
+}
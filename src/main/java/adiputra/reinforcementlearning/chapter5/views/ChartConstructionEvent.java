@@ -0,0 +1,32 @@
+package adiputra.reinforcementlearning.chapter5.views;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event spanning the construction of a result chart by a view, from the grid of
+ * results to a chart ready to be shown.
+ */
+@Name("adiputra.reinforcementlearning.ChartConstruction")
+@Label("Chart Construction")
+@Description("The construction of a result chart from a grid of results")
+@Category({ "Reinforcement Learning", "Views" })
+final class ChartConstructionEvent extends Event {
+    @Label("Title")
+    String title;
+
+    /**
+     * Creates and begins an event.
+     * @param title The title of the chart.
+     * @return The event, to be committed once the chart is constructed.
+     */
+    static ChartConstructionEvent start(String title) {
+        ChartConstructionEvent event = new ChartConstructionEvent();
+        event.title = title;
+        event.begin();
+        return event;
+    }
+}
@@ -34,6 +34,8 @@ public class Example5_1View extends JPanel {
     private final JTextField episodesField = new JTextField("100000");
     /** Button to start the simulation. */
     private final JButton simulateButton = new JButton("Simulate");
+    /** Button to stop a running simulation and show its partial results. */
+    private final JButton stopButton = new JButton("Stop");
     /** Label to display status messages to the user. */
     private final JLabel statusLabel = new JLabel("Status: Ready");
     /** Progress bar to show the simulation's progress. */
@@ -83,9 +85,16 @@ public class Example5_1View extends JPanel {
 
         gbc.gridx = 0;
         gbc.gridy = 1;
-        gbc.gridwidth = 2;
+        gbc.gridwidth = 1;
         controlPanel.add(simulateButton, gbc);
 
+        gbc.gridx = 1;
+        stopButton.setEnabled(false);
+        controlPanel.add(stopButton, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridwidth = 2;
+
         gbc.gridy = 2;
         controlPanel.add(statusLabel, gbc);
         
@@ -118,6 +127,14 @@ public class Example5_1View extends JPanel {
         simulateButton.setEnabled(enabled);
     }
 
+    /**
+     * Sets the enabled state of the stop button.
+     * @param enabled true to enable the button, false to disable it.
+     */
+    public void setStopButtonEnabled(boolean enabled) {
+        stopButton.setEnabled(enabled);
+    }
+
     /**
      * Sets the text of the status label.
      * @param text The status message to display.
@@ -142,6 +159,14 @@ public class Example5_1View extends JPanel {
         simulateButton.addActionListener(listener);
     }
     
+    /**
+     * Adds an ActionListener to the stop button.
+     * @param listener The ActionListener to be notified on button click.
+     */
+    public void addStopListener(ActionListener listener) {
+        stopButton.addActionListener(listener);
+    }
+    
     /**
      * Adds an ActionListener to the back button.
      * @param listener The ActionListener to be notified on button click.
@@ -158,19 +183,24 @@ public class Example5_1View extends JPanel {
      * @param episodes The number of episodes used to generate the results.
      */
     public void showResultCharts(double[][] usableAceGrid, double[][] nonUsableAceGrid, int episodes) {
-        Chart chartUsableAce = createChart(usableAceGrid);
-        chartUsableAce.open("Usable ace (" + episodes + " samples)");
+        String usableAceTitle = "Usable ace (" + episodes + " samples)";
+        Chart chartUsableAce = createChart(usableAceGrid, usableAceTitle);
+        chartUsableAce.open(usableAceTitle);
 
-        Chart chartNonUsableAce = createChart(nonUsableAceGrid);
-        chartNonUsableAce.open("Non usable ace (" + episodes + " samples)");
+        String nonUsableAceTitle = "Non usable ace (" + episodes + " samples)";
+        Chart chartNonUsableAce = createChart(nonUsableAceGrid, nonUsableAceTitle);
+        chartNonUsableAce.open(nonUsableAceTitle);
     }
 
     /**
-     * Creates a single Jzy3d chart from the given grid data.
+     * Creates a single Jzy3d chart from the given grid data, recording its construction as a
+     * {@link ChartConstructionEvent} for Java Flight Recorder.
      * @param gridData The 2D array of data to be plotted.
+     * @param title The title the chart will be opened with.
      * @return A configured {@link Chart} object.
      */
-    private Chart createChart(double[][] gridData) {
+    private Chart createChart(double[][] gridData, String title) {
+        ChartConstructionEvent event = ChartConstructionEvent.start(title);
         EmulGLChartFactory factory = new EmulGLChartFactory();
         Quality q = Quality.Advanced();
         q.setHiDPIEnabled(true);
@@ -181,6 +211,7 @@ public class Example5_1View extends JPanel {
         chart.getAxisLayout().setYAxisLabel("Dealer showing");
         chart.getAxisLayout().setZAxisLabel("State value function");
         chart.addMouse();
+        event.commit();
 
         return chart;
     }
@@ -33,6 +33,7 @@ public class Example5_3View extends JPanel {
     private final JTextField episodesField = new JTextField("100000");
     private final JTextField gammaField = new JTextField("1");
     private final JButton simulateButton = new JButton("Simulate");
+    private final JButton stopButton = new JButton("Stop");
     private final JLabel statusLabel = new JLabel("Status: Ready");
     private final JProgressBar progressBar = new JProgressBar(0, 100);
     private final JButton backButton = new JButton("Back to Main Menu");
@@ -82,9 +83,16 @@ public class Example5_3View extends JPanel {
         
         gbc.gridx = 0;
         gbc.gridy = 2;
-        gbc.gridwidth = 2;
+        gbc.gridwidth = 1;
         controlPanel.add(simulateButton, gbc);
 
+        gbc.gridx = 1;
+        stopButton.setEnabled(false);
+        controlPanel.add(stopButton, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridwidth = 2;
+
         gbc.gridy = 3;
         controlPanel.add(statusLabel, gbc);
         
@@ -109,6 +117,10 @@ public class Example5_3View extends JPanel {
         simulateButton.setEnabled(enabled);
     }
 
+    public void setStopButtonEnabled(boolean enabled) {
+        stopButton.setEnabled(enabled);
+    }
+
     public void setStatus(String text) {
         statusLabel.setText(text);
     }
@@ -121,6 +133,10 @@ public class Example5_3View extends JPanel {
         simulateButton.addActionListener(listener);
     }
     
+    public void addStopListener(ActionListener listener) {
+        stopButton.addActionListener(listener);
+    }
+    
     public void addBackListener(ActionListener listener) {
         backButton.addActionListener(listener);
     }
@@ -131,6 +147,7 @@ public class Example5_3View extends JPanel {
     }
     
     private void createChart(int[][] policy, String title) {
+    	ChartConstructionEvent event = ChartConstructionEvent.start(title);
     	XYZDataset dataset = createDataset(policy);
         NumberAxis xAxis = new NumberAxis("Dealer showing");
         xAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
@@ -180,6 +197,7 @@ public class Example5_3View extends JPanel {
         chartPanel.setMouseWheelEnabled(true); // Enable zooming
         frame.setContentPane(chartPanel);
         frame.pack();
+        event.commit();
         frame.setLocationRelativeTo(null); // Center on screen
         frame.setVisible(true);
     }
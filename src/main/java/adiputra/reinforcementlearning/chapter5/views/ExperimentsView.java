@@ -0,0 +1,138 @@
+package adiputra.reinforcementlearning.chapter5.views;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.Objects;
+import javax.swing.*;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * The view of the experiment scheduler: a text area taking one batch run per line, written as the
+ * options of the batch runner, and the list of submitted jobs with their state and result. The
+ * statistics of the selected job are shown below the list.
+ */
+public class ExperimentsView extends JPanel {
+    private static final String[] COLUMNS = { "#", "Job", "State", "Result" };
+
+    private final JTextArea jobsArea = new JTextArea(
+            "--model 5.1 --episodes 1000000 --threads 1 --seed 1\n"
+            + "--model 5.3 --episodes 1000000 --threads 1 --seed 1\n", 4, 30);
+    private final JButton submitButton = new JButton("Submit");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JButton clearButton = new JButton("Clear finished");
+    private final JLabel statusLabel = new JLabel("Status: Ready");
+    private final DefaultTableModel jobsModel = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JTable jobsTable = new JTable(jobsModel);
+    private final JTextArea detailsArea = new JTextArea(5, 30);
+    private final JButton backButton = new JButton("Back to Main Menu");
+
+    public ExperimentsView() {
+        setLayout(new BorderLayout(10, 10));
+        setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel inputPanel = new JPanel(new BorderLayout(5, 5));
+        inputPanel.add(new JLabel("<html><b>Experiments</b><br>One batch run per line, e.g. "
+                + "<tt>--model 5.3 --episodes 1000000 --seed 7</tt>. Jobs run concurrently on all "
+                + "cores; <tt>--threads 1</tt> lets the most of them run at once.</html>"), BorderLayout.NORTH);
+        jobsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        inputPanel.add(new JScrollPane(jobsArea), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 3, 5, 0));
+        buttonPanel.add(submitButton);
+        buttonPanel.add(cancelButton);
+        buttonPanel.add(clearButton);
+        JPanel actionPanel = new JPanel(new BorderLayout(5, 5));
+        actionPanel.add(buttonPanel, BorderLayout.NORTH);
+        actionPanel.add(statusLabel, BorderLayout.SOUTH);
+        inputPanel.add(actionPanel, BorderLayout.SOUTH);
+        add(inputPanel, BorderLayout.NORTH);
+
+        jobsTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        jobsTable.getColumnModel().getColumn(0).setPreferredWidth(25);
+        jobsTable.getColumnModel().getColumn(1).setPreferredWidth(170);
+        jobsTable.getColumnModel().getColumn(2).setPreferredWidth(75);
+        jobsTable.getColumnModel().getColumn(3).setPreferredWidth(130);
+        detailsArea.setEditable(false);
+        detailsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(jobsTable),
+                new JScrollPane(detailsArea));
+        splitPane.setResizeWeight(0.6);
+        add(splitPane, BorderLayout.CENTER);
+
+        add(backButton, BorderLayout.SOUTH);
+    }
+
+    /**
+     * @return The text of the job area, one job per line.
+     */
+    public String getJobs() {
+        return jobsArea.getText();
+    }
+
+    /**
+     * Replaces the rows of the job list. Jobs are appended to the list, so the selection is kept
+     * unless jobs were removed, which would shift the rows under it.
+     * @param rows One row per job, holding a value for each column.
+     */
+    public void setJobs(List<Object[]> rows) {
+        if (rows.size() < jobsModel.getRowCount()) {
+            jobsTable.clearSelection();
+        }
+        jobsModel.setRowCount(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            for (int j = 0; j < COLUMNS.length; j++) {
+                if (!Objects.equals(jobsModel.getValueAt(i, j), row[j])) {
+                    jobsModel.setValueAt(row[j], i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The indices of the selected rows of the job list.
+     */
+    public int[] getSelectedJobs() {
+        return jobsTable.getSelectedRows();
+    }
+
+    public void setDetails(String text) {
+        if (!detailsArea.getText().equals(text)) {
+            detailsArea.setText(text);
+            detailsArea.setCaretPosition(0);
+        }
+    }
+
+    public void setStatus(String text) {
+        statusLabel.setText(text);
+    }
+
+    public void addSubmitListener(ActionListener listener) {
+        submitButton.addActionListener(listener);
+    }
+
+    public void addCancelListener(ActionListener listener) {
+        cancelButton.addActionListener(listener);
+    }
+
+    public void addClearListener(ActionListener listener) {
+        clearButton.addActionListener(listener);
+    }
+
+    public void addSelectionListener(ListSelectionListener listener) {
+        jobsTable.getSelectionModel().addListSelectionListener(listener);
+    }
+
+    public void addBackListener(ActionListener listener) {
+        backButton.addActionListener(listener);
+    }
+}
@@ -0,0 +1,186 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary checkpoint of a long run, written through a memory-mapped buffer.
+ *
+ * <p>The file holds two slots of the same size, each with a {@link CheckpointHeader}, the saved
+ * {@link Checkpointable} parts, a sequence number and a CRC-32 of its contents. Every checkpoint
+ * overwrites the older slot, so a crash while one is being written leaves the previous one intact,
+ * and reading picks the newest slot whose checksum matches. The file is mapped once per run, so
+ * writing a checkpoint copies the tables into the page cache and forces the slot's few pages to
+ * disk; for the tables of chapter 5 that pauses a run for well under a millisecond.
+ *
+ * <p>All numbers are big-endian, so a checkpoint can be resumed on any machine.
+ */
+public final class CheckpointFile implements Closeable {
+    private static final int MAGIC = 0x524C4350; // "RLCP"
+    private static final int VERSION = 1;
+    // The fixed part of a slot before the parts: the numbers and the two strings of the header.
+    private static final int HEADER_BYTES = 512;
+    private static final int CRC_BYTES = Long.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotBytes;
+    private long sequence;
+
+    private CheckpointFile(FileChannel channel, MappedByteBuffer buffer, int slotBytes, long sequence) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotBytes = slotBytes;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Opens a checkpoint file for writing, creating it if needed. A valid checkpoint already in the
+     * file stays readable until the next write has completed; a file of another layout is cleared.
+     * @param path The file.
+     * @param parts The state every checkpoint saves.
+     * @return The open file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static CheckpointFile open(Path path, Checkpointable... parts) throws IOException {
+        int slotBytes = HEADER_BYTES + payloadBytes(parts) + CRC_BYTES;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() != 2L * slotBytes) {
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotBytes);
+            long sequence = 0;
+            for (int slot = 0; slot < 2; slot++) {
+                if (isValid(buffer, slot * slotBytes, slotBytes)) {
+                    sequence = Math.max(sequence, buffer.getLong(slot * slotBytes + 8));
+                }
+            }
+            return new CheckpointFile(channel, buffer, slotBytes, sequence);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the newest valid checkpoint of a file into the given parts. The configuration is checked
+     * before the parts, so a checkpoint of another model or other settings is reported as such and
+     * leaves the parts untouched.
+     * @param path The file.
+     * @param configuration The configuration the checkpoint must have been saved with.
+     * @param parts The state to restore, in the order it was saved.
+     * @return The header of the checkpoint, or null if the file does not exist or holds no valid checkpoint.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the checkpoint was saved with another configuration or from
+     *         parts of other sizes.
+     */
+    public static CheckpointHeader read(Path path, String configuration, Checkpointable... parts) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2L * (HEADER_BYTES + CRC_BYTES) || size % 2 != 0 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            int slotBytes = (int) (size / 2);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int newest = -1;
+            for (int slot = 0; slot < 2; slot++) {
+                int offset = slot * slotBytes;
+                if (isValid(buffer, offset, slotBytes)
+                        && (newest < 0 || buffer.getLong(offset + 8) > buffer.getLong(newest + 8))) {
+                    newest = offset;
+                }
+            }
+            if (newest < 0) {
+                return null;
+            }
+
+            ByteBuffer slot = buffer.slice(newest, slotBytes);
+            slot.position(2 * Integer.BYTES + Long.BYTES);
+            long seed = slot.getLong();
+            long completedEpisodes = slot.getLong();
+            int payloadBytes = slot.getInt();
+            String savedConfiguration = HeaderStrings.get(slot);
+            String algorithm = HeaderStrings.get(slot);
+            if (!savedConfiguration.equals(configuration)) {
+                throw new IllegalArgumentException("Checkpoint " + path + " was saved by a run with other settings: "
+                        + savedConfiguration + ", expected " + configuration);
+            }
+            if (payloadBytes != payloadBytes(parts)) {
+                throw new IllegalArgumentException("Checkpoint " + path + " holds " + payloadBytes
+                        + " bytes of tables, expected " + payloadBytes(parts));
+            }
+            slot.position(HEADER_BYTES);
+            for (Checkpointable part : parts) {
+                part.restore(slot);
+            }
+            return new CheckpointHeader(savedConfiguration, algorithm, seed, completedEpisodes);
+        }
+    }
+
+    /**
+     * Saves a checkpoint into the older slot and forces it to disk.
+     * @param header The description of the run.
+     * @param parts The state to save, the same parts the file was opened with.
+     * @throws java.io.UncheckedIOException if the checkpoint cannot be forced to disk.
+     */
+    public void write(CheckpointHeader header, Checkpointable... parts) {
+        int payloadBytes = payloadBytes(parts);
+        if (HEADER_BYTES + payloadBytes + CRC_BYTES != slotBytes) {
+            throw new IllegalArgumentException("The parts do not match the checkpoint file");
+        }
+        long next = sequence + 1;
+        int offset = (int) (next % 2) * slotBytes;
+        ByteBuffer slot = buffer.slice(offset, slotBytes);
+        slot.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(next)
+                .putLong(header.seed())
+                .putLong(header.completedEpisodes())
+                .putInt(payloadBytes);
+        HeaderStrings.put(slot, header.configuration());
+        HeaderStrings.put(slot, header.algorithm());
+        slot.position(HEADER_BYTES);
+        for (Checkpointable part : parts) {
+            part.save(slot);
+        }
+        slot.putLong(slotBytes - CRC_BYTES, checksum(buffer, offset, slotBytes));
+        buffer.force(offset, slotBytes);
+        sequence = next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int payloadBytes(Checkpointable... parts) {
+        int bytes = 0;
+        for (Checkpointable part : parts) {
+            bytes += part.checkpointBytes();
+        }
+        return bytes;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int offset, int slotBytes) {
+        return buffer.getInt(offset) == MAGIC && buffer.getInt(offset + 4) == VERSION
+                && buffer.getLong(offset + slotBytes - CRC_BYTES) == checksum(buffer, offset, slotBytes);
+    }
+
+    private static long checksum(ByteBuffer buffer, int offset, int slotBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, slotBytes - CRC_BYTES));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,14 @@
+package adiputra.reinforcementlearning.engine;
+
+/**
+ * What a checkpoint records about a run besides its tables: enough to continue it with the same
+ * random streams. Since block {@code k} of a run is always played with stream {@code k} of its
+ * {@link adiputra.utils.RandomSource}, the algorithm, the seed and the number of completed episodes
+ * are the whole random state.
+ * @param configuration A description of the model's settings; a run only resumes a checkpoint with the same one.
+ * @param algorithm The algorithm of the random source.
+ * @param seed The seed of the random source.
+ * @param completedEpisodes The number of episodes the saved tables learned from, a multiple of
+ *        {@value EpisodeRunner#RANDOM_STREAM_EPISODES}.
+ */
+public record CheckpointHeader(String configuration, String algorithm, long seed, long completedEpisodes) {}
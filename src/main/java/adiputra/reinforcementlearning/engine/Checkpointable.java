@@ -0,0 +1,51 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * State of a run that is saved to and restored from a {@link CheckpointFile}, e.g. a value table
+ * or a policy. The size must not change during a run, so that every checkpoint of the run has the
+ * same layout.
+ */
+public interface Checkpointable {
+    /**
+     * @return The number of bytes written by {@link #save(ByteBuffer)}.
+     */
+    int checkpointBytes();
+
+    /**
+     * Writes the state at the buffer's position and advances the position past it.
+     * @param buffer The buffer to write to.
+     */
+    void save(ByteBuffer buffer);
+
+    /**
+     * Reads the state written by {@link #save(ByteBuffer)} at the buffer's position and advances
+     * the position past it.
+     * @param buffer The buffer to read from.
+     */
+    void restore(ByteBuffer buffer);
+
+    /**
+     * @param array An array whose contents are saved and restored in place, e.g. a policy.
+     * @return The array as checkpoint state.
+     */
+    static Checkpointable of(byte[] array) {
+        return new Checkpointable() {
+            @Override
+            public int checkpointBytes() {
+                return array.length;
+            }
+
+            @Override
+            public void save(ByteBuffer buffer) {
+                buffer.put(array);
+            }
+
+            @Override
+            public void restore(ByteBuffer buffer) {
+                buffer.get(array);
+            }
+        };
+    }
+}
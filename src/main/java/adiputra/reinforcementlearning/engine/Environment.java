@@ -0,0 +1,50 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * An episodic task with numbered states and actions, as seen by the agent.
+ *
+ * <p>States are numbered from 0 to {@link #getStates()} - 1 and actions from 0 to
+ * {@link #getActions()} - 1, so that policies and estimators can keep flat primitive tables.
+ * Rewards are integers, which keeps the accumulated returns exact: tables filled by parallel
+ * workers can then be merged in any order with the same result.
+ *
+ * <p>An environment holds the state of the episode in progress, so every worker thread needs its
+ * own instance. All randomness is drawn from the generator passed in, which lets a run be
+ * reproduced from its random streams.
+ */
+public interface Environment {
+    /** Returned by {@link #step(int, RandomGenerator)} when the episode has ended. */
+    int TERMINAL = -1;
+
+    /**
+     * Starts a new episode.
+     * @param random The generator to draw from.
+     * @return The first state of the episode.
+     */
+    int reset(RandomGenerator random);
+
+    /**
+     * Takes an action in the current state.
+     * @param action The action.
+     * @param random The generator to draw from.
+     * @return The next state, or {@link #TERMINAL} if the episode has ended.
+     */
+    int step(int action, RandomGenerator random);
+
+    /**
+     * @return The reward of the last step.
+     */
+    int getReward();
+
+    /**
+     * @return The number of states.
+     */
+    int getStates();
+
+    /**
+     * @return The number of actions.
+     */
+    int getActions();
+}
@@ -0,0 +1,100 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer holding the trajectory of one episode: the state, the action and the reward
+ * of every step, in primitive arrays. A worker replays any number of episodes into the same buffer;
+ * it only grows, and only until it fits the longest episode, so playing episodes does not allocate.
+ */
+public final class Episode {
+    private int[] states;
+    private int[] actions;
+    private int[] rewards;
+    private int length;
+
+    /**
+     * Creates an empty episode.
+     */
+    public Episode() {
+        this(32);
+    }
+
+    /**
+     * Creates an empty episode with room for the given number of steps.
+     * @param capacity The initial number of steps.
+     */
+    public Episode(int capacity) {
+        this.states = new int[capacity];
+        this.actions = new int[capacity];
+        this.rewards = new int[capacity];
+    }
+
+    /**
+     * Removes all steps.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Appends a step.
+     * @param state The state in which the action was taken.
+     * @param action The action.
+     * @param reward The reward that followed the action.
+     */
+    public void add(int state, int action, int reward) {
+        if (length == states.length) {
+            int capacity = length * 2;
+            states = Arrays.copyOf(states, capacity);
+            actions = Arrays.copyOf(actions, capacity);
+            rewards = Arrays.copyOf(rewards, capacity);
+        }
+        states[length] = state;
+        actions[length] = action;
+        rewards[length] = reward;
+        length++;
+    }
+
+    /**
+     * @return The number of steps.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param step The number of the step, from 0.
+     * @return The state of the step.
+     */
+    public int getState(int step) {
+        return states[step];
+    }
+
+    /**
+     * @param step The number of the step, from 0.
+     * @return The action taken in the step.
+     */
+    public int getAction(int step) {
+        return actions[step];
+    }
+
+    /**
+     * @param step The number of the step, from 0.
+     * @return The reward that followed the step's action.
+     */
+    public int getReward(int step) {
+        return rewards[step];
+    }
+
+    /**
+     * @return The undiscounted return of the whole episode, the sum of its rewards.
+     */
+    public int getReturn() {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += rewards[i];
+        }
+        return sum;
+    }
+}
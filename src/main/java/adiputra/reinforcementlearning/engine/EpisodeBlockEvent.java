@@ -0,0 +1,25 @@
+package adiputra.reinforcementlearning.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event spanning the generation of one block of episodes by an
+ * {@link EpisodeRunner}, including the workers' learning from them.
+ */
+@Name("adiputra.reinforcementlearning.EpisodeBlock")
+@Label("Episode Block")
+@Description("The episodes of one random stream, played and learned from by one worker")
+@Category({ "Reinforcement Learning", "Simulation" })
+@StackTrace(false)
+final class EpisodeBlockEvent extends Event {
+    @Label("Block")
+    int block;
+
+    @Label("Episodes")
+    int episodes;
+}
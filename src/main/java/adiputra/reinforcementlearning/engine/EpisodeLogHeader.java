@@ -0,0 +1,11 @@
+package adiputra.reinforcementlearning.engine;
+
+/**
+ * What an episode log records about the run that wrote it.
+ * @param configuration A description of the settings the episodes were played with.
+ * @param algorithm The algorithm of the random source of the run.
+ * @param seed The seed of the random source of the run.
+ * @param states The number of states of the environment.
+ * @param actions The number of actions of the environment.
+ */
+public record EpisodeLogHeader(String configuration, String algorithm, long seed, int states, int actions) {}
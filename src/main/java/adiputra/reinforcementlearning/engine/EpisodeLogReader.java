@@ -0,0 +1,137 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays the episodes of a log written by an {@link EpisodeLogWriter}, in the order they were
+ * written, through a read-only memory mapping of the file. The episodes are decoded straight from
+ * the page cache into a reusable {@link Episode}, so a replay runs at the speed of the disk, or of
+ * memory for a log that is cached, rather than at the speed of the simulation.
+ *
+ * <p>Logs of any size are read through mappings of up to {@value #WINDOW_BYTES} bytes, moved along
+ * the file as the replay advances. A log that was not closed, e.g. after a crash, is replayed up to
+ * its last complete episode.
+ *
+ * <p>A reader must only be used by one thread at a time.
+ */
+public final class EpisodeLogReader implements Closeable {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final EpisodeLogHeader header;
+    private final long episodes;
+    private final int stepBytes;
+    private final int maxEpisodeBytes;
+    private final long size;
+    private MappedByteBuffer window;
+    // The file position of the start of the window.
+    private long windowStart;
+
+    private EpisodeLogReader(FileChannel channel, EpisodeLogHeader header, long episodes) throws IOException {
+        this.channel = channel;
+        this.header = header;
+        this.episodes = episodes;
+        this.stepBytes = EpisodeLogWriter.stepBytes(header.states(), header.actions());
+        this.maxEpisodeBytes = 2 + EpisodeLogWriter.MAX_STEPS * stepBytes;
+        this.size = channel.size();
+        map(EpisodeLogWriter.HEADER_BYTES);
+    }
+
+    /**
+     * Opens a log for replay.
+     * @param path The file.
+     * @return The reader, positioned before the first episode.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not an episode log.
+     */
+    public static EpisodeLogReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() < EpisodeLogWriter.HEADER_BYTES) {
+                throw new IllegalArgumentException(path + " is not an episode log");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, EpisodeLogWriter.HEADER_BYTES);
+            if (buffer.getInt() != EpisodeLogWriter.MAGIC || buffer.getInt() != EpisodeLogWriter.VERSION) {
+                throw new IllegalArgumentException(path + " is not an episode log");
+            }
+            int states = buffer.getInt();
+            int actions = buffer.getInt();
+            long seed = buffer.getLong();
+            long episodes = buffer.getLong();
+            String configuration = HeaderStrings.get(buffer);
+            String algorithm = HeaderStrings.get(buffer);
+            return new EpisodeLogReader(channel, new EpisodeLogHeader(configuration, algorithm, seed, states, actions),
+                    episodes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The description of the run that wrote the log.
+     */
+    public EpisodeLogHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * @return The number of episodes in the log, or 0 if the log was not closed by its writer.
+     */
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    /**
+     * Reads the next episode.
+     * @param episode The buffer receiving the episode.
+     * @return false if the log has no more episodes.
+     * @throws UncheckedIOException if the file cannot be mapped.
+     */
+    public boolean next(Episode episode) {
+        if (window.remaining() < maxEpisodeBytes && windowStart + window.limit() < size) {
+            map(windowStart + window.position());
+        }
+        if (window.remaining() < 2) {
+            return false;
+        }
+        int start = window.position();
+        int length = window.get() & 0xFF;
+        int reward = window.get();
+        if (window.remaining() < length * stepBytes) {
+            window.position(start);
+            return false;
+        }
+        int actions = header.actions();
+        episode.clear();
+        for (int i = 0; i < length; i++) {
+            int step = switch (stepBytes) {
+                case 1 -> window.get() & 0xFF;
+                case 2 -> window.getShort() & 0xFFFF;
+                default -> window.getInt();
+            };
+            episode.add(step / actions, step % actions, i == length - 1 ? reward : 0);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(long position) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        windowStart = position;
+    }
+}
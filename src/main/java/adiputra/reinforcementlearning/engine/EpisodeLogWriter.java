@@ -0,0 +1,227 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the episodes of a run to a compact binary log, which an {@link EpisodeLogReader} replays
+ * into any learner, so that several estimators can be compared on the same episodes without
+ * playing them again.
+ *
+ * <p>The log starts with a header of {@value #HEADER_BYTES} bytes: a magic number, the version, the
+ * numbers of states and actions, the seed, the number of episodes and the configuration and random
+ * algorithm of the run. Every episode follows as its number of steps (an unsigned byte), its return
+ * (a signed byte) and its steps, each written as {@code state * actions + action} in one, two or
+ * four bytes, whichever is the smallest to hold all of them. The rewards of all steps but the last
+ * must be 0, as in episodic games like Blackjack, so the return is the last step's reward; a
+ * Blackjack episode takes a handful of bytes.
+ *
+ * <p>Episodes are collected in a direct buffer of {@value #BUFFER_BYTES} bytes, which is written to
+ * the file with one call whenever it is full. All numbers are big-endian.
+ *
+ * <p>A writer must only be used by one thread at a time. Parallel workers record into their own
+ * {@link Block}s instead, which the writer appends in the order of the run with {@link #write(Block)}.
+ */
+public final class EpisodeLogWriter implements Closeable {
+    static final int MAGIC = 0x524C454C; // "RLEL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 512;
+    static final int EPISODES_OFFSET = 4 * Integer.BYTES + Long.BYTES;
+    static final int MAX_STEPS = 255;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int BLOCK_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final int actions;
+    private final int stepBytes;
+    private long episodes;
+
+    private EpisodeLogWriter(FileChannel channel, int actions, int stepBytes) {
+        this.channel = channel;
+        this.actions = actions;
+        this.stepBytes = stepBytes;
+    }
+
+    /**
+     * Creates a log, replacing any existing file.
+     * @param path The file.
+     * @param header The description of the run.
+     * @return The log, open for writing episodes.
+     * @throws IOException if the file cannot be created.
+     */
+    public static EpisodeLogWriter create(Path path, EpisodeLogHeader header) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        EpisodeLogWriter writer = new EpisodeLogWriter(channel, header.actions(), stepBytes(header.states(), header.actions()));
+        ByteBuffer buffer = writer.buffer;
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(header.states())
+                .putInt(header.actions())
+                .putLong(header.seed())
+                .putLong(0);
+        HeaderStrings.put(buffer, header.configuration());
+        HeaderStrings.put(buffer, header.algorithm());
+        buffer.position(HEADER_BYTES);
+        return writer;
+    }
+
+    /**
+     * Appends an episode to the log.
+     * @param episode The episode.
+     * @throws IllegalArgumentException if the episode has more than {@value #MAX_STEPS} steps, a
+     *         reward before its last step or a return outside the range of a byte.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public void write(Episode episode) {
+        if (buffer.remaining() < encodedBytes(episode)) {
+            flush();
+        }
+        encode(buffer, episode);
+        episodes++;
+    }
+
+    /**
+     * Appends the episodes of a block to the log.
+     * @param block A block of this log.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public void write(Block block) {
+        ByteBuffer bytes = block.buffer.duplicate().flip();
+        if (bytes.remaining() <= buffer.remaining()) {
+            buffer.put(bytes);
+        } else {
+            flush();
+            writeFully(bytes);
+        }
+        episodes += block.episodes;
+    }
+
+    /**
+     * @return An empty block for the episodes of one worker.
+     */
+    public Block newBlock() {
+        return new Block();
+    }
+
+    /**
+     * @return The number of episodes written so far.
+     */
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    /**
+     * Writes the remaining episodes and their number, and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, episodes), EPISODES_OFFSET);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The number of bytes of a step of an environment with the given numbers of states and actions.
+     */
+    static int stepBytes(int states, int actions) {
+        long steps = (long) states * actions;
+        return steps <= 1 << 8 ? 1 : steps <= 1 << 16 ? 2 : 4;
+    }
+
+    /**
+     * @return The number of bytes of an episode in the log.
+     * @throws IllegalArgumentException if the episode has more than {@value #MAX_STEPS} steps or a
+     *         return outside the range of a byte.
+     */
+    private int encodedBytes(Episode episode) {
+        int length = episode.getLength();
+        if (length > MAX_STEPS) {
+            throw new IllegalArgumentException("Episode of " + length + " steps is too long for the log");
+        }
+        int reward = length == 0 ? 0 : episode.getReward(length - 1);
+        if (reward != (byte) reward) {
+            throw new IllegalArgumentException("Return " + reward + " is out of range for the log");
+        }
+        return 2 + length * stepBytes;
+    }
+
+    private void encode(ByteBuffer target, Episode episode) {
+        int length = episode.getLength();
+        target.put((byte) length).put((byte) (length == 0 ? 0 : episode.getReward(length - 1)));
+        for (int i = 0; i < length; i++) {
+            if (i < length - 1 && episode.getReward(i) != 0) {
+                throw new IllegalArgumentException("Episode with a reward before its last step");
+            }
+            int step = episode.getState(i) * actions + episode.getAction(i);
+            switch (stepBytes) {
+                case 1 -> target.put((byte) step);
+                case 2 -> target.putShort((short) step);
+                default -> target.putInt(step);
+            }
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The episodes one worker plays for a log, e.g. those of one block of a parallel run, encoded
+     * like the episodes of the log in a heap buffer that grows as needed. A block must only be used
+     * by one thread at a time.
+     */
+    public final class Block {
+        private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES);
+        private int episodes;
+
+        private Block() {
+        }
+
+        /**
+         * Appends an episode to the block.
+         * @param episode The episode.
+         * @throws IllegalArgumentException if the episode has more than {@value #MAX_STEPS} steps, a
+         *         reward before its last step or a return outside the range of a byte.
+         */
+        public void write(Episode episode) {
+            int bytes = encodedBytes(episode);
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+                buffer = larger.put(buffer.flip());
+            }
+            encode(buffer, episode);
+            episodes++;
+        }
+
+        /**
+         * @return The number of episodes in the block.
+         */
+        public int getEpisodes() {
+            return episodes;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+import adiputra.utils.ProgressThrottle;
+import adiputra.utils.RandomSource;
+
+/**
+ * Plays the episodes of a Monte Carlo run: it splits the run into blocks of
+ * {@value #RANDOM_STREAM_EPISODES} episodes with their own random streams, spreads the blocks over
+ * worker threads, reports progress through a {@link ProgressThrottle} and stops when cancellation
+ * is requested. The learning itself is left to {@link EpisodeWorker}s.
+ *
+ * <p>Block {@code k} is always played with stream {@code k + streamOffset} of the run's
+ * {@link RandomSource}, whichever thread plays it, so a run is reproducible from its seed. Workers
+ * are called in chunks of {@value #PROGRESS_BATCH} episodes, and cancellation is checked and
+ * progress reported between chunks, which keeps both off the per-episode path.
+ *
+ * <p>Two ways of spreading the blocks are supported:
+ * <ul>
+ * <li>{@link #runSharded} gives every block its own worker, e.g. with a private table, and merges
+ * the workers in block order once all of them have finished. With exact accumulators the result is
+ * the same for any number of threads.</li>
+ * <li>{@link #runShared} gives every thread one worker that keeps claiming the next unplayed block,
+ * for workers that update shared state as they go.</li>
+ * </ul>
+ *
+ * <p>With fewer than two threads, the blocks are played on the calling thread. {@link #replay}
+ * feeds the episodes of a log to a learner instead of playing them, with the same progress reports
+ * and cancellation.
+ *
+ * <p>A runner can also record its episodes, the time its workers spend on them, the time of the
+ * progress listener and the memory allocated by its threads in {@link SimulationMetrics}. Every
+ * block it plays and every worker it merges is recorded for Java Flight Recorder, as an
+ * {@link EpisodeBlockEvent} and an {@link EvaluationEvent}.
+ */
+public final class EpisodeRunner {
+    /** Number of consecutive episodes played with one random stream; also the size of a parallel shard. */
+    public static final int RANDOM_STREAM_EPISODES = 1 << 16;
+    /** Number of episodes played between two progress reports and checks for cancellation. */
+    public static final int PROGRESS_BATCH = 256;
+
+    private final RandomSource source;
+    private final int streamOffset;
+    private final ProgressThrottle progress;
+    private final Runnable progressListener;
+    private final BooleanSupplier cancelRequested;
+    private final SimulationMetrics metrics;
+
+    /**
+     * Creates a runner for one run.
+     * @param source The source of the random streams.
+     * @param streamOffset The number of the stream of the first block; streams below it are left to the caller.
+     * @param progress The throttle receiving the completed episodes.
+     * @param progressListener Called whenever the throttle says an update is due.
+     * @param cancelRequested Tells whether the run should stop.
+     */
+    public EpisodeRunner(RandomSource source, int streamOffset, ProgressThrottle progress, Runnable progressListener,
+            BooleanSupplier cancelRequested) {
+        this(source, streamOffset, progress, progressListener, cancelRequested, null);
+    }
+
+    /**
+     * Creates a runner for one run that records its metrics.
+     * @param source The source of the random streams.
+     * @param streamOffset The number of the stream of the first block; streams below it are left to the caller.
+     * @param progress The throttle receiving the completed episodes.
+     * @param progressListener Called whenever the throttle says an update is due.
+     * @param cancelRequested Tells whether the run should stop.
+     * @param metrics The metrics of the run, or null.
+     */
+    public EpisodeRunner(RandomSource source, int streamOffset, ProgressThrottle progress, Runnable progressListener,
+            BooleanSupplier cancelRequested, SimulationMetrics metrics) {
+        this.source = source;
+        this.streamOffset = streamOffset;
+        this.progress = progress;
+        this.progressListener = progressListener;
+        this.cancelRequested = cancelRequested;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Plays one episode from start to end into the given buffer.
+     * @param environment The environment.
+     * @param policy The policy choosing the actions.
+     * @param episode The buffer receiving the trajectory.
+     * @param random The generator to draw from.
+     */
+    public static void playEpisode(Environment environment, Policy policy, Episode episode, RandomGenerator random) {
+        episode.clear();
+        int state = environment.reset(random);
+        for (int step = 0; state != Environment.TERMINAL; step++) {
+            int action = policy.action(state, step, random);
+            int next = environment.step(action, random);
+            episode.add(state, action, environment.getReward());
+            state = next;
+        }
+    }
+
+    /**
+     * Plays a range of episodes with one worker per block, and merges the workers in block order.
+     * @param firstEpisode The number of the first episode, a multiple of {@value #RANDOM_STREAM_EPISODES}.
+     * @param episodes The number of episodes to play.
+     * @param threads The number of worker threads.
+     * @param workers Creates the worker of the block with the given number.
+     * @param merger Receives every worker after its block has been played.
+     * @return The number of episodes played, fewer than requested if the run was cancelled.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers.
+     */
+    public <W extends EpisodeWorker> int runSharded(long firstEpisode, int episodes, int threads,
+            IntFunction<? extends W> workers, Consumer<? super W> merger) throws InterruptedException {
+        int firstBlock = (int) (firstEpisode / RANDOM_STREAM_EPISODES);
+        int blocks = (int) (((long) episodes + RANDOM_STREAM_EPISODES - 1) / RANDOM_STREAM_EPISODES);
+        int playedEpisodes = 0;
+        if (threads < 2) {
+            for (int i = 0; i < blocks && !cancelRequested.getAsBoolean(); i++) {
+                W worker = workers.apply(firstBlock + i);
+                int played = playBlock(worker, firstBlock + i, blockEpisodes(i, episodes));
+                merge(merger, worker, played);
+                playedEpisodes += played;
+            }
+            return playedEpisodes;
+        }
+
+        List<W> shards = new ArrayList<>();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            W worker = workers.apply(firstBlock + i);
+            int block = firstBlock + i;
+            int blockEpisodes = blockEpisodes(i, episodes);
+            shards.add(worker);
+            tasks.add(() -> playBlock(worker, block, blockEpisodes));
+        }
+        List<Future<Integer>> results = invokeAll(threads, tasks);
+        for (int i = 0; i < blocks; i++) {
+            int played = getResult(results.get(i));
+            merge(merger, shards.get(i), played);
+            playedEpisodes += played;
+        }
+        return playedEpisodes;
+    }
+
+    /**
+     * Plays a range of episodes with one worker per thread; every worker keeps claiming the next
+     * unplayed block until the range is exhausted or the run is cancelled.
+     * @param firstEpisode The number of the first episode, a multiple of {@value #RANDOM_STREAM_EPISODES}.
+     * @param episodes The number of episodes to play.
+     * @param threads The number of worker threads.
+     * @param workers Creates the worker of a thread.
+     * @return The number of episodes played, fewer than requested if the run was cancelled.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers.
+     */
+    public int runShared(long firstEpisode, int episodes, int threads, Supplier<? extends EpisodeWorker> workers)
+            throws InterruptedException {
+        AtomicInteger nextBlock = new AtomicInteger((int) (firstEpisode / RANDOM_STREAM_EPISODES));
+        long endEpisode = firstEpisode + episodes;
+        if (threads < 2) {
+            return claimBlocks(workers.get(), nextBlock, endEpisode);
+        }
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            EpisodeWorker worker = workers.get();
+            tasks.add(() -> claimBlocks(worker, nextBlock, endEpisode));
+        }
+        int playedEpisodes = 0;
+        for (Future<Integer> result : invokeAll(threads, tasks)) {
+            playedEpisodes += getResult(result);
+        }
+        return playedEpisodes;
+    }
+
+    /**
+     * Feeds the episodes of a log to a learner on the calling thread, in chunks of
+     * {@value #PROGRESS_BATCH} episodes like played ones. The runner's random source is not used.
+     * @param log The log, positioned before the first episode to replay.
+     * @param learner Receives every episode; the episode is reused for the next one.
+     * @return The number of episodes replayed, fewer than in the log if the run was cancelled.
+     */
+    public long replay(EpisodeLogReader log, Consumer<? super Episode> learner) {
+        Episode episode = new Episode();
+        long allocatedBefore = metrics != null ? SimulationMetrics.currentThreadAllocatedBytes() : 0;
+        long replayedEpisodes = 0;
+        boolean more = true;
+        while (more && !cancelRequested.getAsBoolean()) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            int chunk = 0;
+            while (chunk < PROGRESS_BATCH && (more = log.next(episode))) {
+                if (chunk == 0 && metrics != null) {
+                    EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.EPISODE, 1);
+                    long evaluationStart = System.nanoTime();
+                    learner.accept(episode);
+                    metrics.evaluationSampled(System.nanoTime() - evaluationStart);
+                    event.commit();
+                } else {
+                    learner.accept(episode);
+                }
+                chunk++;
+            }
+            replayedEpisodes += chunk;
+            if (metrics != null) {
+                metrics.episodesCompleted(chunk, System.nanoTime() - start);
+            }
+            reportProgress(chunk);
+        }
+        if (metrics != null) {
+            metrics.allocated(SimulationMetrics.currentThreadAllocatedBytes() - allocatedBefore);
+        }
+        return replayedEpisodes;
+    }
+
+    private int claimBlocks(EpisodeWorker worker, AtomicInteger nextBlock, long endEpisode) {
+        int playedEpisodes = 0;
+        while (!cancelRequested.getAsBoolean()) {
+            int block = nextBlock.getAndIncrement();
+            long first = (long) block * RANDOM_STREAM_EPISODES;
+            if (first >= endEpisode) {
+                break;
+            }
+            playedEpisodes += playBlock(worker, block, (int) Math.min(RANDOM_STREAM_EPISODES, endEpisode - first));
+        }
+        return playedEpisodes;
+    }
+
+    /**
+     * Plays the episodes of one block in chunks of {@value #PROGRESS_BATCH}.
+     * @return The number of episodes played, fewer than requested if the run was cancelled.
+     */
+    private int playBlock(EpisodeWorker worker, int block, int blockEpisodes) {
+        EpisodeBlockEvent event = new EpisodeBlockEvent();
+        event.begin();
+        long allocatedBefore = metrics != null ? SimulationMetrics.currentThreadAllocatedBytes() : 0;
+        RandomGenerator random = source.stream(block + streamOffset);
+        long first = (long) block * RANDOM_STREAM_EPISODES;
+        int playedEpisodes = 0;
+        while (playedEpisodes < blockEpisodes && !cancelRequested.getAsBoolean()) {
+            int chunk = Math.min(PROGRESS_BATCH, blockEpisodes - playedEpisodes);
+            if (metrics != null) {
+                long start = System.nanoTime();
+                worker.playEpisodes(random, first + playedEpisodes, chunk);
+                metrics.episodesCompleted(chunk, System.nanoTime() - start);
+            } else {
+                worker.playEpisodes(random, first + playedEpisodes, chunk);
+            }
+            playedEpisodes += chunk;
+            reportProgress(chunk);
+        }
+        if (metrics != null) {
+            metrics.allocated(SimulationMetrics.currentThreadAllocatedBytes() - allocatedBefore);
+        }
+        event.block = block;
+        event.episodes = playedEpisodes;
+        event.commit();
+        return playedEpisodes;
+    }
+
+    private static <W extends EpisodeWorker> void merge(Consumer<? super W> merger, W worker, int episodes) {
+        EvaluationEvent event = EvaluationEvent.start(EvaluationEvent.MERGE, episodes);
+        merger.accept(worker);
+        event.commit();
+    }
+
+    private void reportProgress(int episodes) {
+        if (progress.episodesCompleted(episodes)) {
+            if (metrics != null) {
+                long start = System.nanoTime();
+                progressListener.run();
+                metrics.published(System.nanoTime() - start);
+            } else {
+                progressListener.run();
+            }
+        }
+    }
+
+    /**
+     * Rounds a number of episodes up to whole blocks, e.g. the distance between two checkpoints,
+     * so that every checkpoint falls on a block boundary.
+     * @param episodes The number of episodes.
+     * @return The number of episodes of the blocks that cover them, at least one block.
+     */
+    public static int alignToBlocks(long episodes) {
+        long blocks = Math.max(1, (episodes + RANDOM_STREAM_EPISODES - 1) / RANDOM_STREAM_EPISODES);
+        return (int) (Math.min(blocks, Integer.MAX_VALUE / RANDOM_STREAM_EPISODES) * RANDOM_STREAM_EPISODES);
+    }
+
+    private static int blockEpisodes(int block, int episodes) {
+        return (int) Math.min(RANDOM_STREAM_EPISODES, episodes - (long) block * RANDOM_STREAM_EPISODES);
+    }
+
+    private static List<Future<Integer>> invokeAll(int threads, List<Callable<Integer>> tasks) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int getResult(Future<Integer> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Episode worker failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Plays consecutive episodes of a run and learns from them. An {@link EpisodeRunner} calls a worker
+ * from one thread at a time with the random stream of the current block, in chunks of a few
+ * hundred episodes.
+ */
+@FunctionalInterface
+public interface EpisodeWorker {
+    /**
+     * Plays the given episodes.
+     * @param random The random stream of the block the episodes belong to.
+     * @param firstEpisode The number of the first episode in the run, from 0.
+     * @param episodes The number of episodes to play.
+     */
+    void playEpisodes(RandomGenerator random, long firstEpisode, int episodes);
+}
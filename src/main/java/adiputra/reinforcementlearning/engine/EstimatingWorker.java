@@ -0,0 +1,43 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The usual worker of a prediction run: plays every episode with a fixed policy and lets its own
+ * estimator learn from it. The environment and the estimator must not be shared with other workers;
+ * the estimators of a sharded run are merged after their blocks have been played.
+ *
+ * @param <E> The type of the estimator.
+ */
+public final class EstimatingWorker<E extends Estimator<E>> implements EpisodeWorker {
+    private final Environment environment;
+    private final Policy policy;
+    private final E estimator;
+    private final Episode episode = new Episode();
+
+    /**
+     * @param environment The environment, used only by this worker.
+     * @param policy The policy.
+     * @param estimator The estimator, used only by this worker.
+     */
+    public EstimatingWorker(Environment environment, Policy policy, E estimator) {
+        this.environment = environment;
+        this.policy = policy;
+        this.estimator = estimator;
+    }
+
+    @Override
+    public void playEpisodes(RandomGenerator random, long firstEpisode, int episodes) {
+        for (int i = 0; i < episodes; i++) {
+            EpisodeRunner.playEpisode(environment, policy, episode, random);
+            estimator.update(episode);
+        }
+    }
+
+    /**
+     * @return The estimator that learned from the played episodes.
+     */
+    public E getEstimator() {
+        return estimator;
+    }
+}
@@ -0,0 +1,23 @@
+package adiputra.reinforcementlearning.engine;
+
+/**
+ * Learns from played episodes, e.g. by recording their returns in a value table.
+ *
+ * <p>Estimators of a sharded run each learn from their own blocks of episodes and are merged
+ * afterwards; merging must give the same result as learning from all episodes in one estimator.
+ *
+ * @param <E> The type of estimator this one can merge.
+ */
+public interface Estimator<E extends Estimator<E>> {
+    /**
+     * Learns from an episode.
+     * @param episode The played episode.
+     */
+    void update(Episode episode);
+
+    /**
+     * Adds everything another estimator has learned.
+     * @param other The estimator to merge into this one.
+     */
+    void merge(E other);
+}
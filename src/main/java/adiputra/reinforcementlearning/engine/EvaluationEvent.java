@@ -0,0 +1,51 @@
+package adiputra.reinforcementlearning.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event spanning a step of policy evaluation or improvement: the learning from a
+ * sampled episode, the merge of a worker's estimates, the learning from a batch of episodes or a
+ * convergence check. Learning from every episode would be too fine-grained to record, so workers
+ * only record the episodes they already sample for the {@link SimulationMetrics}.
+ */
+@Name("adiputra.reinforcementlearning.Evaluation")
+@Label("Evaluation")
+@Description("Policy evaluation or improvement from sampled episodes, merges, batches or convergence checks")
+@Category({ "Reinforcement Learning", "Simulation" })
+@StackTrace(false)
+public final class EvaluationEvent extends Event {
+    /** Learning from one episode sampled by a worker. */
+    public static final String EPISODE = "episode";
+    /** Merging the estimates of a worker into the model's. */
+    public static final String MERGE = "merge";
+    /** Learning from a batch of episodes. */
+    public static final String BATCH = "batch";
+    /** Checking the estimates for convergence. */
+    public static final String CONVERGENCE = "convergence";
+
+    @Label("Kind")
+    String kind;
+
+    @Label("Episodes")
+    @Description("The number of episodes learned from, or 0 for a convergence check")
+    int episodes;
+
+    /**
+     * Creates and begins an event.
+     * @param kind What is evaluated, one of the constants of this class.
+     * @param episodes The number of episodes learned from.
+     * @return The event, to be committed when the step is done.
+     */
+    public static EvaluationEvent start(String kind, int episodes) {
+        EvaluationEvent event = new EvaluationEvent();
+        event.kind = kind;
+        event.episodes = episodes;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,29 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The strings in the headers of the binary files of a run: UTF-8, prefixed with their length as a
+ * short, and at most {@value #MAX_BYTES} bytes long.
+ */
+final class HeaderStrings {
+    static final int MAX_BYTES = 224;
+
+    private HeaderStrings() {
+    }
+
+    static void put(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_BYTES) {
+            throw new IllegalArgumentException("Header too long: " + value);
+        }
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    static String get(ByteBuffer buffer) {
+        byte[] bytes = new byte[Math.min(buffer.getShort() & 0xFFFF, MAX_BYTES)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
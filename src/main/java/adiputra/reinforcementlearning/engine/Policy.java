@@ -0,0 +1,18 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Chooses the agent's actions. A policy may be stochastic, drawing from the given generator, and
+ * may depend on the step of the episode, e.g. to explore on the first step only.
+ */
+@FunctionalInterface
+public interface Policy {
+    /**
+     * @param state The current state.
+     * @param step The number of the step in the episode, from 0.
+     * @param random The generator of the episode.
+     * @return The action to take.
+     */
+    int action(int state, int step, RandomGenerator random);
+}
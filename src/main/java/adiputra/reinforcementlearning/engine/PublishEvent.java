@@ -0,0 +1,32 @@
+package adiputra.reinforcementlearning.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event spanning the publication of a model's progress or result to its
+ * listeners, including the conversion of the result.
+ */
+@Name("adiputra.reinforcementlearning.Publish")
+@Label("Publish")
+@Description("The publication of a model's progress or result to its listeners")
+@Category({ "Reinforcement Learning", "Simulation" })
+public final class PublishEvent extends Event {
+    @Label("Property")
+    String property;
+
+    /**
+     * Creates and begins an event.
+     * @param property The property published.
+     * @return The event, to be committed once the listeners have returned.
+     */
+    public static PublishEvent start(String property) {
+        PublishEvent event = new PublishEvent();
+        event.property = property;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,29 @@
+package adiputra.reinforcementlearning.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event spanning a run of a model, from its start to the publication of its
+ * result, or to the end of a run that was interrupted or failed. It is begun and committed by the
+ * model's {@link SimulationMetrics}, so every run that records metrics is covered; like all events
+ * of the engine it costs next to nothing while Flight Recorder is off or the event is disabled.
+ */
+@Name("adiputra.reinforcementlearning.Simulation")
+@Label("Simulation")
+@Description("A run of a model, from its start to the publication of its result")
+@Category({ "Reinforcement Learning", "Simulation" })
+public final class SimulationEvent extends Event {
+    @Label("Model")
+    String model;
+
+    @Label("Requested Episodes")
+    @Description("The number of episodes the run was started with, without those restored from a checkpoint")
+    long requestedEpisodes;
+
+    @Label("Played Episodes")
+    long playedEpisodes;
+}
@@ -0,0 +1,357 @@
+package adiputra.reinforcementlearning.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of the runs of a model, exposed as an MXBean so that a running simulation can be
+ * watched with JConsole, VisualVM or any other JMX client. The counters are updated by the
+ * {@link EpisodeRunner} and the model while a run is in progress, and read by JMX clients from
+ * other threads.
+ *
+ * <p>Keeping the overhead negligible, the runner reads the clock once per chunk of
+ * {@value EpisodeRunner#PROGRESS_BATCH} episodes and the allocation counter of its thread once per
+ * block, and workers time the learning of only the first episode of every chunk. The split of the
+ * workers' time between simulation and evaluation is estimated from those samples. The counters
+ * are {@link LongAdder}s, so workers on several threads do not contend on them.
+ *
+ * <p>Metrics are registered with the platform MBean server by {@link #register()}, under
+ * {@code adiputra.reinforcementlearning:type=SimulationMetrics,name=<name>}. Every run is also
+ * recorded as a {@link SimulationEvent} for Java Flight Recorder.
+ */
+public final class SimulationMetrics implements SimulationMetricsMXBean {
+    /** The domain of the metrics' object names. */
+    public static final String DOMAIN = "adiputra.reinforcementlearning";
+    // The minimum time over which the recent rates are measured.
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Sampled episodes taking longer were interrupted, e.g. by the scheduler, and would skew the split.
+    private static final long MAX_SAMPLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private ObjectName objectName;
+    private volatile boolean running;
+    private volatile long totalEpisodes;
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos = startNanos;
+    private final LongAdder episodes = new LongAdder();
+    private final LongAdder workerNanos = new LongAdder();
+    private final LongAdder sampledEpisodes = new LongAdder();
+    private final LongAdder sampledEvaluationNanos = new LongAdder();
+    private final LongAdder publishingNanos = new LongAdder();
+    private final LongAdder policyChanges = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile Supplier<long[]> stateVisits = () -> new long[0];
+    private volatile SimulationEvent event;
+
+    // The counters at the start of the current rate window, and the rates of the previous one.
+    private long windowNanos;
+    private long windowEpisodes;
+    private long windowPolicyChanges;
+    private long windowAllocatedBytes;
+    private double episodesPerSecond;
+    private double policyChangesPerSecond;
+    private double allocatedBytesPerSecond;
+
+    /**
+     * Creates the metrics of a model.
+     * @param name The name to register the metrics under, e.g. the model's class name.
+     */
+    public SimulationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. If the name is taken, e.g. by another
+     * instance of the same model, a number is appended to it.
+     * @return The object name the metrics were registered under.
+     * @throws IllegalStateException if the metrics cannot be registered.
+     */
+    public synchronized ObjectName register() {
+        if (objectName != null) {
+            return objectName;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 1; ; i++) {
+                ObjectName candidate = new ObjectName(DOMAIN + ":type=SimulationMetrics,name="
+                        + ObjectName.quote(i == 1 ? name : name + "-" + i));
+                try {
+                    server.registerMBean(this, candidate);
+                    objectName = candidate;
+                    return candidate;
+                } catch (InstanceAlreadyExistsException e) {
+                    // Try the next number.
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register the metrics of " + name, e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they are registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // Already removed by someone else.
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister the metrics of " + name, e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Clears the metrics of the previous run and starts measuring a new one.
+     * @param totalEpisodes The number of episodes of the run.
+     */
+    public void runStarted(long totalEpisodes) {
+        // A run that was never finished still shows up in a recording, with the episodes it played.
+        commitEvent();
+        episodes.reset();
+        workerNanos.reset();
+        sampledEpisodes.reset();
+        sampledEvaluationNanos.reset();
+        publishingNanos.reset();
+        policyChanges.reset();
+        allocatedBytes.reset();
+        this.totalEpisodes = totalEpisodes;
+        long now = System.nanoTime();
+        synchronized (this) {
+            windowNanos = now;
+            windowEpisodes = 0;
+            windowPolicyChanges = 0;
+            windowAllocatedBytes = 0;
+            episodesPerSecond = 0;
+            policyChangesPerSecond = 0;
+            allocatedBytesPerSecond = 0;
+        }
+        startNanos = now;
+        running = true;
+        SimulationEvent event = new SimulationEvent();
+        event.model = name;
+        event.requestedEpisodes = totalEpisodes;
+        event.begin();
+        this.event = event;
+    }
+
+    /**
+     * Stops measuring the run. Models call it when a run ends in any way, including interrupted and
+     * failed runs; it does nothing if no run is in progress.
+     */
+    public void runFinished() {
+        if (!running) {
+            return;
+        }
+        endNanos = System.nanoTime();
+        running = false;
+        commitEvent();
+    }
+
+    /**
+     * @param stateVisits Reads the current visits of every state from the model's tables.
+     */
+    public void setStateVisits(Supplier<long[]> stateVisits) {
+        this.stateVisits = stateVisits;
+    }
+
+    /**
+     * Records a chunk of episodes completed by a worker.
+     * @param episodes The number of episodes.
+     * @param nanos The time the worker spent on them.
+     */
+    public void episodesCompleted(int episodes, long nanos) {
+        this.episodes.add(episodes);
+        workerNanos.add(nanos);
+    }
+
+    /**
+     * Records the time a worker spent learning from one sampled episode. Samples that took longer
+     * than {@value #MAX_SAMPLE_NANOS} ns are ignored.
+     * @param nanos The time of the update of the estimates.
+     */
+    public void evaluationSampled(long nanos) {
+        if (nanos > MAX_SAMPLE_NANOS) {
+            return;
+        }
+        sampledEpisodes.increment();
+        sampledEvaluationNanos.add(nanos);
+    }
+
+    /**
+     * Records the time spent firing progress or result events.
+     * @param nanos The time of the listeners.
+     */
+    public void published(long nanos) {
+        publishingNanos.add(nanos);
+    }
+
+    /**
+     * Records that the greedy action of a state changed.
+     */
+    public void policyChanged() {
+        policyChanges.increment();
+    }
+
+    /**
+     * Records memory allocated by a thread playing episodes.
+     * @param bytes The number of bytes, see {@link #currentThreadAllocatedBytes()}.
+     */
+    public void allocated(long bytes) {
+        if (bytes > 0) {
+            allocatedBytes.add(bytes);
+        }
+    }
+
+    /**
+     * @return The bytes allocated by the calling thread so far, or 0 if the JVM does not measure it.
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return sunThreads.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public long getEpisodes() {
+        return episodes.sum();
+    }
+
+    @Override
+    public long getTotalEpisodes() {
+        return totalEpisodes;
+    }
+
+    @Override
+    public synchronized double getEpisodesPerSecond() {
+        updateRates();
+        return episodesPerSecond;
+    }
+
+    @Override
+    public double getAverageEpisodesPerSecond() {
+        long nanos = (running ? System.nanoTime() : endNanos) - startNanos;
+        return nanos <= 0 ? 0 : episodes.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getSimulationMillis() {
+        return (workerNanos.sum() - evaluationNanos()) / 1e6;
+    }
+
+    @Override
+    public double getEvaluationMillis() {
+        return evaluationNanos() / 1e6;
+    }
+
+    @Override
+    public double getPublishingMillis() {
+        return publishingNanos.sum() / 1e6;
+    }
+
+    @Override
+    public long[] getStateVisits() {
+        return stateVisits.get();
+    }
+
+    @Override
+    public long getPolicyChanges() {
+        return policyChanges.sum();
+    }
+
+    @Override
+    public synchronized double getPolicyChangesPerSecond() {
+        updateRates();
+        return policyChangesPerSecond;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public synchronized double getAllocatedBytesPerSecond() {
+        updateRates();
+        return allocatedBytesPerSecond;
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Commits the Flight Recorder event of the current run, if it has not been committed yet.
+     */
+    private synchronized void commitEvent() {
+        SimulationEvent event = this.event;
+        if (event != null) {
+            this.event = null;
+            event.playedEpisodes = episodes.sum();
+            event.commit();
+        }
+    }
+
+    /**
+     * Estimates the workers' time spent learning as the average of the sampled episodes times the
+     * number of episodes, but not more than the workers' total time.
+     */
+    private double evaluationNanos() {
+        long samples = sampledEpisodes.sum();
+        if (samples == 0) {
+            return 0;
+        }
+        return Math.min(workerNanos.sum(), (double) sampledEvaluationNanos.sum() / samples * episodes.sum());
+    }
+
+    /**
+     * Starts a new rate window once the current one is long enough, and keeps the rates measured
+     * over it. Must be called while holding the lock.
+     */
+    private void updateRates() {
+        long now = running ? System.nanoTime() : endNanos;
+        long nanos = now - windowNanos;
+        // After a run, the last window ends with the run, however short it is.
+        if (nanos < RATE_WINDOW_NANOS && (running || nanos <= 0)) {
+            return;
+        }
+        long episodes = this.episodes.sum();
+        long policyChanges = this.policyChanges.sum();
+        long allocatedBytes = this.allocatedBytes.sum();
+        episodesPerSecond = (episodes - windowEpisodes) * 1e9 / nanos;
+        policyChangesPerSecond = (policyChanges - windowPolicyChanges) * 1e9 / nanos;
+        allocatedBytesPerSecond = (allocatedBytes - windowAllocatedBytes) * 1e9 / nanos;
+        windowNanos = now;
+        windowEpisodes = episodes;
+        windowPolicyChanges = policyChanges;
+        windowAllocatedBytes = allocatedBytes;
+    }
+}
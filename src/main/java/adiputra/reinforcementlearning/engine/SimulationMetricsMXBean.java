@@ -0,0 +1,83 @@
+package adiputra.reinforcementlearning.engine;
+
+/**
+ * The management interface of {@link SimulationMetrics}, for JConsole, VisualVM and other JMX
+ * clients. The attributes describe the current or last run of a model; the rates are averaged over
+ * the last second or so, and over the whole run where noted.
+ */
+public interface SimulationMetricsMXBean {
+    /**
+     * @return The name the metrics are registered under.
+     */
+    String getName();
+
+    /**
+     * @return True while a run is in progress.
+     */
+    boolean isRunning();
+
+    /**
+     * @return The number of episodes completed by the run.
+     */
+    long getEpisodes();
+
+    /**
+     * @return The number of episodes the run was started with.
+     */
+    long getTotalEpisodes();
+
+    /**
+     * @return The number of episodes completed per second recently.
+     */
+    double getEpisodesPerSecond();
+
+    /**
+     * @return The number of episodes completed per second over the whole run.
+     */
+    double getAverageEpisodesPerSecond();
+
+    /**
+     * @return The milliseconds the workers spent playing episodes, estimated from sampled episodes.
+     */
+    double getSimulationMillis();
+
+    /**
+     * @return The milliseconds the workers spent learning from episodes, estimated from sampled episodes.
+     */
+    double getEvaluationMillis();
+
+    /**
+     * @return The milliseconds spent publishing progress and results to the listeners.
+     */
+    double getPublishingMillis();
+
+    /**
+     * @return The number of visits of every state, indexed by state.
+     */
+    long[] getStateVisits();
+
+    /**
+     * @return The number of changes of the greedy action of a state, for control.
+     */
+    long getPolicyChanges();
+
+    /**
+     * @return The number of policy changes per second recently.
+     */
+    double getPolicyChangesPerSecond();
+
+    /**
+     * @return The bytes allocated by the threads playing the run's episodes.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return The bytes allocated per second recently by the threads playing the run's episodes.
+     */
+    double getAllocatedBytesPerSecond();
+
+    /**
+     * @return The bytes of the heap currently in use by the whole JVM.
+     */
+    long getHeapUsedBytes();
+}
@@ -0,0 +1,97 @@
+package adiputra.utils;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Samples from a fixed discrete distribution in constant time with Vose's alias method.
+ *
+ * <p>The table splits the probability mass into {@code n} equally likely columns, each holding
+ * at most two outcomes: its own index and an alias. A sample picks a column and one of its two
+ * outcomes from a single uniform random number, so sampling costs one random draw, one multiply
+ * and two array loads regardless of the number of outcomes. Building the table takes O(n).
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class AliasTable {
+	private final double[] probability;
+	private final int[] alias;
+
+	/**
+	 * Builds the table for the given weights.
+	 * @param weights The non-negative weight of each outcome; they need not sum to 1.
+	 * @throws IllegalArgumentException if there are no weights, a weight is negative or all are zero.
+	 */
+	public AliasTable(double[] weights) {
+		int n = weights.length;
+		if (n == 0) {
+			throw new IllegalArgumentException("No outcomes");
+		}
+		double total = 0;
+		for (double weight : weights) {
+			if (!(weight >= 0)) {
+				throw new IllegalArgumentException("Negative weight " + weight);
+			}
+			total += weight;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("All weights are zero");
+		}
+
+		probability = new double[n];
+		alias = new int[n];
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / total;
+			if (scaled[i] < 1) {
+				small[smallCount++] = i;
+			} else {
+				large[largeCount++] = i;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int less = small[--smallCount];
+			int more = large[--largeCount];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = scaled[more] + scaled[less] - 1;
+			if (scaled[more] < 1) {
+				small[smallCount++] = more;
+			} else {
+				large[largeCount++] = more;
+			}
+		}
+		// What is left is 1 up to rounding errors.
+		while (largeCount > 0) {
+			int i = large[--largeCount];
+			probability[i] = 1;
+			alias[i] = i;
+		}
+		while (smallCount > 0) {
+			int i = small[--smallCount];
+			probability[i] = 1;
+			alias[i] = i;
+		}
+	}
+
+	/**
+	 * Draws an outcome.
+	 * @param random The generator to draw from; exactly one {@code nextDouble()} is consumed.
+	 * @return The index of the drawn outcome.
+	 */
+	public int sample(RandomGenerator random) {
+		double u = random.nextDouble() * probability.length;
+		int column = Math.min((int) u, probability.length - 1);
+		return u - column < probability[column] ? column : alias[column];
+	}
+
+	/**
+	 * @return The number of outcomes.
+	 */
+	public int size() {
+		return probability.length;
+	}
+}
@@ -0,0 +1,85 @@
+package adiputra.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate-limits progress reporting of long running simulations.
+ *
+ * <p>Workers report completed episodes through {@link #episodesCompleted(long)}, which tells them
+ * whether an update should be published. An update is due once at least the configured number of
+ * episodes <em>and</em> the configured amount of time have passed since the previous one, and
+ * always when the last episode completes. The common path is a single atomic add and a comparison;
+ * the clock is only read once the episode interval has elapsed.
+ *
+ * <p>This class is thread-safe, so the shards of a parallel simulation can share one instance.
+ * To keep them from contending on it, shards should report their episodes in small batches rather
+ * than one at a time.
+ */
+public class ProgressThrottle {
+	private final long totalEpisodes;
+	private final long episodeInterval;
+	private final long intervalNanos;
+	private final AtomicLong completedEpisodes = new AtomicLong();
+	private volatile long lastPublishedEpisodes;
+	private long lastPublishedNanos;
+
+	/**
+	 * Creates a throttle for a run of the given length.
+	 * @param totalEpisodes The number of episodes of the run.
+	 * @param episodeInterval The minimum number of episodes between two updates.
+	 * @param millisInterval The minimum number of milliseconds between two updates.
+	 */
+	public ProgressThrottle(long totalEpisodes, long episodeInterval, long millisInterval) {
+		this.totalEpisodes = totalEpisodes;
+		this.episodeInterval = Math.max(1, episodeInterval);
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisInterval));
+		this.lastPublishedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records completed episodes and decides whether progress should be published.
+	 * @param episodes The number of episodes completed since the caller's previous report.
+	 * @return true if the caller should publish an update.
+	 */
+	public boolean episodesCompleted(long episodes) {
+		long completed = completedEpisodes.addAndGet(episodes);
+		if (completed < totalEpisodes && completed - lastPublishedEpisodes < episodeInterval) {
+			return false;
+		}
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (completed < totalEpisodes) {
+				if (completed - lastPublishedEpisodes < episodeInterval || now - lastPublishedNanos < intervalNanos) {
+					return false;
+				}
+			} else if (lastPublishedEpisodes >= totalEpisodes) {
+				return false;
+			}
+			lastPublishedEpisodes = completed;
+			lastPublishedNanos = now;
+			return true;
+		}
+	}
+
+	/**
+	 * @return The number of episodes reported so far.
+	 */
+	public long getCompletedEpisodes() {
+		return completedEpisodes.get();
+	}
+
+	/**
+	 * @return The number of episodes of the run.
+	 */
+	public long getTotalEpisodes() {
+		return totalEpisodes;
+	}
+
+	/**
+	 * @return The completed share of the run as a percentage between 0 and 100.
+	 */
+	public int getProgress() {
+		return totalEpisodes == 0 ? 100 : (int) (getCompletedEpisodes() * 100 / totalEpisodes);
+	}
+}
@@ -0,0 +1,73 @@
+package adiputra.reinforcementlearning.chapter5.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchReportTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesNonFiniteNumbersAsJsonNull() throws IOException {
+        BatchReport report = new BatchReport()
+                .addStat("infinite", Double.POSITIVE_INFINITY)
+                .addStat("nan", Float.NaN)
+                .addStat("finite", 0.5)
+                .addGrid("errors", 12, new double[][] { { 1.5, Double.NaN } });
+        report.addTable("sweep", "episodes", "error").rows().add(new double[] { 1000, Double.NEGATIVE_INFINITY });
+
+        Map<String, Object> json = (Map<String, Object>) Json.parse(Files.readString(report.writeJson(directory)));
+
+        Map<String, Object> stats = (Map<String, Object>) json.get("stats");
+        assertTrue(stats.containsKey("infinite"));
+        assertNull(stats.get("infinite"));
+        assertNull(stats.get("nan"));
+        assertEquals(0.5, stats.get("finite"));
+        Map<String, Object> grid = (Map<String, Object>) ((Map<String, Object>) json.get("grids")).get("errors");
+        assertEquals(List.of(Arrays.asList(1.5, null)), grid.get("rows"));
+        Map<String, Object> table = (Map<String, Object>) ((Map<String, Object>) json.get("tables")).get("sweep");
+        assertNull(((List<Object>) ((List<Object>) table.get("rows")).get(0)).get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void escapesControlCharactersInJsonStrings() throws IOException {
+        String value = "a \"quoted\" C:\\path\nline\r\tend\u0001\u001f";
+        BatchReport report = new BatchReport().addStat("key\n", value);
+        report.addTable("sweep", "tab\tcolumn");
+
+        Map<String, Object> json = (Map<String, Object>) Json.parse(Files.readString(report.writeJson(directory)));
+
+        assertEquals(value, ((Map<String, Object>) json.get("stats")).get("key\n"));
+        Map<String, Object> table = (Map<String, Object>) ((Map<String, Object>) json.get("tables")).get("sweep");
+        assertEquals(List.of("tab\tcolumn"), table.get("columns"));
+    }
+
+    @Test
+    void quotesCsvFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        BatchReport report = new BatchReport()
+                .addStat("plain", "value")
+                .addStat("list", "stick20,stick17")
+                .addStat("quoted", "say \"hi\"")
+                .addStat("lines", "one\ntwo");
+        report.addTable("sweep", "episodes", "error, rms");
+
+        report.writeCsv(directory);
+
+        assertEquals("name,value\nplain,value\nlist,\"stick20,stick17\"\nquoted,\"say \"\"hi\"\"\"\nlines,\"one\ntwo\"\n",
+                Files.readString(directory.resolve("stats.csv")));
+        assertEquals("episodes,\"error, rms\"\n", Files.readString(directory.resolve("sweep.csv")));
+    }
+}
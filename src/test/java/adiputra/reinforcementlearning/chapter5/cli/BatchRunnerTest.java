@@ -0,0 +1,58 @@
+package adiputra.reinforcementlearning.chapter5.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunnerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void jsonOfAConstantEpsilonRunParses() throws IOException {
+        Map<String, Object> stats = runJson("--model", "5.3", "--epsilon", "0.1", "--episodes", "20000", "--seed", "1",
+                "--threads", "1");
+
+        assertEquals("epsilon-soft", stats.get("control"));
+        assertEquals(0.1, stats.get("epsilon"));
+        assertFalse(stats.containsKey("epsilonDecay"));
+    }
+
+    @Test
+    void jsonOfADecayingEpsilonRunParses() throws IOException {
+        Map<String, Object> stats = runJson("--model", "5.3", "--epsilon", "0.1", "--epsilon-decay", "5000", "--episodes",
+                "20000", "--seed", "1", "--threads", "1");
+
+        assertEquals(5000.0, stats.get("epsilonDecay"));
+    }
+
+    @Test
+    void simdIsRejectedWithSampledHands() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRunner.parse(new String[] { "--model", "5.1", "--simd", "on", "--dealer", "sample" }));
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRunner.parse(new String[] { "--model", "5.1", "--simd", "on", "--initial-hand", "sample" }));
+        assertTrue(BatchRunner.parse(new String[] { "--model", "5.1", "--simd", "on", "--dealer", "play" }).simd());
+    }
+
+    /**
+     * Runs the batch runner with the given arguments, writes its report as JSON and parses it.
+     * @return The statistics of the report.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> runJson(String... args) throws IOException {
+        BatchRunner.BatchOptions options = BatchRunner.parse(args);
+        BatchRunner.writeReport(BatchRunner.run(options), "json", directory);
+        Map<String, Object> result = (Map<String, Object>) Json.parse(Files.readString(directory.resolve("result.json")));
+        return (Map<String, Object>) result.get("stats");
+    }
+}
@@ -0,0 +1,81 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.random.RandomGenerator;
+
+import org.junit.jupiter.api.Test;
+
+import adiputra.utils.RandomSource;
+
+class DealerOutcomeDistributionTest {
+    // The bust probabilities of a dealer who stands on all 17s with an infinite deck, per face-up
+    // card from the ace to 10.
+    private static final double[] BUST_PROBABILITIES = {
+            0.1153, 0.3536, 0.3739, 0.3945, 0.4164, 0.4232, 0.2623, 0.2447, 0.2284, 0.2121 };
+
+    private final DealerOutcomeDistribution distribution = new DealerOutcomeDistribution(12);
+
+    @Test
+    void probabilitiesOfEveryFaceUpCardSumToOne() {
+        for (int faceUpCard = 1; faceUpCard <= 10; faceUpCard++) {
+            double total = 0;
+            for (int finalSum = DealerOutcomeDistribution.MIN_FINAL_SUM; finalSum <= DealerOutcomeDistribution.BUST; finalSum++) {
+                total += distribution.getProbability(faceUpCard, finalSum);
+            }
+            assertEquals(1, total, 1e-12);
+        }
+    }
+
+    @Test
+    void bustProbabilitiesMatchTheKnownValues() {
+        for (int faceUpCard = 1; faceUpCard <= 10; faceUpCard++) {
+            assertEquals(BUST_PROBABILITIES[faceUpCard - 1],
+                    distribution.getProbability(faceUpCard, DealerOutcomeDistribution.BUST), 1e-4);
+        }
+    }
+
+    @Test
+    void sampledOutcomesFollowTheProbabilities() {
+        int samples = 1_000_000;
+        RandomGenerator random = new RandomSource(1).stream(0);
+        for (int faceUpCard = 1; faceUpCard <= 10; faceUpCard++) {
+            int[] counts = new int[DealerOutcomeDistribution.BUST + 1];
+            for (int i = 0; i < samples; i++) {
+                counts[distribution.sampleFinalSum(faceUpCard, random)]++;
+            }
+            for (int finalSum = DealerOutcomeDistribution.MIN_FINAL_SUM; finalSum <= DealerOutcomeDistribution.BUST; finalSum++) {
+                double p = distribution.getProbability(faceUpCard, finalSum);
+                assertEquals(p, (double) counts[finalSum] / samples, 5 * Math.sqrt(p * (1 - p) / samples));
+            }
+        }
+    }
+
+    @Test
+    void sampledDealerOutcomesGiveTheEstimatesOfPlayedDealerHands() {
+        int episodes = 1_000_000;
+        Example5_1Model.SimulationResult played = Example5_1ModelTest.run(model -> model.runSimulation(episodes, 2));
+        Example5_1Model.SimulationResult sampled = Example5_1ModelTest.run(model -> {
+            model.setSampleDealerOutcomes(true);
+            model.runSimulation(episodes, 2);
+        });
+
+        assertWithinErrors(played.usableAceGrid(), played.usableAceErrors(), sampled.usableAceGrid(), sampled.usableAceErrors());
+        assertWithinErrors(played.nonUsableAceGrid(), played.nonUsableAceErrors(), sampled.nonUsableAceGrid(),
+                sampled.nonUsableAceErrors());
+    }
+
+    /**
+     * Asserts that two independent estimates of every state differ by at most five standard errors
+     * of their difference.
+     */
+    private static void assertWithinErrors(double[][] expected, double[][] expectedErrors, double[][] actual,
+            double[][] actualErrors) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                double error = Math.hypot(expectedErrors[i][j], actualErrors[i][j]);
+                assertEquals(expected[i][j], actual[i][j], 5 * error);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class ExactBlackjackSolverTest {
+    // The optimal policy of figure 5.2 of Sutton and Barto, from a player sum of 21 down to 12,
+    // with the dealer showing an ace, 2, ..., 10: H to hit, S to stick.
+    private static final String[] OPTIMAL_USABLE_ACE = {
+            "SSSSSSSSSS", // 21
+            "SSSSSSSSSS", // 20
+            "SSSSSSSSSS", // 19
+            "HSSSSSSSHH", // 18
+            "HHHHHHHHHH", // 17
+            "HHHHHHHHHH", // 16
+            "HHHHHHHHHH", // 15
+            "HHHHHHHHHH", // 14
+            "HHHHHHHHHH", // 13
+            "HHHHHHHHHH", // 12
+    };
+    private static final String[] OPTIMAL_NO_USABLE_ACE = {
+            "SSSSSSSSSS", // 21
+            "SSSSSSSSSS", // 20
+            "SSSSSSSSSS", // 19
+            "SSSSSSSSSS", // 18
+            "SSSSSSSSSS", // 17
+            "HSSSSSHHHH", // 16
+            "HSSSSSHHHH", // 15
+            "HSSSSSHHHH", // 14
+            "HSSSSSHHHH", // 13
+            "HHHSSSHHHH", // 12
+    };
+
+    private final ExactBlackjackSolver solver = new ExactBlackjackSolver(12);
+
+    @Test
+    void valueOfSoft13AgainstADealers2MatchesExample5_4() {
+        double value = solver.getStickOn20Values(true)[13 - 12][2 - 1];
+
+        // The book estimates -0.27726 from 100 million episodes, whose standard error is about 1e-4.
+        assertEquals(-0.27726, value, 1e-4);
+        // The exact value of an infinite deck.
+        assertEquals(-0.2772042, value, 1e-7);
+    }
+
+    @Test
+    void optimalPolicyMatchesFigure5_2() {
+        assertArrayEquals(toGrid(OPTIMAL_USABLE_ACE), solver.getOptimalPolicy(true));
+        assertArrayEquals(toGrid(OPTIMAL_NO_USABLE_ACE), solver.getOptimalPolicy(false));
+    }
+
+    @Test
+    void optimalPolicyHitsEverySumOf11() {
+        int[][] policy = new ExactBlackjackSolver(11).getOptimalPolicy(false);
+
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, policy[0]);
+        assertArrayEquals(toGrid(OPTIMAL_NO_USABLE_ACE), Arrays.copyOfRange(policy, 1, policy.length));
+    }
+
+    /**
+     * Converts rows from the highest sum to the lowest into a policy grid indexed by the sum from the
+     * lowest, with 1 for HIT and 0 for STICK.
+     */
+    private static int[][] toGrid(String[] rows) {
+        int[][] grid = new int[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            grid[rows.length - 1 - i] = rows[i].chars().map(c -> c == 'H' ? 1 : 0).toArray();
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,158 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import adiputra.utils.RandomSource;
+
+class Example5_1ModelTest {
+    private static final int EPISODES = 3 * Example5_1Model.RANDOM_STREAM_EPISODES + 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void runIsIndependentOfTheNumberOfThreads() {
+        assertSameTable(run(model -> model.runSimulation(EPISODES, 1)), run(model -> model.runSimulation(EPISODES, 4)));
+    }
+
+    @Test
+    void pipelinedRunGivesTheTableOfARun() {
+        assertSameTable(run(model -> model.runSimulation(EPISODES, 1)), run(model -> model.runPipelinedSimulation(EPISODES, 3)));
+    }
+
+    @Test
+    void resumedRunGivesTheTableOfAnUninterruptedRun() {
+        Path checkpoint = directory.resolve("run.ckpt");
+        // Stops after two blocks, as if the run had been killed after its second checkpoint.
+        run(model -> {
+            model.setCheckpoint(checkpoint, Example5_1Model.RANDOM_STREAM_EPISODES);
+            model.runSimulation(2 * Example5_1Model.RANDOM_STREAM_EPISODES, 2, false);
+        });
+        // The resumed run continues with the checkpoint's seed, not with that of the model.
+        Example5_1Model.SimulationResult resumed = run(model -> {
+            model.setRandomSource(new RandomSource(7));
+            model.setCheckpoint(checkpoint, Example5_1Model.RANDOM_STREAM_EPISODES);
+            model.runSimulation(EPISODES, 2, true);
+        });
+
+        assertSameTable(run(model -> model.runSimulation(EPISODES, 1)), resumed);
+    }
+
+    @Test
+    void replayOfARecordedRunGivesTheRunsTable() {
+        Path log = directory.resolve("episodes.log");
+        Example5_1Model.SimulationResult recorded = run(model -> model.recordSimulation(EPISODES, 2, log));
+        Example5_1Model.SimulationResult replayed = run(model -> model.replaySimulation(log));
+
+        assertSameTable(run(model -> model.runSimulation(EPISODES, 1)), recorded);
+        assertSameTable(recorded, replayed);
+    }
+
+    @Test
+    void looseToleranceStopsBeforeTheMaximumNumberOfEpisodes() {
+        int maxEpisodes = 100 * Example5_1Model.RANDOM_STREAM_EPISODES;
+        Example5_1Model.ConvergenceCriteria criteria = new Example5_1Model.ConvergenceCriteria(0.1);
+        Example5_1Model.SimulationResult result = run(model -> model.runSimulation(maxEpisodes, 2, criteria));
+
+        assertTrue(result.episodes() < maxEpisodes);
+        assertEquals(0, result.episodes() % (2 * Example5_1Model.RANDOM_STREAM_EPISODES));
+        for (double[][] errors : new double[][][] { result.usableAceErrors(), result.nonUsableAceErrors() }) {
+            for (double[] row : errors) {
+                for (double error : row) {
+                    assertTrue(criteria.z() * error <= criteria.tolerance());
+                }
+            }
+        }
+        // An early stop gives the estimates of a fixed-length run of the reported length.
+        assertSameTable(run(model -> model.runSimulation(result.episodes(), 1)), result);
+    }
+
+    @Test
+    void smallerConvergedShareStopsNoLater() {
+        int maxEpisodes = 100 * Example5_1Model.RANDOM_STREAM_EPISODES;
+        Example5_1Model.SimulationResult all = run(model -> model.runSimulation(maxEpisodes, 2,
+                new Example5_1Model.ConvergenceCriteria(0.05, 1.96, 1.0, 30)));
+        Example5_1Model.SimulationResult most = run(model -> model.runSimulation(maxEpisodes, 2,
+                new Example5_1Model.ConvergenceCriteria(0.05, 1.96, 0.5, 30)));
+
+        assertTrue(all.episodes() < maxEpisodes);
+        assertTrue(most.episodes() <= all.episodes());
+        assertTrue(most.episodes() > 0);
+    }
+
+    @Test
+    void cancelledRunPublishesThePartialResult() {
+        Example5_1Model.SimulationResult result = run(model -> {
+            model.setProgressInterval(1000, 0);
+            model.addPropertyChangeListener(evt -> {
+                if (Example5_1Model.PROGRESS_PROPERTY.equals(evt.getPropertyName())) {
+                    model.cancel();
+                }
+            });
+            model.runSimulation(EPISODES, 2);
+        });
+
+        assertTrue(result.cancelled());
+        assertTrue(result.episodes() < EPISODES);
+    }
+
+    @Test
+    void cancelBeforeTheRunStartsStopsIt() {
+        List<Example5_1Model.SimulationResult> results = new ArrayList<>();
+        run(model -> {
+            model.addPropertyChangeListener(evt -> {
+                if (Example5_1Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+                    results.add((Example5_1Model.SimulationResult) evt.getNewValue());
+                }
+            });
+            model.cancel();
+            model.runSimulation(EPISODES, 2);
+            model.runSimulation(EPISODES, 2);
+        });
+
+        assertTrue(results.get(0).cancelled());
+        assertEquals(0, results.get(0).episodes());
+        // The request ends with the run it stopped.
+        assertFalse(results.get(1).cancelled());
+        assertEquals(EPISODES, results.get(1).episodes());
+    }
+
+    /**
+     * Runs a new model seeded with 42 and returns its result.
+     */
+    static Example5_1Model.SimulationResult run(Consumer<Example5_1Model> simulation) {
+        Example5_1Model model = new Example5_1Model(new RandomSource(42));
+        model.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+        AtomicReference<Example5_1Model.SimulationResult> result = new AtomicReference<>();
+        model.addPropertyChangeListener(evt -> {
+            if (Example5_1Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+                result.set((Example5_1Model.SimulationResult) evt.getNewValue());
+            }
+        });
+        simulation.accept(model);
+        return result.get();
+    }
+
+    static void assertSameTable(Example5_1Model.SimulationResult expected, Example5_1Model.SimulationResult actual) {
+        assertEquals(expected.episodes(), actual.episodes());
+        assertEquals(expected.seed(), actual.seed());
+        assertArrayEquals(expected.usableAceGrid(), actual.usableAceGrid());
+        assertArrayEquals(expected.nonUsableAceGrid(), actual.nonUsableAceGrid());
+        assertArrayEquals(expected.usableAceVisits(), actual.usableAceVisits());
+        assertArrayEquals(expected.nonUsableAceVisits(), actual.nonUsableAceVisits());
+        assertArrayEquals(expected.usableAceErrors(), actual.usableAceErrors());
+        assertArrayEquals(expected.nonUsableAceErrors(), actual.nonUsableAceErrors());
+    }
+}
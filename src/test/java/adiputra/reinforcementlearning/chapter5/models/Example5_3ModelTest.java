@@ -0,0 +1,162 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import adiputra.utils.RandomSource;
+
+class Example5_3ModelTest {
+    private static final int EPISODES = 4_000_000;
+
+    private final ExactBlackjackSolver solver = new ExactBlackjackSolver(11);
+
+    @Test
+    void sequentialRunIsReproducibleFromItsSeed() {
+        Example5_3Model.SimulationResult first = run(1, model -> model.runSimulation(1_000_000, 1));
+        Example5_3Model.SimulationResult second = run(1, model -> model.runSimulation(1_000_000, 1));
+
+        assertEquals(first.episodes(), second.episodes());
+        assertArrayEquals(first.usableAceGrid(), second.usableAceGrid());
+        assertArrayEquals(first.nonUsableAceGrid(), second.nonUsableAceGrid());
+    }
+
+    @Test
+    void parallelControlWithExploringStartsFindsTheBoundariesOfASequentialRun() {
+        Example5_3Model.SimulationResult sequential = run(1, model -> model.runSimulation(EPISODES, 1));
+        Example5_3Model.SimulationResult parallel = run(1, model -> model.runSimulation(EPISODES, 4));
+
+        assertEquals(EPISODES, parallel.episodes());
+        // Exploring starts only explore the first action of dealt hands, so the states after a hit,
+        // e.g. a hard 21, keep their initial action and bias the hits before them. Both runs share
+        // that bias; the shared table must not add to it.
+        assertTrue(solver.countPolicyDisagreements(true, parallel.usableAceGrid()) <= 2);
+        assertTrue(solver.averageActionLoss(true, parallel.usableAceGrid()) < 0.005);
+        assertTrue(solver.countPolicyDisagreements(false, parallel.nonUsableAceGrid())
+                <= solver.countPolicyDisagreements(false, sequential.nonUsableAceGrid()) + 4);
+        assertTrue(solver.averageActionLoss(false, parallel.nonUsableAceGrid())
+                < solver.averageActionLoss(false, sequential.nonUsableAceGrid()) + 0.02);
+    }
+
+    @Test
+    void parallelEpsilonSoftControlFindsTheOptimalPolicy() {
+        Example5_3Model.SimulationResult result = run(1, model -> {
+            model.setEpsilonSchedule(new Example5_3Model.EpsilonSchedule(0.3, 0, 200_000));
+            model.runSimulation(EPISODES, 4);
+        });
+
+        assertNearlyOptimal(result);
+    }
+
+    @Test
+    void decayingEpsilonSoftControlFindsThePolicyOfFigure5_2() {
+        Example5_3Model.SimulationResult result = run(2, model -> {
+            model.setEpsilonSchedule(new Example5_3Model.EpsilonSchedule(0.3, 0, 200_000));
+            model.runSimulation(EPISODES, 1);
+        });
+
+        assertNearlyOptimal(result);
+    }
+
+    @Test
+    void constantEpsilonSoftControlFindsThePolicyOfFigure5_2() {
+        Example5_3Model.SimulationResult result = run(3, model -> {
+            model.setEpsilonSchedule(Example5_3Model.EpsilonSchedule.constant(0.1));
+            model.runSimulation(EPISODES, 1);
+        });
+
+        assertNearlyOptimal(result);
+    }
+
+    @Test
+    void epsilonHalvesAfterTheDecayEpisodes() {
+        Example5_3Model.EpsilonSchedule schedule = new Example5_3Model.EpsilonSchedule(0.4, 0.05, 1000);
+
+        assertEquals(0.4, schedule.epsilon(0));
+        assertEquals(0.2, schedule.epsilon(1000), 1e-12);
+        assertEquals(0.1, schedule.epsilon(3000), 1e-12);
+        assertEquals(0.05, schedule.epsilon(100_000));
+        assertEquals(0.1, Example5_3Model.EpsilonSchedule.constant(0.1).epsilon(Long.MAX_VALUE));
+    }
+
+    @Test
+    void invalidEpsilonSchedulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Example5_3Model.EpsilonSchedule(1.5, 0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new Example5_3Model.EpsilonSchedule(0.1, 0.2, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new Example5_3Model.EpsilonSchedule(0.1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Example5_3Model.EpsilonSchedule(Double.NaN, 0, 1000));
+    }
+
+    @Test
+    void cancelledRunPublishesThePartialResult() {
+        Example5_3Model.SimulationResult result = run(1, model -> {
+            model.setProgressInterval(1000, 0);
+            model.addPropertyChangeListener(evt -> {
+                if (Example5_3Model.PROGRESS_PROPERTY.equals(evt.getPropertyName())) {
+                    model.cancel();
+                }
+            });
+            model.runSimulation(EPISODES, 2);
+        });
+
+        assertTrue(result.cancelled());
+        assertTrue(result.episodes() < EPISODES);
+    }
+
+    @Test
+    void cancelBeforeTheRunStartsStopsIt() {
+        List<Example5_3Model.SimulationResult> results = new ArrayList<>();
+        run(1, model -> {
+            model.addPropertyChangeListener(evt -> {
+                if (Example5_3Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+                    results.add((Example5_3Model.SimulationResult) evt.getNewValue());
+                }
+            });
+            model.cancel();
+            model.runSimulation(100_000, 2);
+            model.runSimulation(100_000, 2);
+        });
+
+        assertTrue(results.get(0).cancelled());
+        assertEquals(0, results.get(0).episodes());
+        // The request ends with the run it stopped.
+        assertFalse(results.get(1).cancelled());
+        assertEquals(100_000, results.get(1).episodes());
+    }
+
+    /**
+     * Asserts that a policy takes the optimal action in all but a few states, and that the states
+     * it gets wrong are close calls.
+     */
+    private void assertNearlyOptimal(Example5_3Model.SimulationResult result) {
+        assertTrue(solver.countPolicyDisagreements(true, result.usableAceGrid()) <= 8);
+        assertTrue(solver.countPolicyDisagreements(false, result.nonUsableAceGrid()) <= 8);
+        assertTrue(solver.averageActionLoss(true, result.usableAceGrid()) < 0.01);
+        assertTrue(solver.averageActionLoss(false, result.nonUsableAceGrid()) < 0.01);
+    }
+
+    /**
+     * Runs a new model seeded with the given seed and returns its result.
+     */
+    static Example5_3Model.SimulationResult run(long seed, Consumer<Example5_3Model> simulation) {
+        Example5_3Model model = new Example5_3Model(new RandomSource(seed));
+        model.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+        AtomicReference<Example5_3Model.SimulationResult> result = new AtomicReference<>();
+        model.addPropertyChangeListener(evt -> {
+            if (Example5_3Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+                result.set((Example5_3Model.SimulationResult) evt.getNewValue());
+            }
+        });
+        simulation.accept(model);
+        return result.get();
+    }
+}
@@ -0,0 +1,83 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import adiputra.utils.RandomSource;
+
+class Example5_4ModelTest {
+    // The value of the state of Example 5.4 under the policy that sticks on 20 or 21.
+    private static final double EXAMPLE_5_4_VALUE = -0.27726;
+
+    private static final int EPISODES = 2 * Example5_4Model.RANDOM_STREAM_EPISODES + 1000;
+
+    private final ExactBlackjackSolver solver = new ExactBlackjackSolver(12);
+
+    @Test
+    void weightedEstimateOfExample5_4ConvergesToTheTrueValue() {
+        Example5_4Model.SimulationResult result = run(model -> {
+            model.setStartState(true, 13, 2);
+            model.runSimulation(1_000_000, 2);
+        });
+
+        Example5_4Model.TargetPolicy stickOn20 = Example5_4Model.TargetPolicy.stickOn(20);
+        double[][][] values = solver.getPolicyValues(stickOn20.usableAcePolicy(), stickOn20.nonUsableAcePolicy());
+        Example5_4Model.PolicyEstimate estimate = result.estimates().get(0);
+
+        assertEquals(EXAMPLE_5_4_VALUE, values[1][13 - 12][2 - 1], 1e-4);
+        // About four standard errors of a million episodes.
+        assertEquals(EXAMPLE_5_4_VALUE, estimate.usableAceWeighted()[13 - 12][2 - 1], 0.015);
+        assertEquals(EXAMPLE_5_4_VALUE, estimate.usableAceOrdinary()[13 - 12][2 - 1], 0.02);
+    }
+
+    @Test
+    void targetsEvaluatedTogetherHaveTheEstimatesOfTargetsEvaluatedAlone() {
+        List<Example5_4Model.TargetPolicy> targets = List.of(Example5_4Model.TargetPolicy.stickOn(20),
+                Example5_4Model.TargetPolicy.stickOn(17),
+                new Example5_4Model.TargetPolicy("optimal", solver.getOptimalPolicy(true), solver.getOptimalPolicy(false)));
+        Example5_4Model.SimulationResult together = run(model -> {
+            model.setTargetPolicies(targets);
+            model.runSimulation(EPISODES, 2);
+        });
+
+        for (int policy = 0; policy < targets.size(); policy++) {
+            Example5_4Model.TargetPolicy target = targets.get(policy);
+            Example5_4Model.SimulationResult alone = run(model -> {
+                model.setTargetPolicies(List.of(target));
+                model.runSimulation(EPISODES, 2);
+            });
+
+            assertArrayEquals(alone.usableAceVisits(), together.usableAceVisits());
+            assertArrayEquals(alone.nonUsableAceVisits(), together.nonUsableAceVisits());
+            Example5_4Model.PolicyEstimate expected = alone.estimates().get(0);
+            Example5_4Model.PolicyEstimate actual = together.estimates().get(policy);
+            assertEquals(expected.name(), actual.name());
+            assertArrayEquals(expected.usableAceOrdinary(), actual.usableAceOrdinary());
+            assertArrayEquals(expected.nonUsableAceOrdinary(), actual.nonUsableAceOrdinary());
+            assertArrayEquals(expected.usableAceWeighted(), actual.usableAceWeighted());
+            assertArrayEquals(expected.nonUsableAceWeighted(), actual.nonUsableAceWeighted());
+        }
+    }
+
+    /**
+     * Runs a new model seeded with 42 and returns its result.
+     */
+    static Example5_4Model.SimulationResult run(Consumer<Example5_4Model> simulation) {
+        Example5_4Model model = new Example5_4Model(new RandomSource(42));
+        model.setProgressInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+        AtomicReference<Example5_4Model.SimulationResult> result = new AtomicReference<>();
+        model.addPropertyChangeListener(evt -> {
+            if (Example5_4Model.RESULT_PROPERTY.equals(evt.getPropertyName())) {
+                result.set((Example5_4Model.SimulationResult) evt.getNewValue());
+            }
+        });
+        simulation.accept(model);
+        return result.get();
+    }
+}
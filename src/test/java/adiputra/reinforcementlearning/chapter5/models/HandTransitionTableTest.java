@@ -0,0 +1,59 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.random.RandomGenerator;
+
+import org.junit.jupiter.api.Test;
+
+import adiputra.utils.RandomSource;
+
+class HandTransitionTableTest {
+    private static final int ACE = 0;
+    private static final int FIVE = 4;
+    private static final int KING = 12;
+
+    private final HandTransitionTable table = new HandTransitionTable(12);
+
+    @Test
+    void usableAceCountsAsOneWhenTheHitWouldBust() {
+        assertEquals(hard(16), table.afterHit(soft(21), FIVE));
+        assertEquals(hard(12), table.afterHit(soft(12), KING));
+    }
+
+    @Test
+    void usableAceStaysUsableWhenTheHitFits() {
+        assertEquals(soft(18), table.afterHit(soft(13), FIVE));
+        assertEquals(soft(21), table.afterHit(soft(20), ACE));
+    }
+
+    @Test
+    void hitAceCountsAsOne() {
+        assertEquals(hard(12), table.afterHit(hard(11), ACE));
+        assertEquals(hard(5), table.afterHit(hard(4), ACE));
+    }
+
+    @Test
+    void hardHandGoesBustAbove21() {
+        assertEquals(hard(25), table.afterHit(hard(20), FIVE));
+        assertEquals(hard(22), table.afterHit(hard(12), KING));
+    }
+
+    @Test
+    void initialHandsReachTheMinimumSum() {
+        RandomGenerator random = new RandomSource(1).stream(0);
+        for (int i = 0; i < 100_000; i++) {
+            int sum = table.dealInitialHand(random) >> 1;
+            assertTrue(sum >= 12 && sum <= 21);
+        }
+    }
+
+    private static int hard(int sum) {
+        return sum << 1;
+    }
+
+    private static int soft(int sum) {
+        return (sum << 1) | 1;
+    }
+}
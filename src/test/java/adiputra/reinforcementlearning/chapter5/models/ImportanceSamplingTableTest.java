@@ -0,0 +1,43 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ImportanceSamplingTableTest {
+    @Test
+    void estimatesDivideTheWeightedReturnsByTheVisitsOrTheWeights() {
+        ImportanceSamplingTable table = new ImportanceSamplingTable(12, 21, 2);
+        int state = table.stateIndex(true, 13, 2);
+        for (int i = 0; i < 4; i++) {
+            table.addVisit(state);
+        }
+        table.add(0, state, 2, 1);
+        table.add(0, state, 8, -1);
+        table.add(1, state, 4, 1);
+
+        assertEquals((2 - 8) / 4.0, table.getOrdinaryEstimate(0, state));
+        assertEquals((2 - 8) / 10.0, table.getWeightedEstimate(0, state));
+        assertEquals(1.0, table.getOrdinaryEstimate(1, state));
+        assertEquals(1.0, table.getWeightedEstimate(1, state));
+        assertEquals(0.0, table.getWeightedEstimate(0, table.stateIndex(false, 13, 2)));
+    }
+
+    @Test
+    void mergedTableHasTheSumsOfBothTables() {
+        ImportanceSamplingTable first = new ImportanceSamplingTable(12, 21, 1);
+        ImportanceSamplingTable second = new ImportanceSamplingTable(12, 21, 1);
+        int state = first.stateIndex(false, 20, 10);
+        first.addVisit(state);
+        first.add(0, state, 2, 1);
+        second.addVisit(state);
+        second.addVisit(state);
+        second.add(0, state, 4, -1);
+
+        first.merge(second);
+
+        assertEquals(3, first.getVisits(state));
+        assertEquals(6, first.getWeightSum(0, state));
+        assertEquals((2 - 4) / 6.0, first.getWeightedEstimate(0, state));
+    }
+}
@@ -0,0 +1,52 @@
+package adiputra.reinforcementlearning.chapter5.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+class VectorBlackjackSimulatorTest {
+    private static final int EPISODES = 1_000_000;
+
+    @Test
+    void vectorizedRunAgreesWithTheExactValues() {
+        assumeTrue(Example5_1Model.isVectorApiAvailable(), "needs --add-modules jdk.incubator.vector");
+        Example5_1Model.SimulationResult result = Example5_1ModelTest.run(model -> {
+            model.setVectorized(true);
+            model.runSimulation(EPISODES, 2);
+        });
+
+        ExactBlackjackSolver solver = new ExactBlackjackSolver(12);
+        assertEquals(EPISODES, result.episodes());
+        assertWithinErrors(solver.getStickOn20Values(true), result.usableAceGrid(), result.usableAceErrors());
+        assertWithinErrors(solver.getStickOn20Values(false), result.nonUsableAceGrid(), result.nonUsableAceErrors());
+    }
+
+    @Test
+    void vectorizedRunIsReproducibleFromItsSeed() {
+        assumeTrue(Example5_1Model.isVectorApiAvailable(), "needs --add-modules jdk.incubator.vector");
+        int episodes = 2 * Example5_1Model.RANDOM_STREAM_EPISODES + 1000;
+
+        Example5_1ModelTest.assertSameTable(
+                Example5_1ModelTest.run(model -> {
+                    model.setVectorized(true);
+                    model.runSimulation(episodes, 1);
+                }),
+                Example5_1ModelTest.run(model -> {
+                    model.setVectorized(true);
+                    model.runSimulation(episodes, 2);
+                }));
+    }
+
+    /**
+     * Asserts that every estimate lies within five of its standard errors of the exact value, which
+     * a correct simulation fails for one of the 200 states only about once in 10,000 runs.
+     */
+    private static void assertWithinErrors(double[][] expected, double[][] actual, double[][] errors) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], actual[i][j], 5 * errors[i][j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package adiputra.reinforcementlearning.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointFileTest {
+    private static final String CONFIGURATION = "Test sampleDealerOutcomes=false";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresTheSavedCheckpoint() throws IOException {
+        Path path = directory.resolve("run.ckpt");
+        byte[] table = table(1);
+        CheckpointHeader header = new CheckpointHeader(CONFIGURATION, "L64X128MixRandom", 42, 65536);
+        try (CheckpointFile file = CheckpointFile.open(path, Checkpointable.of(table))) {
+            file.write(header, Checkpointable.of(table));
+        }
+
+        byte[] restored = new byte[table.length];
+        assertEquals(header, CheckpointFile.read(path, CONFIGURATION, Checkpointable.of(restored)));
+        assertArrayEquals(table, restored);
+    }
+
+    @Test
+    void restoresTheNewerOfTwoCheckpoints() throws IOException {
+        Path path = writeTwoCheckpoints();
+
+        byte[] restored = new byte[100];
+        assertEquals(131072, CheckpointFile.read(path, CONFIGURATION, Checkpointable.of(restored)).completedEpisodes());
+        assertArrayEquals(table(2), restored);
+    }
+
+    @Test
+    void fallsBackToTheOtherSlotIfTheNewestIsCorrupt() throws IOException {
+        Path path = writeTwoCheckpoints();
+        // The second checkpoint is in the first slot; damage a byte of its tables.
+        corrupt(path, 512 + 10);
+
+        byte[] restored = new byte[100];
+        assertEquals(65536, CheckpointFile.read(path, CONFIGURATION, Checkpointable.of(restored)).completedEpisodes());
+        assertArrayEquals(table(1), restored);
+    }
+
+    @Test
+    void fallsBackToTheOtherSlotIfTheNewestIsTorn() throws IOException {
+        Path path = writeTwoCheckpoints();
+        // A crash while writing the third checkpoint into the second slot leaves its tables half written.
+        long slotBytes = size(path) / 2;
+        for (int i = 0; i < 50; i++) {
+            corrupt(path, slotBytes + 512 + i);
+        }
+
+        byte[] restored = new byte[100];
+        assertEquals(131072, CheckpointFile.read(path, CONFIGURATION, Checkpointable.of(restored)).completedEpisodes());
+        assertArrayEquals(table(2), restored);
+    }
+
+    @Test
+    void findsNoCheckpointIfBothSlotsAreCorrupt() throws IOException {
+        Path path = writeTwoCheckpoints();
+        corrupt(path, 512 + 10);
+        corrupt(path, size(path) / 2 + 512 + 10);
+
+        assertNull(CheckpointFile.read(path, CONFIGURATION, Checkpointable.of(new byte[100])));
+        assertNull(CheckpointFile.read(directory.resolve("missing.ckpt"), CONFIGURATION, Checkpointable.of(new byte[100])));
+    }
+
+    @Test
+    void rejectsACheckpointOfOtherSettingsBeforeRestoringIt() throws IOException {
+        Path path = writeTwoCheckpoints();
+
+        byte[] restored = new byte[200];
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CheckpointFile.read(path, "Other sampleDealerOutcomes=true", Checkpointable.of(restored)));
+        assertEquals("Checkpoint " + path + " was saved by a run with other settings: " + CONFIGURATION
+                + ", expected Other sampleDealerOutcomes=true", e.getMessage());
+        assertArrayEquals(new byte[200], restored);
+    }
+
+    private Path writeTwoCheckpoints() throws IOException {
+        Path path = directory.resolve("run.ckpt");
+        byte[] table = new byte[100];
+        try (CheckpointFile file = CheckpointFile.open(path, Checkpointable.of(table))) {
+            System.arraycopy(table(1), 0, table, 0, table.length);
+            file.write(new CheckpointHeader(CONFIGURATION, "L64X128MixRandom", 42, 65536), Checkpointable.of(table));
+            System.arraycopy(table(2), 0, table, 0, table.length);
+            file.write(new CheckpointHeader(CONFIGURATION, "L64X128MixRandom", 42, 131072), Checkpointable.of(table));
+        }
+        return path;
+    }
+
+    private static byte[] table(int version) {
+        byte[] table = new byte[100];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (i * version + version);
+        }
+        return table;
+    }
+
+    private static long size(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size();
+        }
+    }
+
+    private static void corrupt(Path path, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) ~value.get(0)).rewind();
+            channel.write(value, position);
+        }
+    }
+}
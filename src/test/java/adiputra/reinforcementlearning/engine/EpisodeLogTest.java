@@ -0,0 +1,110 @@
+package adiputra.reinforcementlearning.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EpisodeLogTest {
+    private static final EpisodeLogHeader HEADER = new EpisodeLogHeader("Test", "L64X128MixRandom", 42, 200, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheWrittenEpisodes() throws IOException {
+        Path path = directory.resolve("episodes.log");
+        try (EpisodeLogWriter log = EpisodeLogWriter.create(path, HEADER)) {
+            for (int i = 0; i < 1000; i++) {
+                log.write(episode(i));
+            }
+        }
+
+        try (EpisodeLogReader log = EpisodeLogReader.open(path)) {
+            assertEquals(HEADER, log.getHeader());
+            assertEquals(1000, log.getEpisodes());
+            Episode episode = new Episode();
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(log.next(episode));
+                assertEpisodeEquals(episode(i), episode);
+            }
+            assertFalse(log.next(episode));
+        }
+    }
+
+    @Test
+    void replaysALogCutOffMidEpisodeUpToItsLastCompleteEpisode() throws IOException {
+        Path path = directory.resolve("episodes.log");
+        try (EpisodeLogWriter log = EpisodeLogWriter.create(path, HEADER)) {
+            for (int i = 0; i < 9; i++) {
+                log.write(episode(i));
+            }
+        }
+        // Episode 8 has three steps of two bytes after its length and return; keep only one of them.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+
+        try (EpisodeLogReader log = EpisodeLogReader.open(path)) {
+            Episode episode = new Episode();
+            for (int i = 0; i < 8; i++) {
+                assertTrue(log.next(episode));
+                assertEpisodeEquals(episode(i), episode);
+            }
+            assertFalse(log.next(episode));
+        }
+    }
+
+    @Test
+    void writesBlocksLikeTheirEpisodes() throws IOException {
+        Path episodes = directory.resolve("episodes.log");
+        try (EpisodeLogWriter log = EpisodeLogWriter.create(episodes, HEADER)) {
+            for (int i = 0; i < 100_000; i++) {
+                log.write(episode(i));
+            }
+        }
+        Path blocks = directory.resolve("blocks.log");
+        try (EpisodeLogWriter log = EpisodeLogWriter.create(blocks, HEADER)) {
+            EpisodeLogWriter.Block first = log.newBlock();
+            EpisodeLogWriter.Block second = log.newBlock();
+            for (int i = 0; i < 100_000; i++) {
+                (i < 60_000 ? first : second).write(episode(i));
+            }
+            log.write(first);
+            log.write(second);
+            assertEquals(100_000, log.getEpisodes());
+        }
+
+        assertArrayEquals(Files.readAllBytes(episodes), Files.readAllBytes(blocks));
+    }
+
+    /**
+     * @return An episode of one to three steps with a return of -1, 0 or 1 that differs by its number.
+     */
+    private static Episode episode(int number) {
+        Episode episode = new Episode();
+        int length = 1 + number % 3;
+        for (int i = 0; i < length; i++) {
+            episode.add((number + 7 * i) % 200, (number + i) % 2, i == length - 1 ? number % 3 - 1 : 0);
+        }
+        return episode;
+    }
+
+    private static void assertEpisodeEquals(Episode expected, Episode actual) {
+        assertEquals(expected.getLength(), actual.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            assertEquals(expected.getState(i), actual.getState(i));
+            assertEquals(expected.getAction(i), actual.getAction(i));
+            assertEquals(expected.getReward(i), actual.getReward(i));
+        }
+    }
+}
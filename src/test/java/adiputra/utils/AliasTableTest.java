@@ -0,0 +1,49 @@
+package adiputra.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.random.RandomGenerator;
+
+import org.junit.jupiter.api.Test;
+
+class AliasTableTest {
+    @Test
+    void samplesFollowUnevenWeights() {
+        double[] weights = { 0, 5, 1, 0, 2.5, 0.5, 0 };
+        AliasTable table = new AliasTable(weights);
+        int samples = 1_000_000;
+        int[] counts = new int[weights.length];
+        RandomGenerator random = new RandomSource(1).stream(0);
+        for (int i = 0; i < samples; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        assertEquals(weights.length, table.size());
+        for (int i = 0; i < weights.length; i++) {
+            double p = weights[i] / 9;
+            if (p == 0) {
+                assertEquals(0, counts[i]);
+            } else {
+                assertEquals(p, (double) counts[i] / samples, 5 * Math.sqrt(p * (1 - p) / samples));
+            }
+        }
+    }
+
+    @Test
+    void singleOutcomeIsAlwaysDrawn() {
+        AliasTable table = new AliasTable(new double[] { 0, 3, 0 });
+        RandomGenerator random = new RandomSource(1).stream(0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, table.sample(random));
+        }
+    }
+
+    @Test
+    void invalidWeightsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] { 1, -1 }));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] { 0, 0 }));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] { 1, Double.NaN }));
+    }
+}